@@ -0,0 +1,28 @@
+package com.mobilise.changes;
+
+import com.mobilise.model.Book;
+
+import java.time.Instant;
+
+/**
+ * A committed change to a book with the book's state after it, as pushed to change stream subscribers.
+ *
+ * @param sequence  position in this instance's change sequence, starting at 1
+ * @param type      what changed
+ * @param changedAt when the change was published, just after it committed
+ */
+public record BookChange(long sequence, Type type, String isbn, String title, String author,
+                         Integer publicationYear, Integer copiesInStock, boolean deleted, Instant changedAt) {
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        RESTORED,
+        STOCK_CHANGED
+    }
+
+    static BookChange of(long sequence, Type type, Book book) {
+        return new BookChange(sequence, type, book.getIsbn(), book.getTitle(), book.getAuthor(),
+                book.getPublicationYear(), book.getCopiesInStock(), book.isDeleted(), Instant.now());
+    }
+}
@@ -0,0 +1,145 @@
+package com.mobilise.changes;
+
+import com.mobilise.model.Book;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process publish and subscribe of committed book changes.
+ * <p>
+ * The book service publishes every book write once it commits. Publishing only hands the change to the matching
+ * subscriptions, which coalesce it with earlier changes to the same book, so writers never wait for subscribers
+ * (see {@link BookChangeSubscription}). Changes are numbered in publishing order and the latest
+ * {@code library.changes.history} are kept, so that a subscriber reconnecting with the last sequence it received
+ * gets what it missed. One further back, or from before a restart, is told to reset.
+ */
+@Slf4j
+@Component
+public class BookChangeBus {
+    @Value("${library.changes.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${library.changes.history:10000}")
+    private int history = 10000;
+
+    @Value("${library.changes.subscriber-buffer:1000}")
+    private int subscriberBuffer = 1000;
+
+    @Value("${library.changes.max-subscribers:10000}")
+    private int maxSubscribers = 10000;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<BookChange> recent = new ArrayDeque<>();
+    private final Set<BookChangeSubscription> everyBook = new HashSet<>();
+    private final Map<String, Set<BookChangeSubscription>> byIsbn = new HashMap<>();
+    private int subscriptions;
+    private long sequence;
+
+    /**
+     * Publishes a change to a book once the surrounding transaction commits, or right away without one. The book's
+     * state is read when it is published.
+     */
+    public void publishAfterCommit(BookChange.Type type, Book book) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(type, book);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    publish(type, book);
+                } catch (RuntimeException e) {
+                    log.error("Failed to publish change of book {}: {}", book.getIsbn(), e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    void publish(BookChange.Type type, Book book) {
+        lock.lock();
+        try {
+            BookChange change = BookChange.of(++sequence, type, book);
+            recent.addLast(change);
+            if (recent.size() > history) {
+                recent.removeFirst();
+            }
+            everyBook.forEach(subscription -> subscription.offer(change));
+            byIsbn.getOrDefault(change.isbn(), Set.of()).forEach(subscription -> subscription.offer(change));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Subscribes to the changes of {@code isbns}, or of every book when {@code null}, starting after
+     * {@code lastSequence} when given and with the next change otherwise. Empty when the bus is disabled or full.
+     */
+    public Optional<BookChangeSubscription> subscribe(Set<String> isbns, Long lastSequence) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        lock.lock();
+        try {
+            if (subscriptions >= maxSubscribers) {
+                return Optional.empty();
+            }
+            BookChangeSubscription subscription = new BookChangeSubscription(isbns, subscriberBuffer,
+                    this::unsubscribe);
+            if (lastSequence != null && lastSequence != sequence) {
+                BookChange oldest = recent.peekFirst();
+                if (lastSequence > sequence || oldest == null || oldest.sequence() > lastSequence + 1) {
+                    subscription.reset(sequence);
+                } else {
+                    recent.stream()
+                            .filter(change -> change.sequence() > lastSequence)
+                            .filter(change -> isbns == null || isbns.contains(change.isbn()))
+                            .forEach(subscription::offer);
+                }
+            }
+            if (isbns == null) {
+                everyBook.add(subscription);
+            } else {
+                isbns.forEach(isbn -> byIsbn.computeIfAbsent(isbn, key -> new HashSet<>()).add(subscription));
+            }
+            subscriptions++;
+            return Optional.of(subscription);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void unsubscribe(BookChangeSubscription subscription) {
+        lock.lock();
+        try {
+            if (subscription.isbns() == null) {
+                everyBook.remove(subscription);
+            } else {
+                for (String isbn : subscription.isbns()) {
+                    Set<BookChangeSubscription> followers = byIsbn.get(isbn);
+                    followers.remove(subscription);
+                    if (followers.isEmpty()) {
+                        byIsbn.remove(isbn);
+                    }
+                }
+            }
+            subscriptions--;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.mobilise.changes;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sends book change subscriptions as Server-Sent Events, each from its own virtual thread.
+ * <p>
+ * Every change is an event named {@code change} with the change sequence as its id, so browsers resume from the
+ * last one with {@code Last-Event-ID} when they reconnect. A {@code reset} event, with the sequence to resume from
+ * as its id and data, tells the client to re-read the books it follows. An idle stream gets a comment every
+ * {@code library.changes.heartbeat}, which also notices clients that went away.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BookChangeStream {
+    private final BookChangeBus bookChangeBus;
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${library.changes.coalesce-window:PT0.5S}")
+    private Duration coalesceWindow = Duration.ofMillis(500);
+
+    @Value("${library.changes.heartbeat:PT15S}")
+    private Duration heartbeat = Duration.ofSeconds(15);
+
+    @Value("${library.changes.timeout:PT30M}")
+    private Duration timeout = Duration.ofMinutes(30);
+
+    /**
+     * Opens a stream of the changes to {@code isbns}, or to every book when {@code null}, resuming after
+     * {@code lastSequence} when given. Empty when no more subscribers are accepted.
+     */
+    public Optional<SseEmitter> open(Set<String> isbns, Long lastSequence) {
+        return bookChangeBus.subscribe(isbns, lastSequence).map(subscription -> {
+            SseEmitter emitter = new SseEmitter(timeout.toMillis());
+            emitter.onCompletion(subscription::close);
+            emitter.onError(error -> subscription.close());
+            emitter.onTimeout(() -> {
+                subscription.close();
+                emitter.complete();
+            });
+            senders.execute(() -> send(subscription, emitter));
+            return emitter;
+        });
+    }
+
+    @PreDestroy
+    void close() {
+        senders.shutdownNow();
+    }
+
+    private void send(BookChangeSubscription subscription, SseEmitter emitter) {
+        try {
+            // Sends the response headers right away, so the client knows it is subscribed
+            emitter.send(SseEmitter.event().comment("subscribed"));
+            for (BookChangeSubscription.Batch batch = subscription.take(heartbeat, coalesceWindow); batch != null;
+                 batch = subscription.take(heartbeat, coalesceWindow)) {
+                if (batch.resetAt() != null) {
+                    emitter.send(SseEmitter.event().id(batch.resetAt().toString()).name("reset")
+                            .data(batch.resetAt()));
+                }
+                for (BookChange change : batch.changes()) {
+                    emitter.send(SseEmitter.event().id(Long.toString(change.sequence())).name("change")
+                            .data(change, MediaType.APPLICATION_JSON));
+                }
+                if (batch.resetAt() == null && batch.changes().isEmpty()) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Book change subscriber went away: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            emitter.complete();
+        } finally {
+            subscription.close();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.mobilise.changes;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * One subscriber's changes waiting to be sent: the latest change per ISBN, in sequence order, up to a bound.
+ * <p>
+ * A subscriber that falls further behind than the bound loses its pending changes and is told to reset instead, so
+ * a slow subscriber costs a fixed amount of memory and never holds up the writers.
+ */
+public final class BookChangeSubscription implements AutoCloseable {
+    private final Set<String> isbns;
+    private final int capacity;
+    private final Consumer<BookChangeSubscription> onClose;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final LinkedHashMap<String, BookChange> pending = new LinkedHashMap<>();
+    private long resetAt = -1;
+    private boolean closed;
+
+    /**
+     * Changes taken in one go.
+     *
+     * @param resetAt sequence up to which the subscriber has to re-read the books it follows, or {@code null}
+     * @param changes latest change per ISBN since the previous batch, in sequence order
+     */
+    public record Batch(Long resetAt, List<BookChange> changes) {
+    }
+
+    BookChangeSubscription(Set<String> isbns, int capacity, Consumer<BookChangeSubscription> onClose) {
+        this.isbns = isbns;
+        this.capacity = capacity;
+        this.onClose = onClose;
+    }
+
+    /**
+     * The followed ISBNs, or {@code null} for every book.
+     */
+    Set<String> isbns() {
+        return isbns;
+    }
+
+    void offer(BookChange change) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            // Removing first moves a coalesced ISBN to the end, which keeps the changes in sequence order
+            BookChange previous = pending.remove(change.isbn());
+            if (previous == null && pending.size() >= capacity) {
+                pending.clear();
+                resetAt = change.sequence() - 1;
+            }
+            pending.put(change.isbn(), change);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void reset(long sequence) {
+        lock.lock();
+        try {
+            pending.clear();
+            resetAt = sequence;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to {@code timeout} for a change, gives further changes {@code window} to coalesce with it and takes
+     * everything pending. Returns an empty batch when nothing changed in time and {@code null} once closed.
+     */
+    public Batch take(Duration timeout, Duration window) throws InterruptedException {
+        lock.lock();
+        try {
+            long waiting = timeout.toNanos();
+            while (!closed && pending.isEmpty() && resetAt < 0) {
+                if (waiting <= 0) {
+                    return new Batch(null, List.of());
+                }
+                waiting = changed.awaitNanos(waiting);
+            }
+            long coalescing = window.toNanos();
+            while (!closed && coalescing > 0) {
+                coalescing = changed.awaitNanos(coalescing);
+            }
+            if (closed) {
+                return null;
+            }
+            Batch batch = new Batch(resetAt >= 0 ? resetAt : null, List.copyOf(pending.values()));
+            pending.clear();
+            resetAt = -1;
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.clear();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        onClose.accept(this);
+    }
+}
@@ -0,0 +1,87 @@
+package com.mobilise.config;
+
+import com.mobilise.replica.ReplicaDataSources;
+import com.mobilise.replica.ReplicaLagMonitor;
+import com.mobilise.replica.ReplicaRoutingDataSource;
+import com.mobilise.replica.StandInReplicator;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Routes read-only transactions to read replicas when {@code library.replicas.enabled} is set. The primary pool
+ * is configured from {@code spring.datasource} as usual and Flyway always migrates the primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "library.replicas.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+    @Value("${library.replicas.urls}")
+    private List<String> replicaUrls;
+
+    @Value("${library.replicas.pool-size:5}")
+    private int replicaPoolSize;
+
+    @Value("${library.replicas.max-staleness:PT5S}")
+    private Duration maxStaleness;
+
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaDataSources replicaDataSources(DataSourceProperties properties) {
+        ReplicaDataSources replicas = new ReplicaDataSources();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + (i + 1));
+            replica.setJdbcUrl(replicaUrls.get(i).trim());
+            replica.setUsername(properties.determineUsername());
+            replica.setPassword(properties.determinePassword());
+            replica.setMaximumPoolSize(replicaPoolSize);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        return replicas;
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(@Qualifier("primaryDataSource") DataSource primary,
+                                               ReplicaDataSources replicas) {
+        return new ReplicaLagMonitor(primary, replicas.byName());
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 ReplicaDataSources replicas,
+                                 ReplicaLagMonitor replicaLagMonitor) {
+        return new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primary, replicas.byName(), replicaLagMonitor, maxStaleness));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "library.replicas.stand-in-replication", havingValue = "true")
+    public StandInReplicator standInReplicator(@Qualifier("primaryDataSource") DataSource primary,
+                                               ReplicaDataSources replicas) {
+        StandInReplicator replicator = new StandInReplicator(primary, replicas.byName());
+        replicator.migrateReplicas();
+        return replicator;
+    }
+}
@@ -0,0 +1,64 @@
+package com.mobilise.config;
+
+import com.mobilise.changes.BookChange;
+import com.mobilise.dto.ApiResponse;
+import com.mobilise.dto.BookDTO;
+import com.mobilise.dto.BookFilterDTO;
+import com.mobilise.dto.BorrowingEventDTO;
+import com.mobilise.dto.BorrowingReportDTO;
+import com.mobilise.dto.ErrorDetails;
+import com.mobilise.dto.FacetedBooksDTO;
+import com.mobilise.dto.OverdueLoanDTO;
+import com.mobilise.model.ArchivedBorrowingRecord;
+import com.mobilise.model.Book;
+import com.mobilise.model.BorrowingRecord;
+import com.mobilise.model.Hold;
+import db.migration.V7__store_isbn_as_bigint;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.boot.autoconfigure.flyway.FlywayConfigurationCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.NativeDetector;
+
+import java.util.List;
+
+/**
+ * What a native image needs to know ahead of time: the reflection Hibernate and Jackson use on the entities, the
+ * DTOs that are read and written as JSON, and the Java migration, which Flyway cannot find by scanning the
+ * classpath of a native image and so is handed to it directly. None of it changes how the application runs on a
+ * JVM.
+ */
+@Configuration
+@ImportRuntimeHints(RuntimeHintsConfig.LibraryRuntimeHints.class)
+@RegisterReflectionForBinding({ApiResponse.class, ErrorDetails.class, BookDTO.class, BookFilterDTO.class,
+        BorrowingEventDTO.class, BorrowingReportDTO.class, FacetedBooksDTO.class, OverdueLoanDTO.class,
+        BookChange.class, Book.class, BorrowingRecord.class, Hold.class})
+public class RuntimeHintsConfig {
+
+    @Bean
+    public FlywayConfigurationCustomizer nativeJavaMigrations() {
+        return configuration -> {
+            if (NativeDetector.inNativeImage()) {
+                configuration.javaMigrations(new V7__store_isbn_as_bigint());
+            }
+        };
+    }
+
+    static class LibraryRuntimeHints implements RuntimeHintsRegistrar {
+        static final List<Class<?>> ENTITIES = List.of(Book.class, BorrowingRecord.class, Hold.class,
+                ArchivedBorrowingRecord.class);
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            // Hibernate reads and writes the fields and instantiates the entities through their constructors
+            ENTITIES.forEach(entity -> hints.reflection().registerType(entity, MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_DECLARED_METHODS));
+            hints.reflection().registerType(V7__store_isbn_as_bigint.class,
+                    MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.mobilise.config;
+
+import com.mobilise.replica.ReadYourWrites;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    /**
+     * The scheduler Spring Boot would build on platform threads, sized by {@code spring.task.scheduling.pool.size},
+     * except that each run of a job is its own unit of work: a write by one run does not pin the next runs on the
+     * thread to the primary. With virtual threads Boot's scheduler starts every run on a new thread, so it is left
+     * as it is.
+     */
+    @Bean
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ThreadPoolTaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.configure(new ThreadPoolTaskScheduler() {
+            @Override
+            protected void afterExecute(Runnable task, Throwable failure) {
+                ReadYourWrites.clear();
+                super.afterExecute(task, failure);
+            }
+        });
+    }
+}
@@ -0,0 +1,138 @@
+package com.mobilise.config;
+
+import com.mobilise.service.BookService;
+import com.mobilise.shard.Resharder;
+import com.mobilise.shard.ShardDataSources;
+import com.mobilise.shard.ShardRouter;
+import com.mobilise.shard.ShardRoutingDataSource;
+import com.mobilise.shard.ShardedBookService;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spreads the catalogue over the databases in {@code library.shards.urls} when {@code library.shards.enabled} is
+ * set. The {@link ShardRouter} bean always exists and is unsharded otherwise, so maintenance jobs can run once per
+ * shard without knowing whether sharding is on.
+ */
+@Configuration
+public class ShardingConfig {
+
+    @Bean
+    public ShardRouter shardRouter(@Value("${library.shards.enabled:false}") boolean enabled,
+                                   @Value("${library.shards.urls:}") List<String> urls,
+                                   @Value("${library.shards.virtual-nodes:128}") int virtualNodes) {
+        if (!enabled) {
+            return ShardRouter.unsharded();
+        }
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            names.add(ShardDataSources.shardName(i + 1));
+        }
+        return new ShardRouter(names, virtualNodes);
+    }
+
+    @Slf4j
+    @Configuration
+    @ConditionalOnProperty(name = "library.shards.enabled", havingValue = "true")
+    static class Shards {
+        // Features that keep state of one database outside of it and cannot follow the books across shards
+        private static final List<String> SINGLE_DATABASE_FEATURES = List.of(
+                "library.replicas.enabled", "library.snapshot.enabled", "library.journal.enabled",
+                "library.archive.enabled");
+
+        @Value("${library.shards.urls}")
+        private List<String> shardUrls;
+
+        @Value("${library.shards.pool-size:10}")
+        private int shardPoolSize;
+
+        @Value("${library.shards.virtual-nodes:128}")
+        private int virtualNodes;
+
+        Shards(Environment environment) {
+            for (String feature : SINGLE_DATABASE_FEATURES) {
+                if (environment.getProperty(feature, Boolean.class, false)) {
+                    throw new IllegalStateException(feature + " cannot be combined with library.shards.enabled");
+                }
+            }
+        }
+
+        @Bean
+        public ShardDataSources shardDataSources(DataSourceProperties properties) {
+            ShardDataSources shards = new ShardDataSources();
+            for (int i = 0; i < shardUrls.size(); i++) {
+                shards.add(connect(properties, ShardDataSources.shardName(i + 1), shardUrls.get(i).trim()));
+            }
+            return shards;
+        }
+
+        @Bean
+        @Primary
+        public DataSource dataSource(ShardDataSources shards) {
+            return new ShardRoutingDataSource(shards.byName());
+        }
+
+        // Boot would only migrate the first shard through the routing data source
+        @Bean
+        public FlywayMigrationStrategy flywayMigrationStrategy(ShardDataSources shards) {
+            return flyway -> shards.byName().values().forEach(shard -> migrate(flyway, shard));
+        }
+
+        @Bean
+        @Primary
+        public ShardedBookService shardedBookService(BookService bookService, ShardRouter shardRouter) {
+            return new ShardedBookService(bookService, shardRouter);
+        }
+
+        @Bean
+        public Resharder resharder(ShardDataSources shards, DataSourceProperties properties, Flyway flyway) {
+            return new Resharder(shards, (name, url) -> connect(properties, name, url),
+                    shard -> migrate(flyway, shard), virtualNodes);
+        }
+
+        /**
+         * Started with {@code --library.shards.reshard-to=<urls>}, moves the books onto the given shards and exits.
+         */
+        @Bean
+        @ConditionalOnProperty(name = "library.shards.reshard-to")
+        public ApplicationRunner reshardRunner(Resharder resharder, ConfigurableApplicationContext context,
+                                               @Value("${library.shards.reshard-to}") List<String> targetUrls) {
+            return args -> {
+                Resharder.ReshardRun run = resharder.reshard(targetUrls);
+                log.info("Moved {} books and {} borrowing records, restart with library.shards.urls={}",
+                        run.books(), run.borrowingRecords(), String.join(",", targetUrls));
+                System.exit(SpringApplication.exit(context, () -> 0));
+            };
+        }
+
+        private HikariDataSource connect(DataSourceProperties properties, String name, String url) {
+            HikariDataSource shard = new HikariDataSource();
+            shard.setPoolName(name);
+            shard.setJdbcUrl(url);
+            shard.setUsername(properties.determineUsername());
+            shard.setPassword(properties.determinePassword());
+            shard.setMaximumPoolSize(shardPoolSize);
+            return shard;
+        }
+
+        private static void migrate(Flyway flyway, DataSource shard) {
+            Flyway.configure().configuration(flyway.getConfiguration()).dataSource(shard).load().migrate();
+        }
+    }
+}
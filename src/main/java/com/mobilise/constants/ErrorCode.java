@@ -11,7 +11,10 @@ public enum ErrorCode {
     BORROW_ERROR("Error borrowing book"),
     RETURN_ERROR("Error returning book"),
     UPLOAD_ERROR("Error uploading books"),
-    REPORT_ERROR("Error generating report");
+    REPORT_ERROR("Error generating report"),
+    PRECONDITION_FAILED("Resource has changed"),
+    NOT_READY("Resource is not ready yet"),
+    DISABLED("Feature is disabled");
 
     private final String defaultMessage;
 
@@ -14,6 +14,9 @@ public class ResponseMessages {
         public static final String RETURN_ERROR = "RETURN_ERROR";
         public static final String UPLOAD_ERROR = "UPLOAD_ERROR";
         public static final String REPORT_ERROR = "REPORT_ERROR";
+        public static final String HOLD_ERROR = "HOLD_ERROR";
+        public static final String PRECONDITION_FAILED = "PRECONDITION_FAILED";
+        public static final String OVERLOADED = "OVERLOADED";
 
         // Success Messages
         public static final String BOOKS_RETRIEVED = "Books retrieved successfully";
@@ -26,6 +29,10 @@ public class ResponseMessages {
         public static final String BOOK_RETURNED = "Book returned successfully";
         public static final String BOOKS_UPLOADED = "Books uploaded successfully";
         public static final String REPORT_GENERATED = "Borrowing report generated successfully";
+        public static final String HOLD_PLACED = "Hold placed successfully";
+        public static final String HOLD_RETRIEVED = "Hold retrieved successfully";
+        public static final String HOLD_CANCELLED = "Hold cancelled successfully";
+        public static final String LOANS_RETRIEVED = "Loans retrieved successfully";
 
         private ResponseMessages() {} // Prevent instantiation
 }
\ No newline at end of file
@@ -1,27 +1,52 @@
 package com.mobilise.controller;
 
+import com.mobilise.changes.BookChangeStream;
+import com.mobilise.constants.ResponseMessages;
 import com.mobilise.dto.ApiResponse;
 import com.mobilise.dto.BookDTO;
+import com.mobilise.dto.BookFilterDTO;
 import com.mobilise.dto.BorrowingReportDTO;
+import com.mobilise.dto.FacetedBooksDTO;
+import com.mobilise.dto.OverdueLoanDTO;
+import com.mobilise.hold.HoldWaiters;
+import com.mobilise.idempotency.IdempotentRequests;
 import com.mobilise.interfaces.BookServiceInterface;
+import com.mobilise.limit.Bulkhead;
+import com.mobilise.limit.ConcurrencyLimits;
 import com.mobilise.model.Book;
 import com.mobilise.model.BorrowingRecord;
+import com.mobilise.model.Hold;
+import com.mobilise.model.Isbn;
+import com.mobilise.service.BookStreamService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/v1/books")
@@ -29,7 +54,14 @@ import java.time.LocalDateTime;
 @Tag(name = "Book Management API", description = "APIs for managing books in the library")
 @Validated
 public class BookController {
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final BookServiceInterface bookService;
+    private final BookStreamService bookStreamService;
+    private final BookChangeStream bookChangeStream;
+    private final HoldWaiters holdWaiters;
+    private final IdempotentRequests idempotentRequests;
+    private final ConcurrencyLimits concurrencyLimits;
 
     @GetMapping
     @Operation(
@@ -39,22 +71,168 @@ public class BookController {
     public ResponseEntity<ApiResponse<Page<Book>>> getAllBooks(
             @Parameter(description = "Pagination parameters") Pageable pageable) {
         ApiResponse<Page<Book>> response = bookService.getAllBooks(pageable);
+        return page(response, HttpStatus.INTERNAL_SERVER_ERROR, BookETags::of);
+    }
+
+    @GetMapping(params = "fields")
+    @Operation(
+            summary = "Get some fields of all books with pagination",
+            description = "Retrieves a paginated list of all books with only the requested fields, read without " +
+                    "loading the books"
+    )
+    public ResponseEntity<ApiResponse<Page<Map<String, Object>>>> getAllBookFields(
+            @Parameter(description = "Fields to return, comma separated: isbn, title, author, publicationYear, " +
+                    "copiesInStock, activeLoans, version", required = true)
+            @RequestParam List<String> fields,
+            @Parameter(description = "Pagination parameters") Pageable pageable) {
+        ApiResponse<Page<Map<String, Object>>> response = bookService.getBookFields(fields, pageable);
+        return page(response, HttpStatus.BAD_REQUEST, BookETags::ofRows);
+    }
+
+    @GetMapping("/stream")
+    @Operation(
+            summary = "Stream all books",
+            description = "Streams every book as newline-delimited JSON without loading the catalogue into memory"
+    )
+    public ResponseEntity<StreamingResponseBody> streamBooks() {
+        return ResponseEntity.ok()
+                .contentType(APPLICATION_NDJSON)
+                .body(bookStreamService::streamBooks);
+    }
+
+    @GetMapping("/search/stream")
+    @Operation(
+            summary = "Stream books matching a title or author",
+            description = "Streams all search matches as newline-delimited JSON"
+    )
+    public ResponseEntity<StreamingResponseBody> streamSearch(
+            @Parameter(description = "Search query", required = true)
+            @RequestParam @NotBlank(message = "Search query cannot be empty") String query) {
+        return ResponseEntity.ok()
+                .contentType(APPLICATION_NDJSON)
+                .body(out -> bookStreamService.streamSearch(query, out));
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Stream book changes",
+            description = "Pushes committed book changes as Server-Sent Events: created, updated, deleted, restored " +
+                    "and stock changes, with rapid changes to a book coalesced into the latest"
+    )
+    public ResponseEntity<SseEmitter> streamChanges(
+            @Parameter(description = "ISBN to follow, repeat for several; every book when omitted")
+            @RequestParam(name = "isbn", required = false) List<String> isbns,
+            @Parameter(description = "Sequence of the last change received, to resume after it")
+            @RequestParam(required = false) Long since,
+            @Parameter(description = "Sent by browsers when they reconnect, takes precedence over since")
+            @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId) {
+        Set<String> followed = isbns == null || isbns.isEmpty()
+                ? null
+                : isbns.stream().map(Isbn::normalize).collect(Collectors.toUnmodifiableSet());
+        return bookChangeStream.open(followed, lastEventId != null ? lastEventId : since)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+    }
+
+    @GetMapping("/export")
+    @Operation(
+            summary = "Export the catalogue as CSV",
+            description = "Streams all books in the bulk upload CSV format"
+    )
+    public ResponseEntity<StreamingResponseBody> exportBooks() {
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"books.csv\"")
+                .body(bookStreamService::exportCsv);
+    }
+
+    @GetMapping("/on-loan")
+    @Operation(
+            summary = "Get books currently on loan",
+            description = "Retrieves a paginated list of books with at least one copy borrowed"
+    )
+    public ResponseEntity<ApiResponse<Page<Book>>> getBooksOnLoan(
+            @Parameter(description = "Pagination parameters") Pageable pageable) {
+        ApiResponse<Page<Book>> response = bookService.getBooksOnLoan(pageable);
+        return page(response, HttpStatus.INTERNAL_SERVER_ERROR, BookETags::of);
+    }
+
+    @GetMapping("/overdue")
+    @Operation(
+            summary = "Get overdue loans",
+            description = "Retrieves a paginated list of open loans past their due date, longest overdue first"
+    )
+    public ResponseEntity<ApiResponse<Page<OverdueLoanDTO>>> getOverdueLoans(
+            @Parameter(description = "Pagination parameters") Pageable pageable) {
+        ApiResponse<Page<OverdueLoanDTO>> response = bookService.getOverdueLoans(pageable);
         return ResponseEntity
                 .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(response);
     }
 
+    @GetMapping("/filter")
+    @Operation(
+            summary = "Filter books by facets",
+            description = "Filters live books by publication year range, author and availability, with the number " +
+                    "of matching books per year, author and in stock"
+    )
+    public ResponseEntity<ApiResponse<FacetedBooksDTO>> filterBooks(
+            @Parameter(description = "Earliest publication year")
+            @RequestParam(required = false) Integer yearFrom,
+            @Parameter(description = "Latest publication year")
+            @RequestParam(required = false) Integer yearTo,
+            @Parameter(description = "Author, repeat for any of several authors")
+            @RequestParam(name = "author", required = false) List<String> authors,
+            @Parameter(description = "Only books with copies in stock")
+            @RequestParam(defaultValue = "false") boolean inStockOnly,
+            @Parameter(description = "Pagination parameters") Pageable pageable) {
+        BookFilterDTO filter = new BookFilterDTO();
+        filter.setYearFrom(yearFrom);
+        filter.setYearTo(yearTo);
+        filter.setAuthors(authors);
+        filter.setInStockOnly(inStockOnly);
+        ApiResponse<FacetedBooksDTO> response = bookService.filterBooks(filter, pageable);
+        return ResponseEntity
+                .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                .body(response);
+    }
+
     @GetMapping("/{isbn}")
     @Operation(
             summary = "Get a book by ISBN",
-            description = "Retrieves a specific book using its ISBN"
+            description = "Retrieves a specific book using its ISBN. The ETag is the book's version, and a request " +
+                    "whose If-None-Match lists it is answered 304 without reading the book"
     )
     public ResponseEntity<ApiResponse<Book>> getBookByIsbn(
+            @Parameter(description = "ISBN of the book", required = true)
+            @PathVariable String isbn,
+            @Parameter(description = "ETag of the copy the client has")
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String key = Isbn.normalize(isbn);
+        if (ifNoneMatch != null) {
+            Optional<String> etag = bookService.getBookVersion(key).map(BookETags::of);
+            if (etag.isPresent() && BookETags.matches(ifNoneMatch, etag.get())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag.get()).build();
+            }
+        }
+        ApiResponse<Book> response = bookService.getBookByIsbn(key);
+        if (!response.isSuccess()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+        return withETag(ResponseEntity.ok(), response.getData()).body(response);
+    }
+
+    @GetMapping("/{isbn}/related")
+    @Operation(
+            summary = "Get related books",
+            description = "Retrieves the books most often borrowed by the borrowers of a book, most often first"
+    )
+    public ResponseEntity<ApiResponse<List<Book>>> getRelatedBooks(
             @Parameter(description = "ISBN of the book", required = true)
             @PathVariable String isbn) {
-        ApiResponse<Book> response = bookService.getBookByIsbn(isbn);
+        ApiResponse<List<Book>> response = bookService.getRelatedBooks(Isbn.normalize(isbn));
         return ResponseEntity
-                .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.NOT_FOUND)
+                .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR)
                 .body(response);
     }
 
@@ -65,11 +243,17 @@ public class BookController {
     )
     public ResponseEntity<ApiResponse<Book>> createBook(
             @Parameter(description = "Book details", required = true)
-            @Valid @RequestBody BookDTO bookDTO) {
-        ApiResponse<Book> response = bookService.createBook(bookDTO);
-        return ResponseEntity
-                .status(response.isSuccess() ? HttpStatus.CREATED : HttpStatus.BAD_REQUEST)
-                .body(response);
+            @Valid @RequestBody BookDTO bookDTO,
+            @Parameter(description = "Retries sent with the same key get the first response instead of running again")
+            @RequestHeader(name = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest request) {
+        BookDTO book = normalized(bookDTO);
+        return idempotentRequests.execute(idempotencyKey, request, book.getIsbn(), Book.class, () -> {
+            ApiResponse<Book> response = bookService.createBook(book);
+            return ResponseEntity
+                    .status(response.isSuccess() ? HttpStatus.CREATED : HttpStatus.BAD_REQUEST)
+                    .body(response);
+        });
     }
 
     @PutMapping("/{isbn}")
@@ -81,11 +265,25 @@ public class BookController {
             @Parameter(description = "ISBN of the book to update", required = true)
             @PathVariable String isbn,
             @Parameter(description = "Updated book details", required = true)
-            @Valid @RequestBody BookDTO bookDTO) {
-        ApiResponse<Book> response = bookService.updateBook(isbn, bookDTO);
-        return ResponseEntity
-                .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.NOT_FOUND)
-                .body(response);
+            @Valid @RequestBody BookDTO bookDTO,
+            @Parameter(description = "ETag the book must still have, so concurrent edits are not overwritten")
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @Parameter(description = "Retries sent with the same key get the first response instead of running again")
+            @RequestHeader(name = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest request) {
+        String key = Isbn.normalize(isbn);
+        BookDTO book = normalized(bookDTO);
+        Set<Long> expectedVersions = BookETags.versions(ifMatch);
+        return idempotentRequests.execute(idempotencyKey, request, key, Book.class, () -> {
+            ApiResponse<Book> response = bookService.updateBook(key, book, expectedVersions);
+            if (response.isSuccess()) {
+                return withETag(ResponseEntity.ok(), response.getData()).body(response);
+            }
+            boolean stale = ResponseMessages.PRECONDITION_FAILED.equals(response.getError().getCode());
+            return ResponseEntity
+                    .status(stale ? HttpStatus.PRECONDITION_FAILED : HttpStatus.NOT_FOUND)
+                    .body(response);
+        });
     }
 
     @DeleteMapping("/{isbn}")
@@ -95,11 +293,17 @@ public class BookController {
     )
     public ResponseEntity<ApiResponse<Void>> deleteBook(
             @Parameter(description = "ISBN of the book to delete", required = true)
-            @PathVariable String isbn) {
-        ApiResponse<Void> response = bookService.deleteBook(isbn);
-        return ResponseEntity
-                .status(response.isSuccess() ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND)
-                .body(response);
+            @PathVariable String isbn,
+            @Parameter(description = "Retries sent with the same key get the first response instead of running again")
+            @RequestHeader(name = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest request) {
+        String key = Isbn.normalize(isbn);
+        return idempotentRequests.execute(idempotencyKey, request, key, Void.class, () -> {
+            ApiResponse<Void> response = bookService.deleteBook(key);
+            return ResponseEntity
+                    .status(response.isSuccess() ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND)
+                    .body(response);
+        });
     }
 
     @PatchMapping("/restore/{isbn}")
@@ -109,11 +313,17 @@ public class BookController {
     )
     public ResponseEntity<ApiResponse<Book>> restoreBook(
             @Parameter(description = "ISBN of the book to delete", required = true)
-            @PathVariable String isbn) {
-        ApiResponse<Book> response = bookService.restoreBook(isbn);
-        return ResponseEntity
-                .status(response.isSuccess() ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND)
-                .body(response);
+            @PathVariable String isbn,
+            @Parameter(description = "Retries sent with the same key get the first response instead of running again")
+            @RequestHeader(name = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest request) {
+        String key = Isbn.normalize(isbn);
+        return idempotentRequests.execute(idempotencyKey, request, key, Book.class, () -> {
+            ApiResponse<Book> response = bookService.restoreBook(key);
+            return ResponseEntity
+                    .status(response.isSuccess() ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND)
+                    .body(response);
+        });
     }
 
     @GetMapping("/search")
@@ -127,9 +337,24 @@ public class BookController {
             @Parameter(description = "Pagination parameters")
             Pageable pageable) {
         ApiResponse<Page<Book>> response = bookService.searchBooks(query, pageable);
-        return ResponseEntity
-                .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
-                .body(response);
+        return page(response, HttpStatus.BAD_REQUEST, BookETags::of);
+    }
+
+    @GetMapping(value = "/search", params = "fields")
+    @Operation(
+            summary = "Search some fields of books by title or author",
+            description = "Searches for books based on title or author name, with only the requested fields"
+    )
+    public ResponseEntity<ApiResponse<Page<Map<String, Object>>>> searchBookFields(
+            @Parameter(description = "Search query", required = true)
+            @RequestParam @NotBlank(message = "Search query cannot be empty") String query,
+            @Parameter(description = "Fields to return, comma separated: isbn, title, author, publicationYear, " +
+                    "copiesInStock, activeLoans, version", required = true)
+            @RequestParam List<String> fields,
+            @Parameter(description = "Pagination parameters")
+            Pageable pageable) {
+        ApiResponse<Page<Map<String, Object>>> response = bookService.searchBookFields(query, fields, pageable);
+        return page(response, HttpStatus.BAD_REQUEST, BookETags::ofRows);
     }
 
     @PostMapping("/{isbn}/borrow")
@@ -139,11 +364,20 @@ public class BookController {
     )
     public ResponseEntity<ApiResponse<BorrowingRecord>> borrowBook(
             @Parameter(description = "ISBN of the book to borrow", required = true)
-            @PathVariable String isbn) {
-        ApiResponse<BorrowingRecord> response = bookService.borrowBook(isbn);
-        return ResponseEntity
-                .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
-                .body(response);
+            @PathVariable String isbn,
+            @Parameter(description = "Identifier of the borrower, up to 64 characters, used for recommendations")
+            @RequestParam(required = false) String borrowerId,
+            @Parameter(description = "Retries sent with the same key get the first response instead of running again")
+            @RequestHeader(name = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest request) {
+        String key = Isbn.normalize(isbn);
+        return concurrencyLimits.execute(Bulkhead.CHECKOUT, () ->
+                idempotentRequests.execute(idempotencyKey, request, key, BorrowingRecord.class, () -> {
+                    ApiResponse<BorrowingRecord> response = bookService.borrowBook(key, borrowerId);
+                    return ResponseEntity
+                            .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                            .body(response);
+                }));
     }
 
     @PostMapping("/{isbn}/return")
@@ -153,11 +387,85 @@ public class BookController {
     )
     public ResponseEntity<ApiResponse<BorrowingRecord>> returnBook(
             @Parameter(description = "ISBN of the book to return", required = true)
-            @PathVariable String isbn) {
-        ApiResponse<BorrowingRecord> response = bookService.returnBook(isbn);
-        return ResponseEntity
-                .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
-                .body(response);
+            @PathVariable String isbn,
+            @Parameter(description = "Retries sent with the same key get the first response instead of running again")
+            @RequestHeader(name = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest request) {
+        String key = Isbn.normalize(isbn);
+        return concurrencyLimits.execute(Bulkhead.CHECKOUT, () ->
+                idempotentRequests.execute(idempotencyKey, request, key, BorrowingRecord.class, () -> {
+                    ApiResponse<BorrowingRecord> response = bookService.returnBook(key);
+                    return ResponseEntity
+                            .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                            .body(response);
+                }));
+    }
+
+    @PostMapping("/{isbn}/holds")
+    @Operation(
+            summary = "Place a hold on a book",
+            description = "Joins the waitlist of a book. The hold is lent the next copy returned, or one in stock " +
+                    "right away, in the order holds were placed"
+    )
+    public ResponseEntity<ApiResponse<Hold>> placeHold(
+            @Parameter(description = "ISBN of the book to wait for", required = true)
+            @PathVariable String isbn,
+            @Parameter(description = "Identifier of the borrower, up to 64 characters")
+            @RequestParam(required = false) String borrowerId,
+            @Parameter(description = "Retries sent with the same key get the first response instead of running again")
+            @RequestHeader(name = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest request) {
+        String key = Isbn.normalize(isbn);
+        return concurrencyLimits.execute(Bulkhead.CHECKOUT, () ->
+                idempotentRequests.execute(idempotencyKey, request, key, Hold.class, () -> {
+                    ApiResponse<Hold> response = bookService.placeHold(key, borrowerId);
+                    return ResponseEntity
+                            .status(response.isSuccess() ? HttpStatus.CREATED : HttpStatus.BAD_REQUEST)
+                            .body(response);
+                }));
+    }
+
+    @GetMapping("/{isbn}/holds/{id}")
+    @Operation(
+            summary = "Get a hold",
+            description = "Retrieves a hold. With wait, a waiting hold is answered once it is fulfilled or " +
+                    "cancelled, or as it is when the wait is over"
+    )
+    public CompletableFuture<ResponseEntity<ApiResponse<Hold>>> getHold(
+            @Parameter(description = "ISBN of the book", required = true)
+            @PathVariable String isbn,
+            @Parameter(description = "Id of the hold", required = true)
+            @PathVariable Long id,
+            @Parameter(description = "How long to wait for the hold to change (ISO-8601 duration, e.g. PT30S)")
+            @RequestParam(required = false) Duration wait) {
+        String key = Isbn.normalize(isbn);
+        return holdWaiters.poll(id, wait, () -> bookService.getHold(key, id))
+                .thenApply(response -> ResponseEntity
+                        .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.NOT_FOUND)
+                        .body(response));
+    }
+
+    @DeleteMapping("/{isbn}/holds/{id}")
+    @Operation(
+            summary = "Cancel a hold",
+            description = "Leaves the waitlist of a book"
+    )
+    public ResponseEntity<ApiResponse<Hold>> cancelHold(
+            @Parameter(description = "ISBN of the book", required = true)
+            @PathVariable String isbn,
+            @Parameter(description = "Id of the hold", required = true)
+            @PathVariable Long id,
+            @Parameter(description = "Retries sent with the same key get the first response instead of running again")
+            @RequestHeader(name = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest request) {
+        String key = Isbn.normalize(isbn);
+        return concurrencyLimits.execute(Bulkhead.CHECKOUT, () ->
+                idempotentRequests.execute(idempotencyKey, request, key, Hold.class, () -> {
+                    ApiResponse<Hold> response = bookService.cancelHold(key, id);
+                    return ResponseEntity
+                            .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                            .body(response);
+                }));
     }
 
     @PostMapping("/bulk-upload")
@@ -168,10 +476,12 @@ public class BookController {
     public ResponseEntity<ApiResponse<Void>> bulkUploadBooks(
             @Parameter(description = "CSV file containing book details", required = true)
             @RequestParam("file") MultipartFile file) {
-        ApiResponse<Void> response = bookService.bulkUploadBooks(file);
-        return ResponseEntity
-                .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
-                .body(response);
+        return concurrencyLimits.execute(Bulkhead.BULK_UPLOAD, () -> {
+            ApiResponse<Void> response = bookService.bulkUploadBooks(file);
+            return ResponseEntity
+                    .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                    .body(response);
+        });
     }
 
     @GetMapping("/borrowing-report")
@@ -184,9 +494,30 @@ public class BookController {
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
             @Parameter(description = "End date (ISO format)", required = true)
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
-        ApiResponse<BorrowingReportDTO> response = bookService.generateBorrowingReport(startDate, endDate);
-        return ResponseEntity
-                .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
-                .body(response);
+        return concurrencyLimits.execute(Bulkhead.REPORTS, () -> {
+            ApiResponse<BorrowingReportDTO> response = bookService.generateBorrowingReport(startDate, endDate);
+            return ResponseEntity
+                    .status(response.isSuccess() ? HttpStatus.OK : HttpStatus.BAD_REQUEST)
+                    .body(response);
+        });
+    }
+
+    // A page of books carries a weak ETag, so a client re-reading an unchanged page gets a 304 instead of the body
+    private static <T> ResponseEntity<ApiResponse<Page<T>>> page(ApiResponse<Page<T>> response, HttpStatus errorStatus,
+                                                                 Function<Page<T>, String> etag) {
+        if (!response.isSuccess()) {
+            return ResponseEntity.status(errorStatus).body(response);
+        }
+        return ResponseEntity.ok().eTag(etag.apply(response.getData())).body(response);
+    }
+
+    private static ResponseEntity.BodyBuilder withETag(ResponseEntity.BodyBuilder builder, Book book) {
+        return book.getVersion() == null ? builder : builder.eTag(BookETags.of(book.getVersion()));
+    }
+
+    // ISBNs are accepted in any ISBN-10 or ISBN-13 form and passed on in canonical form
+    private static BookDTO normalized(BookDTO bookDTO) {
+        bookDTO.setIsbn(Isbn.normalize(bookDTO.getIsbn()));
+        return bookDTO;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,134 @@
+package com.mobilise.controller;
+
+import com.mobilise.model.Book;
+import org.springframework.data.domain.Page;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * ETags derived from book versions. A book's strong ETag is its version, so a conditional read needs only the
+ * version column. A page of books gets a weak ETag over the versions of its books and its total, which changes
+ * whenever a book on the page changes or the page shifts, but not with the rest of the response, such as its
+ * message. A page of only some fields gets one over the values it holds.
+ * <p>
+ * The JSON, CBOR and Smile encodings of a book are different bytes, so the tags of the binary ones carry a
+ * {@code -cbor} or {@code -smile} suffix, taken from the {@code Accept} header of the current request.
+ */
+final class BookETags {
+    // In the order Spring MVC prefers them when the Accept header allows several
+    private static final Map<MediaType, String> REPRESENTATIONS = new LinkedHashMap<>();
+    private static final Pattern VERSION = Pattern.compile("(\\d{1,18})(?:-cbor|-smile)?");
+
+    static {
+        REPRESENTATIONS.put(MediaType.APPLICATION_JSON, "");
+        REPRESENTATIONS.put(MediaType.APPLICATION_CBOR, "-cbor");
+        REPRESENTATIONS.put(MediaType.parseMediaType("application/x-jackson-smile"), "-smile");
+    }
+
+    private BookETags() {
+    }
+
+    static String of(long version) {
+        return new ETag(version + representation(), false).formattedTag();
+    }
+
+    static String of(Page<Book> page) {
+        StringBuilder content = new StringBuilder().append(page.getTotalElements());
+        for (Book book : page.getContent()) {
+            content.append(',').append(book.getIsbn()).append(':').append(book.getVersion());
+        }
+        return weak(content);
+    }
+
+    // A change to a field the rows leave out keeps their ETag
+    static String ofRows(Page<Map<String, Object>> page) {
+        StringBuilder content = new StringBuilder().append(page.getTotalElements());
+        for (Map<String, Object> row : page.getContent()) {
+            content.append(',').append(row.values());
+        }
+        return weak(content);
+    }
+
+    /**
+     * Whether {@code If-None-Match} lists {@code etag}. Conditional reads compare weakly, ignoring the {@code W/}.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        String tag = ETag.parse(etag).get(0).tag();
+        return ETag.parse(ifNoneMatch).stream().anyMatch(candidate -> candidate.isWildcard()
+                || candidate.tag().equals(tag));
+    }
+
+    /**
+     * The versions an {@code If-Match} header allows an update from, or {@code null} for any version. It compares
+     * strongly, so weak and foreign tags allow none.
+     */
+    static Set<Long> versions(String ifMatch) {
+        if (ifMatch == null) {
+            return null;
+        }
+        List<ETag> tags = ETag.parse(ifMatch);
+        if (tags.stream().anyMatch(ETag::isWildcard)) {
+            return null;
+        }
+        return tags.stream()
+                .filter(tag -> !tag.weak())
+                .map(tag -> VERSION.matcher(tag.tag()))
+                .filter(Matcher::matches)
+                .map(version -> Long.parseLong(version.group(1)))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * The ETag suffix of the encoding a request accepting {@code accept} is answered in: none for JSON, which is
+     * also the answer to a missing or unreadable header.
+     */
+    static String representation(String accept) {
+        if (accept == null) {
+            return "";
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        } catch (InvalidMediaTypeException e) {
+            return "";
+        }
+        MimeTypeUtils.sortBySpecificity(accepted);
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() == 0) {
+                continue;
+            }
+            for (Map.Entry<MediaType, String> representation : REPRESENTATIONS.entrySet()) {
+                if (type.includes(representation.getKey())) {
+                    return representation.getValue();
+                }
+            }
+        }
+        return "";
+    }
+
+    private static String representation() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                ? representation(attributes.getRequest().getHeader(HttpHeaders.ACCEPT)) : "";
+    }
+
+    private static String weak(CharSequence content) {
+        String digest = DigestUtils.md5DigestAsHex(content.toString().getBytes(StandardCharsets.UTF_8));
+        return new ETag(digest + representation(), true).formattedTag();
+    }
+}
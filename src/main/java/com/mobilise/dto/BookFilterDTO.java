@@ -0,0 +1,16 @@
+package com.mobilise.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Faceted catalogue filter. Unset fields do not filter; several authors match any of them.
+ */
+@Data
+public class BookFilterDTO {
+    private Integer yearFrom;
+    private Integer yearTo;
+    private List<String> authors;
+    private boolean inStockOnly;
+}
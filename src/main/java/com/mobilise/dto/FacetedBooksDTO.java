@@ -0,0 +1,19 @@
+package com.mobilise.dto;
+
+import com.mobilise.model.Book;
+import lombok.Data;
+import org.springframework.data.domain.Page;
+
+import java.util.Map;
+
+/**
+ * A page of filtered books with the number of matches per facet value. Each facet is counted under the other
+ * filters only, so the counts show what choosing another value of that facet would return.
+ */
+@Data
+public class FacetedBooksDTO {
+    private Page<Book> books;
+    private Map<Integer, Integer> publicationYears;
+    private Map<String, Integer> authors;
+    private int inStock;
+}
@@ -0,0 +1,13 @@
+package com.mobilise.dto;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+public class OverdueLoanDTO {
+    private Long borrowingRecordId;
+    private String isbn;
+    private String borrowerId;
+    private LocalDateTime borrowedAt;
+    private LocalDateTime dueAt;
+}
@@ -0,0 +1,22 @@
+package com.mobilise.exception;
+
+import com.mobilise.constants.ErrorCode;
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Getter
+public class FacetIndexUnavailableException extends LibraryException {
+    // How long until the index is expected to be ready, or null while it is disabled
+    private final Duration retryAfter;
+
+    public FacetIndexUnavailableException(String message, Duration retryAfter) {
+        super(ErrorCode.NOT_READY, message);
+        this.retryAfter = retryAfter;
+    }
+
+    public FacetIndexUnavailableException(String message) {
+        super(ErrorCode.DISABLED, message);
+        this.retryAfter = null;
+    }
+}
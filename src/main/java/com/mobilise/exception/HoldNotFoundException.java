@@ -0,0 +1,9 @@
+package com.mobilise.exception;
+
+import com.mobilise.constants.ErrorCode;
+
+public class HoldNotFoundException extends LibraryException {
+    public HoldNotFoundException(String message) {
+        super(ErrorCode.NOT_FOUND, message);
+    }
+}
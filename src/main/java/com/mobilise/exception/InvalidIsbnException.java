@@ -0,0 +1,7 @@
+package com.mobilise.exception;
+
+public class InvalidIsbnException extends InvalidOperationException {
+    public InvalidIsbnException(String message) {
+        super(message);
+    }
+}
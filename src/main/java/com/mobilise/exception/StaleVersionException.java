@@ -0,0 +1,9 @@
+package com.mobilise.exception;
+
+import com.mobilise.constants.ErrorCode;
+
+public class StaleVersionException extends LibraryException {
+    public StaleVersionException(String message) {
+        super(ErrorCode.PRECONDITION_FAILED, message);
+    }
+}
@@ -0,0 +1,403 @@
+package com.mobilise.facet;
+
+import com.mobilise.dto.BookFilterDTO;
+import com.mobilise.dto.FacetedBooksDTO;
+import com.mobilise.exception.FacetIndexUnavailableException;
+import com.mobilise.exception.InvalidOperationException;
+import com.mobilise.model.Book;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.shard.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory bitmap indexes over the live catalogue for faceted filtering.
+ * <p>
+ * Every book gets a dense ordinal, and compressed bitmaps of ordinals are kept per publication year, per normalized
+ * author and for the books with copies in stock. Filters and facet counts are bitmap intersections, so only the
+ * requested page of books is read from the database. The index is built from the database once the application is
+ * ready and kept current by the book service, which passes every book it writes after the transaction commits;
+ * writes that commit while the index is being built are applied on top of it.
+ * <p>
+ * Ordinals are handed out by publication year and then ISBN when the index is built, so that each year is a
+ * contiguous run and year ranges are cheap to intersect, and in order of creation afterwards. Filtered pages follow
+ * ordinal order.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CatalogueFacetIndex {
+    private final BookRepository bookRepository;
+    private final ShardRouter shardRouter;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${library.facets.enabled:true}")
+    private boolean enabled;
+
+    @Value("${library.facets.author-counts:20}")
+    private int authorCounts = 20;
+
+    @Value("${library.facets.retry-after:PT5S}")
+    private Duration retryAfter = Duration.ofSeconds(5);
+
+    // Queries share the read lock; a ReentrantReadWriteLock does not pin virtual threads
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> isbns = new ArrayList<>();
+    private int[] yearOf = new int[0];
+    private int[] authorOf = new int[0];
+    private final RoaringBitmap live = new RoaringBitmap();
+    private final RoaringBitmap inStock = new RoaringBitmap();
+    private final TreeMap<Integer, RoaringBitmap> byYear = new TreeMap<>();
+    private final Map<String, Integer> authorIds = new HashMap<>();
+    private final List<String> authorNames = new ArrayList<>();
+    private final List<RoaringBitmap> byAuthor = new ArrayList<>();
+    private List<Entry> pending = new ArrayList<>();
+    private boolean ready;
+
+    /**
+     * Facet values of one book as written.
+     */
+    record Entry(String isbn, boolean live, int year, String author, boolean inStock) {
+        static Entry of(Book book) {
+            return new Entry(book.getIsbn(), !book.isDeleted(), book.getPublicationYear(), book.getAuthor(),
+                    book.getCopiesInStock() != null && book.getCopiesInStock() > 0);
+        }
+    }
+
+    /**
+     * ISBNs of the requested page in index order, the total number of matches and the counts per facet value.
+     */
+    public record Result(List<String> isbns, long total, Map<Integer, Integer> publicationYears,
+                         Map<String, Integer> authors, int inStock) {
+
+        /**
+         * Puts the books read for this page into index order. Books deleted since the index was queried are left out.
+         */
+        public FacetedBooksDTO toDTO(List<Book> books, Pageable pageable) {
+            Map<String, Book> byIsbn = books.stream().collect(Collectors.toMap(Book::getIsbn, Function.identity()));
+            List<Book> page = isbns.stream().map(byIsbn::get).filter(Objects::nonNull).toList();
+            FacetedBooksDTO dto = new FacetedBooksDTO();
+            dto.setBooks(pageable.isPaged() ? new PageImpl<>(page, pageable, total) : new PageImpl<>(page));
+            dto.setPublicationYears(publicationYears);
+            dto.setAuthors(authors);
+            dto.setInStock(inStock);
+            return dto;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long started = System.nanoTime();
+        List<Entry> entries = new ArrayList<>();
+        // Not read-only, so that with read replicas the index starts from the primary
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        shardRouter.onEachShard(() -> transaction.execute(status -> {
+            try (Stream<Object[]> rows = bookRepository.streamFacets()) {
+                rows.forEach(row -> entries.add(new Entry((String) row[0], true, (Integer) row[1], (String) row[2],
+                        row[3] != null && (Integer) row[3] > 0)));
+            }
+            return entries.size();
+        }));
+        entries.sort(Comparator.comparingInt(Entry::year).thenComparing(Entry::isbn));
+
+        lock.writeLock().lock();
+        try {
+            clear();
+            entries.forEach(this::put);
+            pending.forEach(this::put);
+            runOptimize();
+            log.info("Built the facet index over {} books in {} ms, applied {} concurrent writes",
+                    live.getCardinality(), (System.nanoTime() - started) / 1_000_000, pending.size());
+            pending = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the facets of a written book once the surrounding transaction commits, or right away without one.
+     */
+    public void indexAfterCommit(Book book) {
+        if (!enabled) {
+            return;
+        }
+        Entry entry = Entry.of(book);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(entry);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    apply(entry);
+                } catch (RuntimeException e) {
+                    log.error("Failed to index facets of book {}: {}", entry.isbn(), e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    void apply(Entry entry) {
+        lock.writeLock().lock();
+        try {
+            if (!ready) {
+                pending.add(entry);
+                return;
+            }
+            put(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Filters the live catalogue and counts each facet under the other filters.
+     *
+     * @throws FacetIndexUnavailableException while the index is being built, or if it is disabled
+     */
+    public Result filter(BookFilterDTO filter, Pageable pageable) {
+        if (filter.getYearFrom() != null && filter.getYearTo() != null && filter.getYearFrom() > filter.getYearTo()) {
+            throw new InvalidOperationException("yearFrom must not be after yearTo");
+        }
+        lock.readLock().lock();
+        try {
+            if (!enabled) {
+                throw new FacetIndexUnavailableException("Faceted filtering is disabled, see library.facets.enabled");
+            }
+            if (!ready) {
+                throw new FacetIndexUnavailableException("The facet index is still being built", retryAfter);
+            }
+            RoaringBitmap years = filter.getYearFrom() == null && filter.getYearTo() == null ? null : RoaringBitmap.or(
+                    byYear.subMap(filter.getYearFrom() == null ? Integer.MIN_VALUE : filter.getYearFrom(), true,
+                            filter.getYearTo() == null ? Integer.MAX_VALUE : filter.getYearTo(), true)
+                            .values().iterator());
+            RoaringBitmap authors = filter.getAuthors() == null || filter.getAuthors().isEmpty()
+                    ? null
+                    : RoaringBitmap.or(filter.getAuthors().stream()
+                            .map(author -> authorIds.get(normalizeAuthor(author)))
+                            .filter(Objects::nonNull)
+                            .map(byAuthor::get)
+                            .iterator());
+            RoaringBitmap stock = filter.isInStockOnly() ? inStock : null;
+            RoaringBitmap matches = intersect(years, authors, stock);
+
+            return new Result(page(matches, pageable), matches.getCardinality(),
+                    yearCounts(intersect(authors, stock)),
+                    authorCounts(intersect(years, stock), filter.getAuthors()),
+                    RoaringBitmap.andCardinality(intersect(years, authors), inStock));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Key under which author names are grouped: compatibility-normalized, lower case, with single spaces.
+     */
+    static String normalizeAuthor(String author) {
+        if (author == null) {
+            return "";
+        }
+        return Normalizer.normalize(author, Normalizer.Form.NFKC)
+                .trim()
+                .replaceAll("\\s+", " ")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private void clear() {
+        ordinals.clear();
+        isbns.clear();
+        yearOf = new int[0];
+        authorOf = new int[0];
+        live.clear();
+        inStock.clear();
+        byYear.clear();
+        authorIds.clear();
+        authorNames.clear();
+        byAuthor.clear();
+    }
+
+    private void runOptimize() {
+        live.runOptimize();
+        inStock.runOptimize();
+        byYear.values().forEach(RoaringBitmap::runOptimize);
+        byAuthor.forEach(RoaringBitmap::runOptimize);
+    }
+
+    private void put(Entry entry) {
+        Integer existing = ordinals.get(entry.isbn());
+        if (existing == null && !entry.live()) {
+            return;
+        }
+        int ordinal = existing == null ? newOrdinal(entry.isbn()) : existing;
+        remove(ordinal);
+        if (!entry.live()) {
+            return;
+        }
+        live.add(ordinal);
+        yearOf[ordinal] = entry.year();
+        byYear.computeIfAbsent(entry.year(), year -> new RoaringBitmap()).add(ordinal);
+        int author = authorId(entry.author());
+        authorOf[ordinal] = author;
+        byAuthor.get(author).add(ordinal);
+        if (entry.inStock()) {
+            inStock.add(ordinal);
+        }
+    }
+
+    private int newOrdinal(String isbn) {
+        int ordinal = isbns.size();
+        isbns.add(isbn);
+        ordinals.put(isbn, ordinal);
+        if (ordinal == yearOf.length) {
+            int capacity = Math.max(1024, ordinal * 2);
+            yearOf = Arrays.copyOf(yearOf, capacity);
+            authorOf = Arrays.copyOf(authorOf, capacity);
+        }
+        return ordinal;
+    }
+
+    private void remove(int ordinal) {
+        if (!live.contains(ordinal)) {
+            return;
+        }
+        live.remove(ordinal);
+        inStock.remove(ordinal);
+        RoaringBitmap year = byYear.get(yearOf[ordinal]);
+        year.remove(ordinal);
+        if (year.isEmpty()) {
+            byYear.remove(yearOf[ordinal]);
+        }
+        byAuthor.get(authorOf[ordinal]).remove(ordinal);
+    }
+
+    // The first spelling seen names the author in facet counts
+    private int authorId(String author) {
+        return authorIds.computeIfAbsent(normalizeAuthor(author), key -> {
+            authorNames.add(author == null ? "" : author.trim());
+            byAuthor.add(new RoaringBitmap());
+            return byAuthor.size() - 1;
+        });
+    }
+
+    // The live books in every given bitmap; the live bitmap itself is returned as is and must not be modified
+    private RoaringBitmap intersect(RoaringBitmap... filters) {
+        RoaringBitmap result = live;
+        for (RoaringBitmap filter : filters) {
+            if (filter != null) {
+                result = RoaringBitmap.and(result, filter);
+            }
+        }
+        return result;
+    }
+
+    private List<String> page(RoaringBitmap matches, Pageable pageable) {
+        List<String> page = new ArrayList<>();
+        long limit = pageable.isPaged() ? pageable.getPageSize() : Long.MAX_VALUE;
+        if (pageable.isPaged() && pageable.getOffset() >= matches.getCardinality()) {
+            return page;
+        }
+        PeekableIntIterator ordinals = matches.getIntIterator();
+        if (pageable.isPaged()) {
+            ordinals.advanceIfNeeded(matches.select(Math.toIntExact(pageable.getOffset())));
+        }
+        while (ordinals.hasNext() && page.size() < limit) {
+            page.add(isbns.get(ordinals.next()));
+        }
+        return page;
+    }
+
+    private Map<Integer, Integer> yearCounts(RoaringBitmap scope) {
+        Map<Integer, Integer> counts = new LinkedHashMap<>();
+        byYear.forEach((year, books) -> {
+            int count = scope == live ? books.getCardinality() : RoaringBitmap.andCardinality(scope, books);
+            if (count > 0) {
+                counts.put(year, count);
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * The most frequent authors in {@code scope}, plus the selected authors so their counts are always shown.
+     * Counting walks whichever is smaller: the books in scope or the author bitmaps.
+     */
+    private Map<String, Integer> authorCounts(RoaringBitmap scope, List<String> selected) {
+        int[] counts = new int[byAuthor.size()];
+        if (scope.getCardinality() < counts.length) {
+            scope.forEach((int ordinal) -> counts[authorOf[ordinal]]++);
+        } else {
+            for (int author = 0; author < counts.length; author++) {
+                counts[author] = scope == live
+                        ? byAuthor.get(author).getCardinality()
+                        : RoaringBitmap.andCardinality(scope, byAuthor.get(author));
+            }
+        }
+
+        Comparator<Integer> byCount = Comparator.<Integer>comparingInt(author -> counts[author])
+                .thenComparing(author -> authorNames.get(author), Comparator.reverseOrder());
+        PriorityQueue<Integer> top = new PriorityQueue<>(byCount);
+        for (int author = 0; author < counts.length; author++) {
+            if (counts[author] > 0) {
+                top.add(author);
+                if (top.size() > authorCounts) {
+                    top.poll();
+                }
+            }
+        }
+        List<Integer> shown = new ArrayList<>(top);
+        if (selected != null) {
+            selected.stream()
+                    .map(author -> authorIds.get(normalizeAuthor(author)))
+                    .filter(author -> author != null && !shown.contains(author))
+                    .forEach(shown::add);
+        }
+        shown.sort(byCount.reversed());
+        Map<String, Integer> result = new LinkedHashMap<>();
+        shown.forEach(author -> result.put(authorNames.get(author), counts[author]));
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+package com.mobilise.hold;
+
+import com.mobilise.constants.ResponseMessages;
+import com.mobilise.dto.ApiResponse;
+import com.mobilise.model.Hold;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Parks long polls on holds until the hold stops waiting.
+ * <p>
+ * A parked poll is a future completed by the transaction that fulfils or cancels the hold, once it commits, so
+ * waiting for a copy holds no thread and reads nothing until then. Polls are kept in memory only: the queue itself
+ * is the {@code holds} table, and a client whose poll was cut short, by {@code library.holds.max-wait} or a
+ * restart, polls again with its hold id.
+ */
+@Slf4j
+@Component
+public class HoldWaiters {
+    @Value("${library.holds.max-wait:PT60S}")
+    private Duration maxWait = Duration.ofSeconds(60);
+
+    private final Map<Long, List<CompletableFuture<ApiResponse<Hold>>>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * Reads a hold with {@code read} and, while it is waiting, waits up to {@code wait} for it to be fulfilled or
+     * cancelled. Completes with the hold as read when nothing changed in time.
+     */
+    public CompletableFuture<ApiResponse<Hold>> poll(Long holdId, Duration wait, Supplier<ApiResponse<Hold>> read) {
+        // Parked before reading, so a hold closed in between is not missed
+        CompletableFuture<ApiResponse<Hold>> closed = new CompletableFuture<>();
+        waiters.compute(holdId, (id, polls) -> {
+            List<CompletableFuture<ApiResponse<Hold>>> parked = polls == null ? new CopyOnWriteArrayList<>() : polls;
+            parked.add(closed);
+            return parked;
+        });
+        ApiResponse<Hold> current = read.get();
+        if (wait == null || wait.isNegative() || wait.isZero() || !current.isSuccess()
+                || current.getData().getStatus() != Hold.Status.WAITING) {
+            unpark(holdId, closed);
+            return CompletableFuture.completedFuture(current);
+        }
+        long timeout = (wait.compareTo(maxWait) > 0 ? maxWait : wait).toMillis();
+        return closed.completeOnTimeout(current, timeout, TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) -> unpark(holdId, closed));
+    }
+
+    /**
+     * Completes the polls on a hold once the surrounding transaction commits, or right away without one.
+     */
+    public void closedAfterCommit(Hold hold) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            complete(hold);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                complete(hold);
+            }
+        });
+    }
+
+    int parked() {
+        return waiters.values().stream().mapToInt(List::size).sum();
+    }
+
+    private void complete(Hold hold) {
+        List<CompletableFuture<ApiResponse<Hold>>> polls = waiters.remove(hold.getId());
+        if (polls != null) {
+            log.debug("Completing {} polls on hold {}", polls.size(), hold.getId());
+            polls.forEach(poll -> poll.complete(ApiResponse.success(hold, ResponseMessages.HOLD_RETRIEVED)));
+        }
+    }
+
+    private void unpark(Long holdId, CompletableFuture<ApiResponse<Hold>> poll) {
+        waiters.computeIfPresent(holdId, (id, polls) -> {
+            polls.remove(poll);
+            return polls.isEmpty() ? null : polls;
+        });
+    }
+}
@@ -0,0 +1,281 @@
+package com.mobilise.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mobilise.constants.ResponseMessages;
+import com.mobilise.dto.ApiResponse;
+import com.mobilise.dto.ErrorDetails;
+import com.mobilise.shard.ShardContext;
+import com.mobilise.shard.ShardRouter;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Runs a mutating request once per {@code Idempotency-Key} and replays its response to retries.
+ * <p>
+ * The key is inserted, and the response stored, in the same transaction as the request's own writes, so after a
+ * crash a retry either finds the response or finds nothing done. A retry replays the stored response without
+ * running the request again or reading the catalogue. Retries arriving while the first request is still running
+ * wait for it in memory, and retries on another instance wait on the key's row. The latest
+ * {@code library.idempotency.cache-size} responses are also kept in memory, and keys expire after
+ * {@code library.idempotency.ttl}. Keys are stored on the shard of the request's book. A key reused for another
+ * method, URL or body is rejected rather than replayed.
+ */
+@Slf4j
+@Component
+public class IdempotentRequests {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${library.idempotency.ttl:PT24H}")
+    private Duration ttl = Duration.ofHours(24);
+
+    @Value("${library.idempotency.cache-size:10000}")
+    private int cacheSize = 10000;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Stored> recent = new LinkedHashMap<>();
+    private final Map<String, CompletableFuture<Stored>> running = new ConcurrentHashMap<>();
+
+    public IdempotentRequests(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, ShardRouter shardRouter,
+                              PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.shardRouter = shardRouter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // The response of a request, as stored. Responses stored by this instance keep the object they were sent as
+    private record Stored(String request, int status, String body, Object response, LocalDateTime createdAt) {
+    }
+
+    private record Outcome(Stored stored, boolean ran) {
+    }
+
+    /**
+     * Runs {@code handler} for the request on book {@code isbn}, unless {@code key} was used before, in which case the
+     * earlier response is replayed. A request without a key simply runs.
+     */
+    public <T> ResponseEntity<ApiResponse<T>> execute(String key, HttpServletRequest request, String isbn,
+                                                      Class<T> dataType,
+                                                      Supplier<ResponseEntity<ApiResponse<T>>> handler) {
+        if (key == null) {
+            return handler.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return rejected(HttpStatus.BAD_REQUEST, HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String description = describe(request);
+        while (true) {
+            Stored stored = cached(key);
+            if (stored == null) {
+                CompletableFuture<Stored> mine = new CompletableFuture<>();
+                CompletableFuture<Stored> first = running.putIfAbsent(key, mine);
+                if (first != null) {
+                    try {
+                        stored = first.join();
+                    } catch (CompletionException e) {
+                        // The first one failed without storing a response, so this one may run
+                        continue;
+                    }
+                } else {
+                    try {
+                        Outcome outcome = runOnce(key, description, isbn, handler);
+                        if (outcome == null) {
+                            // The request that took the key is gone again, expired or purged, so the key is free
+                            mine.completeExceptionally(new IllegalStateException(HEADER + " " + key + " was released"));
+                            continue;
+                        }
+                        stored = outcome.stored();
+                        remember(key, stored);
+                        mine.complete(stored);
+                        if (outcome.ran()) {
+                            return cast(stored.response());
+                        }
+                    } catch (RuntimeException e) {
+                        mine.completeExceptionally(e);
+                        throw e;
+                    } finally {
+                        running.remove(key, mine);
+                    }
+                }
+            }
+            return replay(stored, description, dataType);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${library.idempotency.purge-interval:PT1H}")
+    public void purgeExpired() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(ttl);
+        List<Integer> purged = shardRouter.onEachShard(() ->
+                jdbcTemplate.update("DELETE FROM idempotency_keys WHERE created_at < ?", cutoff));
+        log.debug("Purged {} expired idempotency keys", purged.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    private <T> Outcome runOnce(String key, String description, String isbn,
+                                Supplier<ResponseEntity<ApiResponse<T>>> handler) {
+        String shard = shardRouter.isSharded() ? shardRouter.shardFor(isbn) : null;
+        return ShardContext.call(shard, () -> {
+            try {
+                return transactionTemplate.execute(status -> {
+                    Stored stored = find(key);
+                    if (stored != null) {
+                        return new Outcome(stored, false);
+                    }
+                    LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+                    jdbcTemplate.update("DELETE FROM idempotency_keys WHERE idempotency_key = ? AND created_at < ?",
+                            key, now.minus(ttl));
+                    jdbcTemplate.update("INSERT INTO idempotency_keys (idempotency_key, request, created_at) " +
+                            "VALUES (?, ?, ?)", key, description, now);
+                    ResponseEntity<ApiResponse<T>> response = handler.get();
+                    String body = toJson(response.getBody());
+                    jdbcTemplate.update("UPDATE idempotency_keys SET status = ?, response = ? " +
+                            "WHERE idempotency_key = ?", response.getStatusCode().value(), body, key);
+                    return new Outcome(new Stored(description, response.getStatusCode().value(), body, response, now),
+                            true);
+                });
+            } catch (DuplicateKeyException e) {
+                // Another instance ran the request and committed first
+                Stored stored = transactionTemplate.execute(status -> find(key));
+                return stored == null ? null : new Outcome(stored, false);
+            }
+        });
+    }
+
+    private Stored find(String key) {
+        List<Stored> rows = jdbcTemplate.query("SELECT request, status, response, created_at FROM idempotency_keys " +
+                        "WHERE idempotency_key = ? AND created_at >= ?",
+                (rs, row) -> new Stored(rs.getString("request"), rs.getInt("status"), rs.getString("response"), null,
+                        rs.getTimestamp("created_at").toLocalDateTime()),
+                key, LocalDateTime.now().minus(ttl));
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private Stored cached(String key) {
+        lock.lock();
+        try {
+            Stored stored = recent.get(key);
+            if (stored != null && stored.createdAt().isBefore(LocalDateTime.now().minus(ttl))) {
+                recent.remove(key);
+                return null;
+            }
+            return stored;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remember(String key, Stored stored) {
+        lock.lock();
+        try {
+            recent.put(key, stored);
+            Iterator<Stored> oldest = recent.values().iterator();
+            while (recent.size() > cacheSize) {
+                oldest.next();
+                oldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private <T> ResponseEntity<ApiResponse<T>> replay(Stored stored, String description, Class<T> dataType) {
+        if (!stored.request().equals(description)) {
+            return rejected(HttpStatus.UNPROCESSABLE_ENTITY, HEADER + " was already used for " + stored.request());
+        }
+        ApiResponse<T> body;
+        if (stored.response() != null) {
+            ResponseEntity<ApiResponse<T>> response = cast(stored.response());
+            body = response.getBody();
+        } else {
+            body = fromJson(stored.body(), dataType);
+        }
+        log.debug("Replaying response to {} {}", description, stored.status());
+        return ResponseEntity.status(stored.status()).header(REPLAYED_HEADER, "true").body(body);
+    }
+
+    private String toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to store response: " + e.getMessage(), e);
+        }
+    }
+
+    private <T> ApiResponse<T> fromJson(String body, Class<T> dataType) {
+        JavaType type = objectMapper.getTypeFactory().constructParametricType(ApiResponse.class, dataType);
+        try {
+            return objectMapper.readValue(body, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to replay stored response: " + e.getMessage(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ResponseEntity<ApiResponse<T>> cast(Object response) {
+        return (ResponseEntity<ApiResponse<T>>) response;
+    }
+
+    private static <T> ResponseEntity<ApiResponse<T>> rejected(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(ApiResponse.error("Invalid idempotency key",
+                new ErrorDetails(ResponseMessages.INVALID_OPERATION, message)));
+    }
+
+    // A key belongs to the method, URL and body it was first used with
+    private static String describe(HttpServletRequest request) {
+        String query = request.getQueryString();
+        String description = request.getMethod() + " " + request.getRequestURI() + (query == null ? "" : "?" + query);
+        byte[] body = body(request);
+        return body.length == 0 ? description : description + " " + DigestUtils.md5DigestAsHex(body);
+    }
+
+    // The body as RequestBodyCachingFilter kept it, read to the end in case the converter stopped short of it
+    private static byte[] body(HttpServletRequest request) {
+        ContentCachingRequestWrapper cached = WebUtils.getNativeRequest(request, ContentCachingRequestWrapper.class);
+        if (cached == null) {
+            return new byte[0];
+        }
+        try {
+            StreamUtils.drain(cached.getInputStream());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the request body: " + e.getMessage(), e);
+        }
+        return cached.getContentAsByteArray();
+    }
+}
@@ -2,35 +2,65 @@ package com.mobilise.interfaces;
 
 import com.mobilise.dto.ApiResponse;
 import com.mobilise.dto.BookDTO;
+import com.mobilise.dto.BookFilterDTO;
 import com.mobilise.dto.BorrowingReportDTO;
+import com.mobilise.dto.FacetedBooksDTO;
+import com.mobilise.dto.OverdueLoanDTO;
 import com.mobilise.model.Book;
 import com.mobilise.model.BorrowingRecord;
+import com.mobilise.model.Hold;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 public interface BookServiceInterface {
     ApiResponse<Page<Book>> getAllBooks(Pageable pageable);
 
+    ApiResponse<Page<Map<String, Object>>> getBookFields(List<String> fields, Pageable pageable);
+
     ApiResponse<Book> getBookByIsbn(String isbn);
 
+    Optional<Long> getBookVersion(String isbn);
+
     ApiResponse<Book> createBook(BookDTO bookDTO);
 
     ApiResponse<Book> updateBook(String isbn, BookDTO bookDTO);
 
+    ApiResponse<Book> updateBook(String isbn, BookDTO bookDTO, Set<Long> expectedVersions);
+
     ApiResponse<Void> deleteBook(String isbn);
 
     ApiResponse<Page<Book>> searchBooks(String query, Pageable pageable);
 
-    ApiResponse<BorrowingRecord> borrowBook(String isbn);
+    ApiResponse<Page<Map<String, Object>>> searchBookFields(String query, List<String> fields, Pageable pageable);
+
+    ApiResponse<FacetedBooksDTO> filterBooks(BookFilterDTO filter, Pageable pageable);
+
+    ApiResponse<List<Book>> getRelatedBooks(String isbn);
+
+    ApiResponse<BorrowingRecord> borrowBook(String isbn, String borrowerId);
 
     ApiResponse<BorrowingRecord> returnBook(String isbn);
 
+    ApiResponse<Hold> placeHold(String isbn, String borrowerId);
+
+    ApiResponse<Hold> getHold(String isbn, Long id);
+
+    ApiResponse<Hold> cancelHold(String isbn, Long id);
+
     ApiResponse<Void> bulkUploadBooks(MultipartFile file);
 
     ApiResponse<BorrowingReportDTO> generateBorrowingReport(LocalDateTime startDate, LocalDateTime endDate);
 
     ApiResponse<Book> restoreBook(String isbn);
+
+    ApiResponse<Page<Book>> getBooksOnLoan(Pageable pageable);
+
+    ApiResponse<Page<OverdueLoanDTO>> getOverdueLoans(Pageable pageable);
 }
@@ -0,0 +1,422 @@
+package com.mobilise.journal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped log of borrow and return events.
+ * <p>
+ * Events are fixed-size records written sequentially into pre-allocated segment files that roll over when full.
+ * Pages are forced to disk every {@code fsync-every} events and at least every {@code fsync-interval}. The journal
+ * keeps the number of open loans per ISBN in memory; a periodic checkpoint persists that map with the last
+ * sequence number, and on startup the map is rebuilt from the checkpoint plus the events after it. Segments that
+ * lie entirely before the checkpoint are deleted.
+ * <p>
+ * Events are appended after the borrowing transaction commits, so the journal never contains a borrow or return
+ * that was rolled back.
+ */
+@Slf4j
+@Component
+public class BorrowingJournal {
+    static final int RECORD_SIZE = 64;
+    private static final int MAX_ISBN_BYTES = 32;
+    private static final int ISBN_OFFSET = 18;
+    private static final int RECORD_ID_OFFSET = ISBN_OFFSET + MAX_ISBN_BYTES;
+    private static final int CRC_OFFSET = RECORD_ID_OFFSET + Long.BYTES;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int CHECKPOINT_MAGIC = 0x424A4350; // "BJCP"
+
+    @Value("${library.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${library.journal.directory:./data/journal}")
+    private Path directory;
+
+    @Value("${library.journal.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${library.journal.fsync-every:64}")
+    private int fsyncEvery;
+
+    // ReentrantLock rather than synchronized, so appends do not pin virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Integer> openLoans = new HashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long nextSequence = 1;
+    private long checkpointSequence;
+    private int unsynced;
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        readCheckpoint();
+        nextSequence = checkpointSequence + 1;
+
+        List<Path> segments = listSegments();
+        Path last = null;
+        int lastValidRecords = 0;
+        for (Path path : segments) {
+            lastValidRecords = scanSegment(path, checkpointSequence, this::apply);
+            last = path;
+            if (lastValidRecords > 0) {
+                nextSequence = Math.max(nextSequence, firstSequenceOf(path) + lastValidRecords);
+            }
+        }
+
+        if (last != null && (long) (lastValidRecords + 1) * RECORD_SIZE <= Files.size(last)
+                && firstSequenceOf(last) + lastValidRecords == nextSequence) {
+            mapSegment(last, (long) lastValidRecords * RECORD_SIZE);
+        } else {
+            roll();
+        }
+        log.info("Borrowing journal opened at sequence {} with {} titles on loan", nextSequence - 1, openLoans.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void recordBorrow(String isbn, Long recordId) {
+        appendAfterCommit(JournalEvent.Type.BORROW, isbn, recordId);
+    }
+
+    public void recordReturn(String isbn, Long recordId) {
+        appendAfterCommit(JournalEvent.Type.RETURN, isbn, recordId);
+    }
+
+    private void appendAfterCommit(JournalEvent.Type type, String isbn, Long recordId) {
+        if (!enabled) {
+            return;
+        }
+        long id = recordId == null ? 0 : recordId;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(type, isbn, id);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    append(type, isbn, id);
+                } catch (RuntimeException e) {
+                    log.error("Failed to journal {} of book {}: {}", type, isbn, e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Appends an event and returns its sequence number.
+     */
+    public long append(JournalEvent.Type type, String isbn, long recordId) {
+        if (!enabled) {
+            throw new IllegalStateException("The borrowing journal is disabled");
+        }
+        byte[] isbnBytes = isbn.getBytes(StandardCharsets.US_ASCII);
+        if (isbnBytes.length > MAX_ISBN_BYTES) {
+            throw new IllegalArgumentException("ISBN too long for the borrowing journal: " + isbn);
+        }
+        lock.lock();
+        try {
+            if (segment.remaining() < RECORD_SIZE) {
+                roll();
+            }
+            long sequence = nextSequence++;
+            long timestamp = System.currentTimeMillis();
+            int start = segment.position();
+            segment.putLong(sequence)
+                    .putLong(timestamp)
+                    .put(type.code())
+                    .put((byte) isbnBytes.length)
+                    .put(isbnBytes)
+                    .put(new byte[MAX_ISBN_BYTES - isbnBytes.length])
+                    .putLong(recordId);
+            segment.putInt(crc(segment, start));
+            segment.position(start + RECORD_SIZE);
+
+            apply(new JournalEvent(sequence, timestamp, type, isbn, recordId));
+            if (++unsynced >= fsyncEvery) {
+                force();
+            }
+            return sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Open loans per ISBN as derived from the journal.
+     */
+    public Map<String, Integer> openLoans() {
+        lock.lock();
+        try {
+            return Map.copyOf(openLoans);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return nextSequence - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts an empty journal from an existing loan state, e.g. when the journal is enabled on a database
+     * that already has open loans.
+     */
+    public void seed(Map<String, Integer> loans) throws IOException {
+        lock.lock();
+        try {
+            if (nextSequence != 1 || !openLoans.isEmpty()) {
+                throw new IllegalStateException("The borrowing journal already holds events");
+            }
+            openLoans.putAll(loans);
+            writeCheckpoint(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replays all retained events with a sequence greater than {@code fromSequence}.
+     *
+     * @return the number of events replayed
+     */
+    public long replay(long fromSequence, Consumer<JournalEvent> consumer) throws IOException {
+        lock.lock();
+        try {
+            force();
+            long[] count = {0};
+            for (Path path : listSegments()) {
+                scanSegment(path, fromSequence, event -> {
+                    consumer.accept(event);
+                    count[0]++;
+                });
+            }
+            return count[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${library.journal.fsync-interval:PT1S}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${library.journal.checkpoint-interval:PT5M}",
+            initialDelayString = "${library.journal.checkpoint-interval:PT5M}")
+    public void checkpoint() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            force();
+            writeCheckpoint(nextSequence - 1);
+            deleteSegmentsBefore(checkpointSequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        if (!enabled || channel == null) {
+            return;
+        }
+        checkpoint();
+        lock.lock();
+        try {
+            channel.close();
+            channel = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void apply(JournalEvent event) {
+        // Events are appended after commit, so a return can reach the journal just before the borrow it closes.
+        // Counts are therefore signed and only balance out once both events are in.
+        int delta = event.type() == JournalEvent.Type.BORROW ? 1 : -1;
+        openLoans.merge(event.isbn(), delta, (loans, change) -> loans + change == 0 ? null : loans + change);
+    }
+
+    private void force() {
+        if (segment != null && unsynced > 0) {
+            segment.force();
+            unsynced = 0;
+        }
+    }
+
+    private void roll() throws IOException {
+        force();
+        if (channel != null) {
+            channel.close();
+        }
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+        mapSegment(path, 0);
+        log.debug("Rolled borrowing journal to segment {}", path.getFileName());
+    }
+
+    private void mapSegment(Path path, long position) throws IOException {
+        long size = Math.max(segmentSize.toBytes() / RECORD_SIZE, 1) * RECORD_SIZE;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        segment.position((int) position);
+    }
+
+    /**
+     * Reads the valid prefix of a segment, passing events after {@code fromSequence} to the consumer.
+     *
+     * @return the number of valid records in the segment
+     */
+    private int scanSegment(Path path, long fromSequence, Consumer<JournalEvent> consumer) throws IOException {
+        long expected = firstSequenceOf(path);
+        try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+            int records = 0;
+            while (buffer.remaining() >= RECORD_SIZE) {
+                int start = buffer.position();
+                long sequence = buffer.getLong(start);
+                if (sequence != expected || buffer.getInt(start + CRC_OFFSET) != crc(buffer, start)) {
+                    break;
+                }
+                if (sequence > fromSequence) {
+                    consumer.accept(readEvent(buffer, start));
+                }
+                buffer.position(start + RECORD_SIZE);
+                expected++;
+                records++;
+            }
+            return records;
+        }
+    }
+
+    private static JournalEvent readEvent(ByteBuffer buffer, int start) {
+        int length = buffer.get(start + 17);
+        byte[] isbn = new byte[length];
+        buffer.get(start + ISBN_OFFSET, isbn);
+        return new JournalEvent(
+                buffer.getLong(start),
+                buffer.getLong(start + 8),
+                JournalEvent.Type.fromCode(buffer.get(start + 16)),
+                new String(isbn, StandardCharsets.US_ASCII),
+                buffer.getLong(start + RECORD_ID_OFFSET));
+    }
+
+    private static int crc(ByteBuffer buffer, int start) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(start, CRC_OFFSET));
+        return (int) crc.getValue();
+    }
+
+    private void readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Corrupt borrowing journal checkpoint: " + file);
+            }
+            checkpointSequence = in.readLong();
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                openLoans.put(in.readUTF(), in.readInt());
+            }
+        }
+    }
+
+    private void writeCheckpoint(long sequence) throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeLong(sequence);
+            out.writeInt(openLoans.size());
+            for (Map.Entry<String, Integer> entry : openLoans.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointSequence = sequence;
+    }
+
+    private void deleteSegmentsBefore(long sequence) throws IOException {
+        List<Path> segments = listSegments();
+        // A segment is obsolete once the following segment starts at or before the first unchecked sequence
+        for (int i = 0; i < segments.size() - 1; i++) {
+            if (firstSequenceOf(segments.get(i + 1)) <= sequence + 1) {
+                Files.delete(segments.get(i));
+                log.debug("Deleted checkpointed journal segment {}", segments.get(i).getFileName());
+            }
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long firstSequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,59 @@
+package com.mobilise.journal;
+
+import com.mobilise.repository.BorrowingRecordRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares the open loans rebuilt from the borrowing journal with the borrowing records on startup. A new
+ * journal is seeded from the database so that it can be enabled on an existing catalogue.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BorrowingJournalVerifier implements ApplicationRunner {
+    private final BorrowingJournal borrowingJournal;
+    private final BorrowingRecordRepository borrowingRecordRepository;
+
+    // Read-write, so that with replica routing the journal is checked against the primary
+    @Override
+    @Transactional
+    public void run(ApplicationArguments args) throws Exception {
+        if (!borrowingJournal.isEnabled()) {
+            return;
+        }
+        Map<String, Integer> recorded = new HashMap<>();
+        for (Object[] row : borrowingRecordRepository.countOpenBorrowingsByBook()) {
+            recorded.put((String) row[0], ((Long) row[1]).intValue());
+        }
+
+        if (borrowingJournal.lastSequence() == 0 && borrowingJournal.openLoans().isEmpty()) {
+            borrowingJournal.seed(recorded);
+            log.info("Seeded borrowing journal with {} titles on loan", recorded.size());
+            return;
+        }
+
+        Map<String, Integer> journaled = borrowingJournal.openLoans();
+        Set<String> isbns = new HashSet<>(recorded.keySet());
+        isbns.addAll(journaled.keySet());
+        int mismatches = 0;
+        for (String isbn : isbns) {
+            int expected = recorded.getOrDefault(isbn, 0);
+            int actual = journaled.getOrDefault(isbn, 0);
+            if (expected != actual) {
+                mismatches++;
+                log.warn("Borrowing journal has {} open loans for {} but the database has {}", actual, isbn, expected);
+            }
+        }
+        log.info("Verified borrowing journal against {} titles on loan, {} mismatches", isbns.size(), mismatches);
+    }
+}
@@ -0,0 +1,36 @@
+package com.mobilise.journal;
+
+/**
+ * A borrow or return as stored in the borrowing journal.
+ *
+ * @param sequence        position in the journal, starting at 1
+ * @param timestampMillis commit time in epoch milliseconds
+ * @param type            borrow or return
+ * @param isbn            ISBN of the book
+ * @param recordId        id of the matching borrowing record, 0 when unknown
+ */
+public record JournalEvent(long sequence, long timestampMillis, Type type, String isbn, long recordId) {
+    public enum Type {
+        BORROW((byte) 1),
+        RETURN((byte) 2);
+
+        private final byte code;
+
+        Type(byte code) {
+            this.code = code;
+        }
+
+        byte code() {
+            return code;
+        }
+
+        static Type fromCode(byte code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown journal event type " + code);
+        }
+    }
+}
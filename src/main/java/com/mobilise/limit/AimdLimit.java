@@ -0,0 +1,86 @@
+package com.mobilise.limit;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrency limit that adapts to the latency it observes: additive increase, multiplicative decrease.
+ * <p>
+ * A request that completes within the latency threshold raises the limit by one, but only while at least half of
+ * it was in use, so an idle limit does not grow without bound. A request that takes longer, or fails, multiplies
+ * it by the backoff ratio. Requests beyond the limit are not queued; {@link #tryAcquire()} refuses them.
+ */
+public final class AimdLimit {
+    static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private double limit;
+    private int inFlight;
+
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= max, got " + minLimit + ".."
+                    + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+    }
+
+    /**
+     * Takes a slot if fewer than the limit are in flight. Every successful call must be followed by one
+     * {@link #release}.
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back a slot and adjusts the limit to how the request went.
+     */
+    public void release(long latencyNanos, boolean failed) {
+        lock.lock();
+        try {
+            int used = inFlight--;
+            if (failed || latencyNanos > latencyThresholdNanos) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            } else if (used * 2 >= (int) limit) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
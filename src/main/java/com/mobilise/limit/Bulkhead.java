@@ -0,0 +1,50 @@
+package com.mobilise.limit;
+
+import java.time.Duration;
+
+/**
+ * The classes of write endpoints that are limited separately, so that long reports and uploads cannot take the
+ * capacity checkouts need. Each is configured under {@code library.limits.<name>}; the defaults are below.
+ */
+public enum Bulkhead {
+    /** Borrowing, returning and holds: short transactions on one book. */
+    CHECKOUT("checkout", 10, 2, 50, Duration.ofMillis(250)),
+    /** CSV uploads, which write the whole file in one go. */
+    BULK_UPLOAD("bulk-upload", 1, 1, 2, Duration.ofSeconds(30)),
+    /** Borrowing reports, which read every record in their range. */
+    REPORTS("reports", 2, 1, 4, Duration.ofSeconds(5));
+
+    private final String propertyName;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final Duration latencyThreshold;
+
+    Bulkhead(String propertyName, int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold) {
+        this.propertyName = propertyName;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThreshold = latencyThreshold;
+    }
+
+    public String getPropertyName() {
+        return propertyName;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public Duration getLatencyThreshold() {
+        return latencyThreshold;
+    }
+}
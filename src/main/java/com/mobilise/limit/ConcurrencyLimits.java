@@ -0,0 +1,118 @@
+package com.mobilise.limit;
+
+import com.mobilise.constants.ResponseMessages;
+import com.mobilise.dto.ApiResponse;
+import com.mobilise.dto.ErrorDetails;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Sheds load on the write endpoints before it piles up on request threads.
+ * <p>
+ * Every {@link Bulkhead} has its own {@link AimdLimit}, which shrinks when its requests slow down past
+ * {@code library.limits.<name>.latency-threshold} or fail, and grows back while they are fast. A request beyond
+ * the limit is answered {@code 503} with a {@code Retry-After} of {@code library.limits.retry-after} at once,
+ * instead of waiting for a database that is already behind, so reads keep their threads and connections. The
+ * limits are published as the {@code library.limits.limit}, {@code library.limits.in-flight} and
+ * {@code library.limits.rejected} metrics, tagged with the bulkhead.
+ */
+@Slf4j
+@Component
+public class ConcurrencyLimits {
+    private static final String PREFIX = "library.limits.";
+    // Errors of the request rather than of the service, which say nothing about how it is coping. The service
+    // answers these, and its own failures, with 400, so the code is what tells them apart.
+    private static final Set<String> CLIENT_ERRORS = Set.of(ResponseMessages.NOT_FOUND,
+            ResponseMessages.INVALID_OPERATION, ResponseMessages.PRECONDITION_FAILED, ResponseMessages.RETURN_ERROR,
+            ResponseMessages.OVERLOADED);
+
+    @Value("${library.limits.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${library.limits.retry-after:PT1S}")
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    private final Map<Bulkhead, AimdLimit> limits = new EnumMap<>(Bulkhead.class);
+    private final Map<Bulkhead, Counter> rejected = new EnumMap<>(Bulkhead.class);
+
+    public ConcurrencyLimits(Environment environment, MeterRegistry meterRegistry) {
+        for (Bulkhead bulkhead : Bulkhead.values()) {
+            String prefix = PREFIX + bulkhead.getPropertyName() + ".";
+            AimdLimit limit = new AimdLimit(
+                    environment.getProperty(prefix + "initial-limit", Integer.class, bulkhead.getInitialLimit()),
+                    environment.getProperty(prefix + "min-limit", Integer.class, bulkhead.getMinLimit()),
+                    environment.getProperty(prefix + "max-limit", Integer.class, bulkhead.getMaxLimit()),
+                    environment.getProperty(prefix + "latency-threshold", Duration.class,
+                            bulkhead.getLatencyThreshold()));
+            limits.put(bulkhead, limit);
+            Gauge.builder(PREFIX + "limit", limit, AimdLimit::getLimit)
+                    .description("Concurrent requests allowed")
+                    .tag("bulkhead", bulkhead.getPropertyName())
+                    .register(meterRegistry);
+            Gauge.builder(PREFIX + "in-flight", limit, AimdLimit::getInFlight)
+                    .description("Requests running")
+                    .tag("bulkhead", bulkhead.getPropertyName())
+                    .register(meterRegistry);
+            rejected.put(bulkhead, Counter.builder(PREFIX + "rejected")
+                    .description("Requests rejected at the limit")
+                    .tag("bulkhead", bulkhead.getPropertyName())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Runs {@code handler} if {@code bulkhead} has room for it, or rejects the request right away. A response with
+     * a {@code 5xx} status counts as failed, and so does an error response unless its code blames the request.
+     */
+    public <T> ResponseEntity<ApiResponse<T>> execute(Bulkhead bulkhead,
+                                                      Supplier<ResponseEntity<ApiResponse<T>>> handler) {
+        if (!enabled) {
+            return handler.get();
+        }
+        AimdLimit limit = limits.get(bulkhead);
+        if (!limit.tryAcquire()) {
+            rejected.get(bulkhead).increment();
+            log.debug("Rejected {} request at a limit of {}", bulkhead.getPropertyName(), limit.getLimit());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, retryAfter.toSeconds())))
+                    .body(ApiResponse.error("Too many requests in progress, retry later",
+                            new ErrorDetails(ResponseMessages.OVERLOADED, "At most " + limit.getLimit() + " "
+                                    + bulkhead.getPropertyName() + " requests can run at once")));
+        }
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            ResponseEntity<ApiResponse<T>> response = handler.get();
+            failed = response.getStatusCode().is5xxServerError() || failed(response.getBody());
+            return response;
+        } finally {
+            limit.release(System.nanoTime() - started, failed);
+        }
+    }
+
+    private static boolean failed(ApiResponse<?> body) {
+        if (body == null || body.isSuccess()) {
+            return false;
+        }
+        ErrorDetails error = body.getError();
+        return error == null || !CLIENT_ERRORS.contains(error.getCode());
+    }
+
+    AimdLimit limit(Bulkhead bulkhead) {
+        return limits.get(bulkhead);
+    }
+}
@@ -2,11 +2,12 @@ package com.mobilise.mapper;
 
 import com.mobilise.dto.BookDTO;
 import com.mobilise.model.Book;
+import com.mobilise.model.Isbn;
 
 public class BookMapper {
     public static Book toEntity(BookDTO dto) {
         Book book = new Book();
-        book.setIsbn(dto.getIsbn());
+        book.setIsbn(Isbn.normalize(dto.getIsbn()));
         book.setTitle(dto.getTitle());
         book.setAuthor(dto.getAuthor());
         book.setPublicationYear(dto.getPublicationYear());
@@ -0,0 +1,38 @@
+package com.mobilise.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "borrowing_records_archive")
+public class ArchivedBorrowingRecord {
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    @JdbcTypeCode(SqlTypes.BIGINT)
+    private String isbn;
+
+    @Column(nullable = false)
+    private String bookTitle;
+
+    @Column(nullable = false)
+    private LocalDateTime borrowedAt;
+
+    @Column(nullable = false)
+    private LocalDateTime returnedAt;
+
+    @Column
+    private LocalDateTime dueAt;
+
+    @Column(length = 64)
+    private String borrowerId;
+}
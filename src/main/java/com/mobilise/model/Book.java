@@ -5,11 +5,14 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 import java.time.LocalDateTime;
 
@@ -21,8 +24,10 @@ import java.time.LocalDateTime;
 @RequiredArgsConstructor
 @AllArgsConstructor
 public class Book {
+    // Canonical ISBN-13 (see Isbn), stored as a BIGINT key
     @Id
     @NotBlank(message = "ISBN is required")
+    @JdbcTypeCode(SqlTypes.BIGINT)
     private String isbn;
 
     @NotBlank(message = "Title is required")
@@ -39,10 +44,18 @@ public class Book {
     @Min(value = 0, message = "Number of copies cannot be negative")
     private Integer copiesInStock;
 
+    // Open borrowing records, kept in step with copiesInStock by borrow and return
+    @Column(name = "active_loans", nullable = false)
+    private int activeLoans = 0;
+
 
     @Column(name = "is_deleted")
     private boolean deleted = false;
 
     @Column(name = "deleted_at")
     private LocalDateTime deletedAt;
+
+    // Bumped by every change, stock changes included; the book's ETag
+    @Version
+    private Long version;
 }
\ No newline at end of file
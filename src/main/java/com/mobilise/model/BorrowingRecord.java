@@ -22,4 +22,10 @@ public class BorrowingRecord {
 
     @Column
     private LocalDateTime returnedAt;
+
+    @Column
+    private LocalDateTime dueAt;
+
+    @Column(length = 64)
+    private String borrowerId;
 }
\ No newline at end of file
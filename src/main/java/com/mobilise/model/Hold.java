@@ -0,0 +1,54 @@
+package com.mobilise.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import lombok.Data;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "holds")
+public class Hold {
+    public enum Status {
+        WAITING, FULFILLED, CANCELLED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    @JdbcTypeCode(SqlTypes.BIGINT)
+    private String isbn;
+
+    @Column(length = 64)
+    private String borrowerId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @Column(nullable = false)
+    private LocalDateTime placedAt;
+
+    @Column
+    private LocalDateTime closedAt;
+
+    // The loan a fulfilled hold was given
+    @Column
+    private Long borrowingRecordId;
+
+    // Place in the book's queue while waiting, 1 for the next to be served
+    @Transient
+    private Long position;
+}
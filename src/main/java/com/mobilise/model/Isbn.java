@@ -0,0 +1,68 @@
+package com.mobilise.model;
+
+import com.mobilise.exception.InvalidIsbnException;
+
+/**
+ * Canonical form of ISBNs: ISBN-13 digits without hyphens or spaces, with ISBN-10s converted and check digits
+ * validated. As every ISBN-13 starts with 978 or 979, the canonical form is also stored as a {@code BIGINT}.
+ */
+public final class Isbn {
+
+    private Isbn() {
+    }
+
+    /**
+     * Returns the canonical ISBN-13 of an ISBN-10 or ISBN-13, with or without hyphens and spaces.
+     *
+     * @throws InvalidIsbnException if the value is not a valid ISBN
+     */
+    public static String normalize(String isbn) {
+        if (isbn == null || isbn.isBlank()) {
+            throw new InvalidIsbnException("ISBN is required");
+        }
+        String compact = isbn.replace("-", "").replace(" ", "").toUpperCase();
+        if (compact.length() == 10 && compact.substring(0, 9).chars().allMatch(Character::isDigit)
+                && isbn10CheckValid(compact)) {
+            String body = "978" + compact.substring(0, 9);
+            return body + isbn13CheckDigit(body);
+        }
+        if (compact.length() == 13 && compact.chars().allMatch(Character::isDigit)
+                && (compact.startsWith("978") || compact.startsWith("979"))
+                && isbn13CheckDigit(compact.substring(0, 12)) == compact.charAt(12) - '0') {
+            return compact;
+        }
+        throw new InvalidIsbnException("Invalid ISBN: " + isbn);
+    }
+
+    /**
+     * The database key of an ISBN in any accepted form.
+     */
+    public static long toKey(String isbn) {
+        return Long.parseLong(normalize(isbn));
+    }
+
+    public static String fromKey(long key) {
+        return Long.toString(key);
+    }
+
+    private static boolean isbn10CheckValid(String isbn10) {
+        char last = isbn10.charAt(9);
+        if (last != 'X' && !Character.isDigit(last)) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < 9; i++) {
+            sum += (10 - i) * (isbn10.charAt(i) - '0');
+        }
+        sum += last == 'X' ? 10 : last - '0';
+        return sum % 11 == 0;
+    }
+
+    private static int isbn13CheckDigit(String first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (i % 2 == 0 ? 1 : 3) * (first12.charAt(i) - '0');
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,7 @@
+package com.mobilise.overdue;
+
+/**
+ * Published when an open loan comes due without having been returned.
+ */
+public record LoanOverdueEvent(OpenLoan loan) {
+}
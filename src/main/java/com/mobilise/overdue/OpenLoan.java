@@ -0,0 +1,17 @@
+package com.mobilise.overdue;
+
+import java.time.LocalDateTime;
+
+/**
+ * An open loan with a due date, as tracked for overdue detection. Loan ids are only unique per shard, so a loan is
+ * identified together with its ISBN.
+ */
+public record OpenLoan(long borrowingRecordId, String isbn, String borrowerId, LocalDateTime borrowedAt,
+                       LocalDateTime dueAt) {
+    record Key(long borrowingRecordId, String isbn) {
+    }
+
+    Key key() {
+        return new Key(borrowingRecordId, isbn);
+    }
+}
@@ -0,0 +1,285 @@
+package com.mobilise.overdue;
+
+import com.mobilise.model.BorrowingRecord;
+import com.mobilise.shard.ShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Detects overdue loans without scanning the borrowing records.
+ * <p>
+ * Every open loan is scheduled by its due date into a {@link TimingWheel} of {@code library.loans.overdue.tick}
+ * ticks, so borrowing adds it and returning cancels it in constant time, and each tick only touches the loans due
+ * in it. Loans that come due move to the overdue set, which {@code /overdue} reads, and a {@link LoanOverdueEvent}
+ * is published for each. The wheel is rebuilt from the open loans of every shard when the application starts; loans
+ * borrowed or returned while it is rebuilt are reconciled with what it reads.
+ */
+@Slf4j
+@Component
+public class OverdueLoanTracker {
+    private static final int REBUILD_BATCH = 1000;
+    private static final String OPEN_LOANS = "SELECT id, isbn, borrower_id, borrowed_at, due_at " +
+            "FROM borrowing_records WHERE returned_at IS NULL AND due_at IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${library.loans.overdue.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${library.loans.overdue.tick:PT1M}")
+    private Duration tick = Duration.ofMinutes(1);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<OpenLoan.Key, TimingWheel.Entry<OpenLoan>> scheduled = new HashMap<>();
+    private final Map<OpenLoan.Key, OpenLoan> overdueByKey = new HashMap<>();
+    private final NavigableSet<OpenLoan> overdue = new TreeSet<>(Comparator.comparing(OpenLoan::dueAt)
+            .thenComparing(OpenLoan::isbn)
+            .thenComparingLong(OpenLoan::borrowingRecordId));
+    private TimingWheel<OpenLoan> wheel;
+    // Loans returned while the wheel is rebuilt, which the rebuild may still read as open
+    private Set<OpenLoan.Key> returnedDuringRebuild;
+
+    public OverdueLoanTracker(JdbcTemplate jdbcTemplate, ShardRouter shardRouter,
+                              ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Schedules a new loan once the surrounding transaction commits, or right away without one.
+     */
+    public void borrowedAfterCommit(BorrowingRecord record) {
+        if (!enabled || record == null || record.getDueAt() == null) {
+            return;
+        }
+        OpenLoan loan = new OpenLoan(record.getId(), record.getBook().getIsbn(), record.getBorrowerId(),
+                record.getBorrowedAt(), record.getDueAt());
+        afterCommit(record.getId(), () -> {
+            List<OpenLoan> due = new ArrayList<>();
+            lock.lock();
+            try {
+                if (wheel != null) {
+                    schedule(loan, due);
+                }
+            } finally {
+                lock.unlock();
+            }
+            due.forEach(this::publish);
+        });
+    }
+
+    /**
+     * Cancels a returned loan once the surrounding transaction commits, or right away without one.
+     */
+    public void returnedAfterCommit(BorrowingRecord record) {
+        if (!enabled || record == null || record.getId() == null) {
+            return;
+        }
+        OpenLoan.Key key = new OpenLoan.Key(record.getId(), record.getBook().getIsbn());
+        afterCommit(record.getId(), () -> {
+            lock.lock();
+            try {
+                if (returnedDuringRebuild != null) {
+                    returnedDuringRebuild.add(key);
+                }
+                TimingWheel.Entry<OpenLoan> entry = scheduled.remove(key);
+                if (entry != null) {
+                    wheel.cancel(entry);
+                }
+                OpenLoan loan = overdueByKey.remove(key);
+                if (loan != null) {
+                    overdue.remove(loan);
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        lock.lock();
+        try {
+            wheel = new TimingWheel<>(tickOf(LocalDateTime.now()));
+            scheduled.clear();
+            overdueByKey.clear();
+            overdue.clear();
+            returnedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            List<OpenLoan> batch = new ArrayList<>(REBUILD_BATCH);
+            shardRouter.onEachShard(() -> {
+                jdbcTemplate.query(OPEN_LOANS, rs -> {
+                    batch.add(new OpenLoan(rs.getLong("id"), rs.getString("isbn"), rs.getString("borrower_id"),
+                            rs.getTimestamp("borrowed_at").toLocalDateTime(),
+                            rs.getTimestamp("due_at").toLocalDateTime()));
+                    if (batch.size() == REBUILD_BATCH) {
+                        addRebuilt(batch);
+                    }
+                });
+                addRebuilt(batch);
+                return null;
+            });
+        } finally {
+            lock.lock();
+            try {
+                returnedDuringRebuild = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+        log.info("Scheduled {} open loans, {} overdue, in {} ms", scheduled.size(), overdue.size(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @Scheduled(fixedDelayString = "${library.loans.overdue.tick:PT1M}")
+    public void scheduledAdvance() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            advance(LocalDateTime.now());
+        } catch (Exception e) {
+            log.error("Failed to advance overdue loans: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Moves the loans due by {@code now} to the overdue set.
+     */
+    void advance(LocalDateTime now) {
+        List<OpenLoan> due = new ArrayList<>();
+        lock.lock();
+        try {
+            if (wheel == null) {
+                return;
+            }
+            wheel.advanceTo(tickOf(now), loan -> {
+                scheduled.remove(loan.key());
+                markOverdue(loan, due);
+            });
+        } finally {
+            lock.unlock();
+        }
+        due.forEach(this::publish);
+    }
+
+    /**
+     * A page of the overdue loans, longest overdue first.
+     */
+    public Page<OpenLoan> overdue(Pageable pageable) {
+        lock.lock();
+        try {
+            List<OpenLoan> content = pageable.isPaged()
+                    ? overdue.stream().skip(pageable.getOffset()).limit(pageable.getPageSize()).toList()
+                    : List.copyOf(overdue);
+            return new PageImpl<>(content, pageable, overdue.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void addRebuilt(List<OpenLoan> batch) {
+        List<OpenLoan> due = new ArrayList<>();
+        lock.lock();
+        try {
+            for (OpenLoan loan : batch) {
+                OpenLoan.Key key = loan.key();
+                if (!returnedDuringRebuild.contains(key) && !scheduled.containsKey(key)
+                        && !overdueByKey.containsKey(key)) {
+                    schedule(loan, due);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        batch.clear();
+        // Loans already overdue at startup were overdue before, so only the ones coming due are announced
+        due.clear();
+    }
+
+    private void schedule(OpenLoan loan, List<OpenLoan> due) {
+        TimingWheel.Entry<OpenLoan> entry = wheel.add(loan, dueTickOf(loan.dueAt()));
+        if (entry == null) {
+            markOverdue(loan, due);
+        } else {
+            scheduled.put(loan.key(), entry);
+        }
+    }
+
+    private void markOverdue(OpenLoan loan, List<OpenLoan> due) {
+        overdueByKey.put(loan.key(), loan);
+        overdue.add(loan);
+        due.add(loan);
+    }
+
+    private void publish(OpenLoan loan) {
+        log.info("Loan {} of book {} is overdue since {}", loan.borrowingRecordId(), loan.isbn(), loan.dueAt());
+        eventPublisher.publishEvent(new LoanOverdueEvent(loan));
+    }
+
+    private long tickOf(LocalDateTime time) {
+        return epochMillis(time) / tick.toMillis();
+    }
+
+    // Rounded up, so a loan is never reported before it is due
+    private long dueTickOf(LocalDateTime dueAt) {
+        return Math.ceilDiv(epochMillis(dueAt), tick.toMillis());
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return Timestamp.valueOf(time).getTime();
+    }
+
+    // The borrow or return has committed by then, so a failure here is logged rather than failing the request
+    private static void afterCommit(Long borrowingRecordId, Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    log.error("Failed to track loan {}: {}", borrowingRecordId, e.getMessage(), e);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,142 @@
+package com.mobilise.overdue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel: {@code LEVELS} wheels of 64 slots over tick numbers, each slot of a level spanning a
+ * whole turn of the level below.
+ * <p>
+ * An entry is placed in the level of the highest 6-bit group in which its due tick differs from the current tick,
+ * in the slot that group of the due tick selects. When the current tick enters a new slot of a level, the entries of
+ * that slot cascade to the levels below, so each entry reaches level 0 in time to expire in its due tick. Slots are
+ * doubly linked lists, so adding and cancelling are O(1) and a tick only touches the entries due in it or cascading
+ * at it. Entries due beyond the top level wait there and are placed again whenever their slot cascades.
+ */
+final class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    static final class Entry<T> {
+        private final T value;
+        private final long dueTick;
+        private Entry<T> previous;
+        private Entry<T> next;
+
+        private Entry(T value, long dueTick) {
+            this.value = value;
+            this.dueTick = dueTick;
+        }
+
+        T value() {
+            return value;
+        }
+    }
+
+    private final List<Entry<T>> slots = new ArrayList<>(LEVELS * SLOTS);
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long currentTick) {
+        this.currentTick = currentTick;
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            Entry<T> head = new Entry<>(null, Long.MIN_VALUE);
+            head.previous = head;
+            head.next = head;
+            slots.add(head);
+        }
+    }
+
+    long currentTick() {
+        return currentTick;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a value due at {@code dueTick}, or returns {@code null} when that tick has already passed.
+     */
+    Entry<T> add(T value, long dueTick) {
+        if (dueTick <= currentTick) {
+            return null;
+        }
+        Entry<T> entry = new Entry<>(value, dueTick);
+        link(entry);
+        size++;
+        return entry;
+    }
+
+    /**
+     * Removes an entry that has not expired yet. Returns whether it was still in the wheel.
+     */
+    boolean cancel(Entry<T> entry) {
+        if (entry.next == null) {
+            return false;
+        }
+        unlink(entry);
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the current tick forward to {@code tick}, handing every value that comes due on the way to
+     * {@code expired}, in order of due tick.
+     */
+    void advanceTo(long tick, Consumer<T> expired) {
+        while (currentTick < tick) {
+            long next = currentTick + 1;
+            currentTick = next;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((next & ((1L << level * SLOT_BITS) - 1)) == 0) {
+                    cascade(level, next);
+                }
+            }
+            Entry<T> head = slots.get((int) (next & (SLOTS - 1)));
+            while (head.next != head) {
+                Entry<T> entry = head.next;
+                unlink(entry);
+                size--;
+                expired.accept(entry.value);
+            }
+        }
+    }
+
+    // The entries of the slot the level has just entered are placed again, now in lower levels
+    private void cascade(int level, long tick) {
+        Entry<T> head = slots.get(level * SLOTS + (int) ((tick >>> level * SLOT_BITS) & (SLOTS - 1)));
+        Entry<T> first = head.next;
+        Entry<T> last = head.previous;
+        if (first == head) {
+            return;
+        }
+        head.next = head;
+        head.previous = head;
+        last.next = null;
+        for (Entry<T> entry = first; entry != null; ) {
+            Entry<T> following = entry.next;
+            link(entry);
+            entry = following;
+        }
+    }
+
+    private void link(Entry<T> entry) {
+        long differing = entry.dueTick ^ currentTick;
+        int level = Math.min(LEVELS - 1, (63 - Long.numberOfLeadingZeros(differing)) / SLOT_BITS);
+        Entry<T> head = slots.get(level * SLOTS + (int) ((entry.dueTick >>> level * SLOT_BITS) & (SLOTS - 1)));
+        entry.previous = head.previous;
+        entry.next = head;
+        head.previous.next = entry;
+        head.previous = entry;
+    }
+
+    private static <T> void unlink(Entry<T> entry) {
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+        entry.previous = null;
+        entry.next = null;
+    }
+}
@@ -0,0 +1,474 @@
+package com.mobilise.recommendation;
+
+import com.mobilise.model.Isbn;
+import com.mobilise.shard.ShardContext;
+import com.mobilise.shard.ShardRouter;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * "Readers also borrowed": for every book, the books most often borrowed by the same borrowers.
+ * <p>
+ * The sparse co-borrowing matrix is built from the borrowing history, hot and archived, once the application is
+ * ready and again every night. The history is read as a stream of baskets, the distinct books of one borrower, and
+ * the pairs in each chunk of baskets are counted in parallel with fork-join before they are folded into the matrix.
+ * Each row of the matrix keeps a fixed number of neighbours (see {@link Neighbours}), so memory is bounded per book
+ * however much history there is. Loans without a borrower take no part.
+ * <p>
+ * New borrows are applied after they commit, one at a time on a background thread that also runs the rebuilds, so
+ * every borrow is counted by either the rebuild or the update. A borrow pairs the book with the other books its
+ * borrower took out before, unless the borrower had it before.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CoBorrowingIndex {
+    private static final String BASKETS = "SELECT borrower_id, isbn FROM borrowing_records " +
+            "WHERE borrower_id IS NOT NULL AND borrowed_at < ? " +
+            "UNION SELECT borrower_id, isbn FROM borrowing_records_archive " +
+            "WHERE borrower_id IS NOT NULL AND borrowed_at < ? ORDER BY borrower_id, isbn";
+    private static final String EARLIER_BOOKS = "SELECT isbn FROM borrowing_records " +
+            "WHERE borrower_id = ? AND borrowed_at < ? " +
+            "UNION SELECT isbn FROM borrowing_records_archive WHERE borrower_id = ? AND borrowed_at < ?";
+    private static final Basket END = new Basket(null, new long[0]);
+    // Pairs counted per fork-join run, which bounds the memory of the exact counts before they are folded in
+    private static final long CHUNK_PAIRS = 1 << 20;
+    private static final int LEAF_BASKETS = 256;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${library.recommendations.enabled:true}")
+    private boolean enabled;
+
+    @Value("${library.recommendations.top-k:10}")
+    private int topK = 10;
+
+    @Value("${library.recommendations.neighbours-per-book:50}")
+    private int neighboursPerBook = 50;
+
+    @Value("${library.recommendations.max-basket:500}")
+    private int maxBasket = 500;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService updates = Executors.newSingleThreadExecutor(
+            Thread.ofVirtual().name("co-borrowing").factory());
+    // Null until the first build
+    private Matrix matrix;
+    // Borrows before this were read by the last build; only used on the updates thread
+    private LocalDateTime horizon;
+
+    /**
+     * One borrower's distinct books, or part of them when read from one shard.
+     */
+    private record Basket(String borrower, long[] isbns) {
+    }
+
+    private record Borrow(String borrower, long isbn, LocalDateTime borrowedAt) {
+    }
+
+    /**
+     * Rebuilds the matrix from the borrowing history and waits for it. Borrows keep being served from the previous
+     * matrix meanwhile.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            updates.submit(this::build).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building recommendations", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Drops neighbours of deleted history and the overestimates that Space-Saving accumulates over time
+    @Scheduled(cron = "${library.recommendations.rebuild-cron:0 0 4 * * *}")
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("Failed to rebuild recommendations: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Pairs a borrowed book with the borrower's earlier books once the surrounding transaction commits, or right away
+     * without one.
+     */
+    public void recordBorrowAfterCommit(String borrowerId, String isbn, LocalDateTime borrowedAt) {
+        if (!enabled || borrowerId == null) {
+            return;
+        }
+        // Truncated to the precision of the column, so that the borrow does not find its own record as an earlier one
+        Borrow borrow = new Borrow(borrowerId, Isbn.toKey(isbn), borrowedAt.truncatedTo(ChronoUnit.MICROS));
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            updates.execute(() -> update(borrow));
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                updates.execute(() -> update(borrow));
+            }
+        });
+    }
+
+    /**
+     * ISBNs of the books most often borrowed together with {@code isbn}, most often first.
+     */
+    public List<String> related(String isbn) {
+        long key = Isbn.toKey(isbn);
+        lock.readLock().lock();
+        try {
+            return matrix != null ? matrix.related(key, topK) : List.of();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Waits until the borrows recorded so far are applied.
+     */
+    void awaitUpdates() throws ExecutionException, InterruptedException {
+        updates.submit(() -> {
+        }).get();
+    }
+
+    @PreDestroy
+    void close() {
+        updates.shutdownNow();
+    }
+
+    private void build() {
+        long started = System.nanoTime();
+        LocalDateTime builtUpTo = LocalDateTime.now();
+        Matrix built = new Matrix(neighboursPerBook);
+        long[] baskets = count(built, builtUpTo);
+
+        lock.writeLock().lock();
+        try {
+            matrix = built;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        horizon = builtUpTo;
+        log.info("Built recommendations for {} books from {} borrowers in {} ms, left out {} borrowers with more " +
+                "than {} books", built.books(), baskets[0], (System.nanoTime() - started) / 1_000_000, baskets[1],
+                maxBasket);
+    }
+
+    private void update(Borrow borrow) {
+        try {
+            // The last build read the borrows made before it started, whether or not they were updated before it
+            if (horizon == null || borrow.borrowedAt().isBefore(horizon)) {
+                return;
+            }
+            Set<Long> earlier = new HashSet<>();
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            shardRouter.onEachShard(() -> transaction.execute(status -> earlier.addAll(jdbcTemplate.queryForList(
+                    EARLIER_BOOKS, Long.class, borrow.borrower(), borrow.borrowedAt(), borrow.borrower(),
+                    borrow.borrowedAt()))));
+            if (earlier.isEmpty() || earlier.contains(borrow.isbn()) || earlier.size() >= maxBasket) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                int book = matrix.ordinal(borrow.isbn());
+                earlier.forEach(other -> matrix.add(book, matrix.ordinal(other), 1));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to update recommendations for a borrow of {}: {}",
+                    Isbn.fromKey(borrow.isbn()), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Streams the baskets of every shard, merged by borrower, into {@code built}. Returns the number of baskets
+     * counted and left out.
+     */
+    private long[] count(Matrix built, LocalDateTime builtUpTo) {
+        List<String> shards = shardRouter.isSharded() ? shardRouter.shards() : Collections.singletonList(null);
+        // Not read-only, so that with read replicas the matrix is built from the primary
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor();
+        try (ForkJoinPool pool = new ForkJoinPool()) {
+            List<BlockingQueue<Basket>> queues = new ArrayList<>();
+            List<Future<?>> reads = new ArrayList<>();
+            for (String shard : shards) {
+                BlockingQueue<Basket> queue = new ArrayBlockingQueue<>(1024);
+                queues.add(queue);
+                reads.add(readers.submit(() -> ShardContext.call(shard, () -> transaction.execute(status -> {
+                    BasketReader reader = new BasketReader(queue);
+                    try {
+                        jdbcTemplate.query(BASKETS, reader, builtUpTo, builtUpTo);
+                        reader.flush();
+                    } finally {
+                        reader.put(END);
+                    }
+                    return null;
+                }))));
+            }
+
+            long[] baskets = new long[2];
+            List<int[]> chunk = new ArrayList<>();
+            long chunkPairs = 0;
+            BasketMerger merger = new BasketMerger(queues);
+            for (long[] basket = merger.next(); basket != null; basket = merger.next()) {
+                if (basket.length > maxBasket) {
+                    baskets[1]++;
+                    continue;
+                }
+                baskets[0]++;
+                int[] ordinals = new int[basket.length];
+                for (int i = 0; i < basket.length; i++) {
+                    ordinals[i] = built.ordinal(basket[i]);
+                }
+                chunk.add(ordinals);
+                chunkPairs += (long) basket.length * (basket.length - 1) / 2;
+                if (chunkPairs >= CHUNK_PAIRS) {
+                    pool.invoke(new PairCounter(chunk, 0, chunk.size())).forEach(built::add);
+                    chunk.clear();
+                    chunkPairs = 0;
+                }
+            }
+            pool.invoke(new PairCounter(chunk, 0, chunk.size())).forEach(built::add);
+            for (Future<?> read : reads) {
+                read.get();
+            }
+            return baskets;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the borrowing history", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to read the borrowing history: " + e.getCause().getMessage(),
+                    e.getCause());
+        } finally {
+            // Unblocks readers that are still waiting to hand over baskets when counting failed
+            readers.shutdownNow();
+            readers.close();
+        }
+    }
+
+    /**
+     * Groups the rows of one shard, ordered by borrower, into baskets. Baskets larger than the limit are cut just
+     * past it, since they are left out anyway.
+     */
+    private final class BasketReader implements RowCallbackHandler {
+        private final BlockingQueue<Basket> queue;
+        private String borrower;
+        private long[] isbns = new long[16];
+        private int size;
+
+        BasketReader(BlockingQueue<Basket> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void processRow(ResultSet row) throws SQLException {
+            String rowBorrower = row.getString(1);
+            if (!rowBorrower.equals(borrower)) {
+                flush();
+                borrower = rowBorrower;
+            }
+            if (size > maxBasket) {
+                return;
+            }
+            if (size == isbns.length) {
+                isbns = Arrays.copyOf(isbns, size * 2);
+            }
+            isbns[size++] = row.getLong(2);
+        }
+
+        void flush() {
+            if (borrower != null) {
+                put(new Basket(borrower, Arrays.copyOf(isbns, size)));
+            }
+            size = 0;
+        }
+
+        void put(Basket basket) {
+            try {
+                queue.put(basket);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading the borrowing history", e);
+            }
+        }
+    }
+
+    /**
+     * Merges the baskets of all shards by borrower. A borrower's books are spread over the shards by ISBN, so the
+     * parts never overlap.
+     */
+    private static final class BasketMerger {
+        private record Head(Basket basket, BlockingQueue<Basket> queue) {
+        }
+
+        private final PriorityQueue<Head> heads = new PriorityQueue<>(
+                Comparator.comparing((Head head) -> head.basket().borrower()));
+
+        BasketMerger(List<BlockingQueue<Basket>> queues) throws InterruptedException {
+            for (BlockingQueue<Basket> queue : queues) {
+                advance(queue);
+            }
+        }
+
+        long[] next() throws InterruptedException {
+            if (heads.isEmpty()) {
+                return null;
+            }
+            Head head = heads.poll();
+            long[] isbns = head.basket().isbns();
+            advance(head.queue());
+            while (!heads.isEmpty() && heads.peek().basket().borrower().equals(head.basket().borrower())) {
+                Head part = heads.poll();
+                long[] merged = Arrays.copyOf(isbns, isbns.length + part.basket().isbns().length);
+                System.arraycopy(part.basket().isbns(), 0, merged, isbns.length, part.basket().isbns().length);
+                isbns = merged;
+                advance(part.queue());
+            }
+            return isbns;
+        }
+
+        private void advance(BlockingQueue<Basket> queue) throws InterruptedException {
+            Basket basket = queue.take();
+            if (basket != END) {
+                heads.add(new Head(basket, queue));
+            }
+        }
+    }
+
+    /**
+     * Counts the pairs of a range of baskets, splitting the range across the pool and adding up the halves.
+     */
+    private static final class PairCounter extends RecursiveTask<PairCounts> {
+        private final List<int[]> baskets;
+        private final int from;
+        private final int to;
+
+        PairCounter(List<int[]> baskets, int from, int to) {
+            this.baskets = baskets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected PairCounts compute() {
+            if (to - from <= LEAF_BASKETS) {
+                PairCounts counts = new PairCounts();
+                for (int[] basket : baskets.subList(from, to)) {
+                    for (int i = 0; i < basket.length; i++) {
+                        for (int j = i + 1; j < basket.length; j++) {
+                            counts.add(PairCounts.pair(basket[i], basket[j]), 1);
+                        }
+                    }
+                }
+                return counts;
+            }
+            int middle = (from + to) >>> 1;
+            PairCounter left = new PairCounter(baskets, from, middle);
+            left.fork();
+            PairCounts right = new PairCounter(baskets, middle, to).compute();
+            PairCounts leftCounts = left.join();
+            if (leftCounts.size() < right.size()) {
+                right.addAll(leftCounts);
+                return right;
+            }
+            leftCounts.addAll(right);
+            return leftCounts;
+        }
+    }
+
+    /**
+     * Books by dense ordinal, each with its bounded row of neighbours.
+     */
+    private static final class Matrix {
+        private final int neighboursPerBook;
+        private final Map<Long, Integer> ordinals = new HashMap<>();
+        private final List<Neighbours> rows = new ArrayList<>();
+        private long[] isbns = new long[1024];
+
+        Matrix(int neighboursPerBook) {
+            this.neighboursPerBook = neighboursPerBook;
+        }
+
+        int ordinal(long isbn) {
+            Integer ordinal = ordinals.get(isbn);
+            if (ordinal == null) {
+                ordinal = rows.size();
+                ordinals.put(isbn, ordinal);
+                if (ordinal == isbns.length) {
+                    isbns = Arrays.copyOf(isbns, ordinal * 2);
+                }
+                isbns[ordinal] = isbn;
+                rows.add(new Neighbours(neighboursPerBook));
+            }
+            return ordinal;
+        }
+
+        void add(int first, int second, int count) {
+            rows.get(first).add(second, count);
+            rows.get(second).add(first, count);
+        }
+
+        int books() {
+            return rows.size();
+        }
+
+        List<String> related(long isbn, int limit) {
+            Integer ordinal = ordinals.get(isbn);
+            if (ordinal == null) {
+                return List.of();
+            }
+            return Arrays.stream(rows.get(ordinal).top(limit, isbns)).mapToObj(book -> Isbn.fromKey(isbns[book]))
+                    .toList();
+        }
+    }
+}
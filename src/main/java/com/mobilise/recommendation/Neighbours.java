@@ -0,0 +1,80 @@
+package com.mobilise.recommendation;
+
+import java.util.Arrays;
+
+/**
+ * The books most often borrowed together with one book, in at most {@code capacity} slots, kept with the
+ * Space-Saving algorithm.
+ * <p>
+ * Counts are exact while fewer books than slots were borrowed together with the book. Once the slots are full, a new
+ * book takes over the slot with the lowest count and adds to it, so a count may be overestimated by at most that
+ * lowest count, and every book borrowed together more often than it is kept. The slots grow on demand, so books with
+ * few neighbours stay small.
+ */
+final class Neighbours {
+    private static final int INITIAL_SLOTS = 4;
+
+    private final int capacity;
+    private int[] books;
+    private int[] counts;
+    private int size;
+
+    Neighbours(int capacity) {
+        this.capacity = capacity;
+        books = new int[Math.min(INITIAL_SLOTS, capacity)];
+        counts = new int[books.length];
+    }
+
+    void add(int book, int count) {
+        for (int i = 0; i < size; i++) {
+            if (books[i] == book) {
+                counts[i] += count;
+                return;
+            }
+        }
+        if (size == books.length && size < capacity) {
+            books = Arrays.copyOf(books, Math.min(capacity, size * 2));
+            counts = Arrays.copyOf(counts, books.length);
+        }
+        if (size < books.length) {
+            books[size] = book;
+            counts[size++] = count;
+            return;
+        }
+        int lowest = 0;
+        for (int i = 1; i < size; i++) {
+            if (counts[i] < counts[lowest]) {
+                lowest = i;
+            }
+        }
+        books[lowest] = book;
+        counts[lowest] += count;
+    }
+
+    /**
+     * Up to {@code limit} books, most often borrowed together first and ties by ISBN.
+     */
+    int[] top(int limit, long[] isbns) {
+        int[] slots = new int[size];
+        for (int i = 0; i < size; i++) {
+            int slot = i;
+            int at = i;
+            while (at > 0 && before(slot, slots[at - 1], isbns)) {
+                slots[at] = slots[at - 1];
+                at--;
+            }
+            slots[at] = slot;
+        }
+        int[] top = new int[Math.min(limit, size)];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = books[slots[i]];
+        }
+        return top;
+    }
+
+    private boolean before(int slot, int other, long[] isbns) {
+        return counts[slot] != counts[other]
+                ? counts[slot] > counts[other]
+                : isbns[books[slot]] < isbns[books[other]];
+    }
+}
@@ -0,0 +1,87 @@
+package com.mobilise.recommendation;
+
+import java.util.Arrays;
+
+/**
+ * How often each unordered pair of books was borrowed by the same borrower, in an open-addressing table of
+ * primitives. A pair packs the two book ordinals into one {@code long}, the smaller one first.
+ */
+final class PairCounts {
+    private static final long EMPTY = -1L;
+
+    private long[] pairs;
+    private int[] counts;
+    private int size;
+
+    PairCounts() {
+        pairs = new long[1024];
+        counts = new int[pairs.length];
+        Arrays.fill(pairs, EMPTY);
+    }
+
+    @FunctionalInterface
+    interface PairConsumer {
+        void accept(int first, int second, int count);
+    }
+
+    static long pair(int a, int b) {
+        return a < b ? (long) a << 32 | b : (long) b << 32 | a;
+    }
+
+    void add(long pair, int count) {
+        int mask = pairs.length - 1;
+        int slot = slot(pair, mask);
+        while (pairs[slot] != EMPTY) {
+            if (pairs[slot] == pair) {
+                counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        pairs[slot] = pair;
+        counts[slot] = count;
+        if (++size > pairs.length / 4 * 3) {
+            grow();
+        }
+    }
+
+    void addAll(PairCounts other) {
+        for (int i = 0; i < other.pairs.length; i++) {
+            if (other.pairs[i] != EMPTY) {
+                add(other.pairs[i], other.counts[i]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(PairConsumer consumer) {
+        for (int i = 0; i < pairs.length; i++) {
+            if (pairs[i] != EMPTY) {
+                consumer.accept((int) (pairs[i] >>> 32), (int) pairs[i], counts[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldPairs = pairs;
+        int[] oldCounts = counts;
+        pairs = new long[oldPairs.length * 2];
+        counts = new int[pairs.length];
+        Arrays.fill(pairs, EMPTY);
+        size = 0;
+        for (int i = 0; i < oldPairs.length; i++) {
+            if (oldPairs[i] != EMPTY) {
+                add(oldPairs[i], oldCounts[i]);
+            }
+        }
+    }
+
+    // Ordinals are small and dense, so the packed pairs need mixing before they spread over the table
+    private static int slot(long pair, int mask) {
+        long hash = pair * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+}
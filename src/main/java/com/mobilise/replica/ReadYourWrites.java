@@ -0,0 +1,84 @@
+package com.mobilise.replica;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Remembers when the current caller last committed a write, so that its reads are only served by replicas that
+ * have caught up with it.
+ * <p>
+ * The time is kept per thread for the rest of the current request or job, cleared by {@link ReadYourWritesFilter}
+ * and the scheduler when they end, and handed to HTTP clients in a cookie so that their next requests, on
+ * whatever thread, see the write too. Once a write is older than the staleness tolerance every eligible replica
+ * has applied it, so the cookie expires after that.
+ */
+public final class ReadYourWrites {
+    static final String COOKIE = "LIBRARY_LAST_WRITE";
+
+    private static final ThreadLocal<Instant> LAST_WRITE = new ThreadLocal<>();
+
+    private ReadYourWrites() {
+    }
+
+    static void recordWrite(Instant committedAt, Duration maxStaleness) {
+        LAST_WRITE.set(committedAt);
+        HttpServletResponse response = currentResponse();
+        if (response != null && !response.isCommitted()) {
+            Cookie cookie = new Cookie(COOKIE, Long.toString(committedAt.toEpochMilli()));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, maxStaleness.toSeconds() + 1));
+            response.addCookie(cookie);
+        }
+    }
+
+    /**
+     * The latest write the current caller must be able to read, or {@code null} when there is none.
+     */
+    static Instant lastWrite() {
+        Instant local = LAST_WRITE.get();
+        Instant client = clientLastWrite();
+        if (local == null) {
+            return client;
+        }
+        return client == null || local.isAfter(client) ? local : client;
+    }
+
+    /**
+     * Forgets the write recorded on this thread, at the end of a request or job that may have made one.
+     */
+    public static void clear() {
+        LAST_WRITE.remove();
+    }
+
+    private static Instant clientLastWrite() {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return null;
+        }
+        HttpServletRequest request = attributes.getRequest();
+        if (request.getCookies() == null) {
+            return null;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return Instant.ofEpochMilli(Long.parseLong(cookie.getValue()));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static HttpServletResponse currentResponse() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes
+                ? attributes.getResponse() : null;
+    }
+}
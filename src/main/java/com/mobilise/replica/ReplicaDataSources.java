@@ -0,0 +1,28 @@
+package com.mobilise.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Connection pools of the read replicas, by name.
+ */
+public class ReplicaDataSources implements AutoCloseable {
+    private final Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+
+    public void add(HikariDataSource replica) {
+        replicas.put(replica.getPoolName(), replica);
+    }
+
+    public Map<String, DataSource> byName() {
+        return Collections.unmodifiableMap(replicas);
+    }
+
+    @Override
+    public void close() {
+        replicas.values().forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,61 @@
+package com.mobilise.replica;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes the heartbeat row on the primary and reads back how far each replica has applied it.
+ * <p>
+ * A replica that shows heartbeat {@code t} has applied every write committed on the primary before {@code t}, so
+ * its staleness is at most {@code now - t}.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+    private final JdbcTemplate primary;
+    private final Map<String, JdbcTemplate> replicas;
+    private final Map<String, Instant> appliedUpTo = new ConcurrentHashMap<>();
+
+    public ReplicaLagMonitor(DataSource primary, Map<String, DataSource> replicas) {
+        this.primary = new JdbcTemplate(primary);
+        this.replicas = new ConcurrentHashMap<>();
+        replicas.forEach((name, dataSource) -> this.replicas.put(name, new JdbcTemplate(dataSource)));
+    }
+
+    @Scheduled(fixedDelayString = "${library.replicas.heartbeat-interval:PT0.5S}")
+    public void heartbeat() {
+        try {
+            primary.update("UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1", Timestamp.from(Instant.now()));
+        } catch (Exception e) {
+            log.warn("Failed to write replication heartbeat: {}", e.getMessage());
+        }
+        replicas.keySet().forEach(this::refresh);
+    }
+
+    /**
+     * The primary time up to which the replica has applied all writes, or {@code null} when unknown.
+     */
+    public Instant appliedUpTo(String replica) {
+        return appliedUpTo.get(replica);
+    }
+
+    void refresh(String replica) {
+        try {
+            Timestamp beat = replicas.get(replica).queryForObject(
+                    "SELECT beat_at FROM replication_heartbeat WHERE id = 1", Timestamp.class);
+            if (beat != null) {
+                appliedUpTo.put(replica, beat.toInstant());
+            }
+        } catch (Exception e) {
+            // An unreachable replica stays out of rotation until it answers again
+            appliedUpTo.remove(replica);
+            log.debug("Failed to read heartbeat of replica {}: {}", replica, e.getMessage());
+        }
+    }
+}
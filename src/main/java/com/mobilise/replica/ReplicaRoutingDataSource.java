@@ -0,0 +1,100 @@
+package com.mobilise.replica;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to a replica and everything else to the primary.
+ * <p>
+ * A replica is eligible when its applied heartbeat is within the staleness tolerance and not older than the
+ * caller's last write, so a request that just borrowed a book reads its own loan. Eligible replicas are used round
+ * robin; when none is eligible the read falls back to the primary. Must be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} so that the connection is only chosen
+ * once the transaction's read-only flag is known.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    static final String PRIMARY = "primary";
+
+    private static final String WRITE_TRACKED = ReplicaRoutingDataSource.class.getName() + ".WRITE_TRACKED";
+
+    private final List<String> replicas;
+    private final ReplicaLagMonitor lagMonitor;
+    private final Duration maxStaleness;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+                                    ReplicaLagMonitor lagMonitor, Duration maxStaleness) {
+        this.replicas = List.copyOf(replicas.keySet());
+        this.lagMonitor = lagMonitor;
+        this.maxStaleness = maxStaleness;
+        Map<Object, Object> targets = new HashMap<>(replicas);
+        targets.put(PRIMARY, primary);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return PRIMARY;
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            trackWrite();
+            return PRIMARY;
+        }
+        return chooseReplica();
+    }
+
+    /**
+     * The replica a read-only transaction would use right now, or {@code primary} when none is fresh enough.
+     */
+    public String chooseReplica() {
+        Instant required = Instant.now().minus(maxStaleness);
+        Instant lastWrite = ReadYourWrites.lastWrite();
+        if (lastWrite != null && lastWrite.isAfter(required)) {
+            required = lastWrite;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(1, replicas.size()));
+        for (int i = 0; i < replicas.size(); i++) {
+            String replica = replicas.get((start + i) % replicas.size());
+            Instant appliedUpTo = lagMonitor.appliedUpTo(replica);
+            if (appliedUpTo != null && !appliedUpTo.isBefore(required)) {
+                return replica;
+            }
+        }
+        log.debug("No replica has applied writes up to {}, reading from the primary", required);
+        return PRIMARY;
+    }
+
+    // Records the commit time of read-write transactions for read-your-writes
+    private void trackWrite() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(WRITE_TRACKED)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(WRITE_TRACKED, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ReadYourWrites.recordWrite(Instant.now(), maxStaleness);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(WRITE_TRACKED);
+            }
+        });
+    }
+}
@@ -0,0 +1,135 @@
+package com.mobilise.replica;
+
+import com.mobilise.service.CatalogueSnapshotService;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stand-in for database replication when running several local H2 instances. Each cycle copies the heartbeat and
+ * the catalogue tables from one consistent read of the primary into every replica.
+ * <p>
+ * Copies are full, so this is only meant for local testing of the routing; production replicas are kept up to
+ * date by the database itself and only need the heartbeat written by {@link ReplicaLagMonitor}.
+ */
+@Slf4j
+public class StandInReplicator {
+    private static final int BATCH_SIZE = 1000;
+
+    // Heartbeat first, so the applied heartbeat never claims writes the copy does not hold
+    static final List<String> TABLES;
+
+    static {
+        List<String> tables = new ArrayList<>();
+        tables.add("replication_heartbeat");
+        tables.addAll(CatalogueSnapshotService.TABLES);
+        TABLES = List.copyOf(tables);
+    }
+
+    private final DataSource primary;
+    private final Map<String, DataSource> replicas;
+    private boolean paused;
+
+    public StandInReplicator(DataSource primary, Map<String, DataSource> replicas) {
+        this.primary = primary;
+        this.replicas = replicas;
+    }
+
+    /**
+     * Creates the schema on every replica.
+     */
+    public void migrateReplicas() {
+        replicas.forEach((name, dataSource) -> {
+            Flyway.configure().dataSource(dataSource).locations("classpath:db/migration").load().migrate();
+            log.info("Migrated stand-in replica {}", name);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${library.replicas.replication-interval:PT1S}")
+    public synchronized void replicate() {
+        if (paused) {
+            return;
+        }
+        replicas.forEach((name, dataSource) -> {
+            try {
+                copy(dataSource);
+            } catch (SQLException e) {
+                log.warn("Failed to replicate to {}: {}", name, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Stops or resumes replication, e.g. to let replicas fall behind in tests. Waits for a running copy to finish.
+     */
+    public synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    private void copy(DataSource replica) throws SQLException {
+        try (Connection source = primary.getConnection(); Connection target = replica.getConnection()) {
+            // SERIALIZABLE is the H2 level that reads every table from the same snapshot
+            source.setAutoCommit(false);
+            source.setReadOnly(true);
+            source.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            target.setAutoCommit(false);
+            try {
+                try (Statement statement = target.createStatement()) {
+                    for (int i = TABLES.size() - 1; i >= 0; i--) {
+                        statement.executeUpdate("DELETE FROM " + TABLES.get(i));
+                    }
+                }
+                for (String table : TABLES) {
+                    copyTable(source, target, table);
+                }
+                target.commit();
+            } catch (SQLException e) {
+                target.rollback();
+                throw e;
+            } finally {
+                source.rollback();
+            }
+        }
+    }
+
+    private static void copyTable(Connection source, Connection target, String table) throws SQLException {
+        try (Statement select = source.createStatement(); ResultSet rows = select.executeQuery("SELECT * FROM " + table)) {
+            ResultSetMetaData metaData = rows.getMetaData();
+            int columns = metaData.getColumnCount();
+            List<String> names = new ArrayList<>(columns);
+            for (int c = 1; c <= columns; c++) {
+                names.add(metaData.getColumnName(c));
+            }
+            String sql = "INSERT INTO " + table + " (" + String.join(", ", names) + ") VALUES ("
+                    + String.join(", ", Collections.nCopies(columns, "?")) + ")";
+            try (PreparedStatement insert = target.prepareStatement(sql)) {
+                int batched = 0;
+                while (rows.next()) {
+                    for (int c = 1; c <= columns; c++) {
+                        insert.setObject(c, rows.getObject(c));
+                    }
+                    insert.addBatch();
+                    if (++batched == BATCH_SIZE) {
+                        insert.executeBatch();
+                        batched = 0;
+                    }
+                }
+                if (batched > 0) {
+                    insert.executeBatch();
+                }
+            }
+        }
+    }
+}
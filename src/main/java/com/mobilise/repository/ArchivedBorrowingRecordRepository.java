@@ -0,0 +1,17 @@
+package com.mobilise.repository;
+
+import com.mobilise.model.ArchivedBorrowingRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface ArchivedBorrowingRecordRepository extends JpaRepository<ArchivedBorrowingRecord, Long> {
+    List<ArchivedBorrowingRecord> findByBorrowedAtBetween(LocalDateTime start, LocalDateTime end);
+
+    // Newest archived loan, read from the end of the borrowed_at index
+    @Query("SELECT MAX(a.borrowedAt) FROM ArchivedBorrowingRecord a")
+    Optional<LocalDateTime> findLatestBorrowedAt();
+}
@@ -0,0 +1,22 @@
+package com.mobilise.repository;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads only some columns of live books, as rows of field name to value, without loading entities.
+ */
+public interface BookFieldsRepository {
+    // The fields a listing may ask for, by entity attribute name
+    List<String> FIELDS = List.of("isbn", "title", "author", "publicationYear", "copiesInStock", "activeLoans",
+            "version");
+
+    /**
+     * A page of the given fields of live books, of those whose title or author contains {@code query} when it is
+     * not {@code null}. Rows keep the order of {@code fields}.
+     */
+    Page<Map<String, Object>> findFields(List<String> fields, String query, Pageable pageable);
+}
@@ -0,0 +1,67 @@
+package com.mobilise.repository;
+
+import com.mobilise.model.Book;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Tuple queries select just the requested columns, and their rows are plain values the session does not track
+class BookFieldsRepositoryImpl implements BookFieldsRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<Map<String, Object>> findFields(List<String> fields, String query, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> select = cb.createTupleQuery();
+        Root<Book> book = select.from(Book.class);
+        select.multiselect(fields.stream().<Selection<?>>map(field -> book.get(field).alias(field)).toList());
+        select.where(live(cb, book, query));
+        select.orderBy(QueryUtils.toOrders(pageable.getSort(), book, cb));
+
+        TypedQuery<Tuple> rows = entityManager.createQuery(select);
+        if (pageable.isPaged()) {
+            rows.setFirstResult(Math.toIntExact(pageable.getOffset()));
+            rows.setMaxResults(pageable.getPageSize());
+        }
+        List<Map<String, Object>> content = rows.getResultList().stream().map(tuple -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            fields.forEach(field -> row.put(field, tuple.get(field)));
+            return row;
+        }).toList();
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(query));
+    }
+
+    private long count(String query) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> count = cb.createQuery(Long.class);
+        Root<Book> book = count.from(Book.class);
+        count.select(cb.count(book)).where(live(cb, book, query));
+        return entityManager.createQuery(count).getSingleResult();
+    }
+
+    // Same conditions as findByDeletedIsFalse and searchByTitleOrAuthor
+    private static Predicate live(CriteriaBuilder cb, Root<Book> book, String query) {
+        Predicate live = cb.isFalse(book.get("deleted"));
+        if (query == null) {
+            return live;
+        }
+        String pattern = "%" + query.toLowerCase() + "%";
+        return cb.and(live, cb.or(cb.like(cb.lower(book.get("title")), pattern),
+                cb.like(cb.lower(book.get("author")), pattern)));
+    }
+}
@@ -1,15 +1,55 @@
 package com.mobilise.repository;
 
 import com.mobilise.model.Book;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface BookRepository extends JpaRepository<Book, String> {
-    Page<Book> findByTitleContainingIgnoreCaseOrAuthorContainingIgnoreCase(
-            String title, String author, Pageable pageable);
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
+public interface BookRepository extends JpaRepository<Book, String>, BookFieldsRepository {
+    // Live catalogue reads skip soft-deleted books; only admin paths such as restore read through the lock below
+    Page<Book> findByDeletedIsFalse(Pageable pageable);
+
+    @Query("SELECT b FROM Book b WHERE b.deleted = false AND " +
+            "(LOWER(b.title) LIKE LOWER(CONCAT('%', ?1, '%')) OR LOWER(b.author) LIKE LOWER(CONCAT('%', ?1, '%')))")
+    Page<Book> searchByTitleOrAuthor(String query, Pageable pageable);
 
     Optional<Book> findByIsbnAndDeletedIsFalse(String isbn);
+
+    // Answers conditional requests without loading the book
+    @Query("SELECT b.version FROM Book b WHERE b.isbn = ?1 AND b.deleted = false")
+    Optional<Long> findVersionByIsbn(String isbn);
+
+    Page<Book> findByActiveLoansGreaterThan(int activeLoans, Pageable pageable);
+
+    // Cursor-backed streams for export; callers must consume them inside a transaction and detach rows
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    @Query("SELECT b FROM Book b WHERE b.deleted = false ORDER BY b.isbn")
+    Stream<Book> streamAll();
+
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    @Query("SELECT b FROM Book b WHERE b.deleted = false AND " +
+            "(LOWER(b.title) LIKE LOWER(CONCAT('%', ?1, '%')) OR LOWER(b.author) LIKE LOWER(CONCAT('%', ?1, '%'))) " +
+            "ORDER BY b.isbn")
+    Stream<Book> streamByTitleOrAuthor(String query);
+
+    // Facet columns of the live catalogue as (isbn, publicationYear, author, copiesInStock), for the facet index
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READ_ONLY, value = "true")})
+    @Query("SELECT b.isbn, b.publicationYear, b.author, b.copiesInStock FROM Book b WHERE b.deleted = false")
+    Stream<Object[]> streamFacets();
+
+    // Row lock for stock and borrowing changes, so concurrent borrow/return/delete on one ISBN serialize
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM Book b WHERE b.isbn = ?1")
+    Optional<Book> findByIsbnForUpdate(String isbn);
 }
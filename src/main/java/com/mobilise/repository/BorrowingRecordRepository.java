@@ -16,7 +16,17 @@ public interface BorrowingRecordRepository extends JpaRepository<BorrowingRecord
             "WHERE br.borrowedAt BETWEEN ?1 AND ?2 GROUP BY br.book.isbn")
     List<Object[]> countBorrowingsByBookAndDateRange(LocalDateTime start, LocalDateTime end);
 
+    @Query("SELECT br.book.isbn as isbn, COUNT(br) as count FROM BorrowingRecord br " +
+            "WHERE br.returnedAt IS NULL GROUP BY br.book.isbn")
+    List<Object[]> countOpenBorrowingsByBook();
+
     List<BorrowingRecord> findByBookAndReturnedAtIsNull(Book book);
 
-    Optional<BorrowingRecord> findFirstByBookAndReturnedAtIsNull(Book book);
+    long countByBookAndReturnedAtIsNull(Book book);
+
+    // Oldest open loan first. The ORDER BY spells out the full open-loan index so the rows are read in index
+    // order and the scan stops after the first one
+    @Query("SELECT br FROM BorrowingRecord br WHERE br.book = ?1 AND br.returnedAt IS NULL " +
+            "ORDER BY br.book.isbn, br.returnedAt, br.borrowedAt, br.id LIMIT 1")
+    Optional<BorrowingRecord> findOldestOpenBorrowing(Book book);
 }
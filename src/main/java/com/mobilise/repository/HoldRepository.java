@@ -0,0 +1,23 @@
+package com.mobilise.repository;
+
+import com.mobilise.model.Hold;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface HoldRepository extends JpaRepository<Hold, Long> {
+    Optional<Hold> findByIdAndIsbn(Long id, String isbn);
+
+    // Oldest waiting hold first, read from the front of the (isbn, status, id) index
+    Optional<Hold> findFirstByIsbnAndStatusOrderByIdAsc(String isbn, Hold.Status status);
+
+    List<Hold> findByIsbnAndStatus(String isbn, Hold.Status status);
+
+    long countByIsbnAndStatusAndIdLessThan(String isbn, Hold.Status status, Long id);
+
+    @Query("SELECT DISTINCT h.isbn FROM Hold h WHERE h.isbn IN ?1 AND h.status = ?2")
+    List<String> findIsbnsWithStatus(Collection<String> isbns, Hold.Status status);
+}
@@ -0,0 +1,85 @@
+package com.mobilise.service;
+
+import com.mobilise.model.Book;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.repository.BorrowingRecordRepository;
+import com.mobilise.shard.ShardRouter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Re-verifies the {@code active_loans} counter on books against the open borrowing records.
+ * <p>
+ * Mismatches are found with one aggregate query and each one is corrected under the book's row lock, so the fix
+ * cannot race a concurrent borrow or return. With sharding, every shard is checked in turn.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ActiveLoanReconciler {
+    private static final String MISMATCHED_BOOKS = "SELECT b.isbn FROM books b LEFT JOIN (" +
+            "SELECT isbn, COUNT(*) AS open_loans FROM borrowing_records WHERE returned_at IS NULL GROUP BY isbn) o " +
+            "ON o.isbn = b.isbn WHERE b.active_loans <> COALESCE(o.open_loans, 0)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BookRepository bookRepository;
+    private final BorrowingRecordRepository borrowingRecordRepository;
+    private final ShardRouter shardRouter;
+
+    @Scheduled(fixedDelayString = "${library.loans.reconcile-interval:PT1H}",
+            initialDelayString = "${library.loans.reconcile-interval:PT1H}")
+    public void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.error("Failed to reconcile active loan counters: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Corrects every book whose counter disagrees with its open borrowing records.
+     *
+     * @return the number of books corrected
+     */
+    public int reconcile() {
+        return shardRouter.onEachShard(this::reconcileShard).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private int reconcileShard() {
+        List<String> mismatched = jdbcTemplate.queryForList(MISMATCHED_BOOKS, String.class);
+        int corrected = 0;
+        for (String isbn : mismatched) {
+            Boolean fixed = transactionTemplate.execute(status -> reconcileBook(isbn));
+            if (Boolean.TRUE.equals(fixed)) {
+                corrected++;
+            }
+        }
+        if (corrected > 0) {
+            log.warn("Corrected active loan counters on {} books", corrected);
+        }
+        return corrected;
+    }
+
+    private boolean reconcileBook(String isbn) {
+        Book book = bookRepository.findByIsbnForUpdate(isbn).orElse(null);
+        if (book == null) {
+            return false;
+        }
+        int openLoans = Math.toIntExact(borrowingRecordRepository.countByBookAndReturnedAtIsNull(book));
+        if (book.getActiveLoans() == openLoans) {
+            return false;
+        }
+        log.warn("Active loans of book {} were {} but {} borrowing records are open",
+                isbn, book.getActiveLoans(), openLoans);
+        book.setActiveLoans(openLoans);
+        bookRepository.save(book);
+        return true;
+    }
+}
@@ -0,0 +1,141 @@
+package com.mobilise.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mobilise.exception.InvalidOperationException;
+import com.mobilise.model.Book;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.shard.ShardRouter;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Streams books from a database cursor straight to the response.
+ * <p>
+ * Rows are fetched in batches of the repository's fetch size and detached after they are written, so memory
+ * stays flat regardless of catalogue size. The response is written with blocking I/O, which means a slow client
+ * stalls the cursor instead of letting rows pile up in memory. With sharding, the shards are streamed one after
+ * another, so books are in ISBN order within each shard.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BookStreamService {
+    private static final int FLUSH_EVERY = 500;
+
+    private final BookRepository bookRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter shardRouter;
+    private final PlatformTransactionManager transactionManager;
+
+    public long streamBooks(OutputStream out) throws IOException {
+        return onEachShard(() -> {
+            try (Stream<Book> books = bookRepository.streamAll()) {
+                return writeNdjson(books, out);
+            }
+        });
+    }
+
+    public long streamSearch(String query, OutputStream out) throws IOException {
+        if (query == null || query.trim().isEmpty()) {
+            throw new InvalidOperationException("Search query must not be empty");
+        }
+        return onEachShard(() -> {
+            try (Stream<Book> books = bookRepository.streamByTitleOrAuthor(query.trim())) {
+                return writeNdjson(books, out);
+            }
+        });
+    }
+
+    /**
+     * Exports the catalogue in the bulk upload CSV format, so an export can be re-imported as is.
+     */
+    public long exportCsv(OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT.builder()
+                .setHeader("ISBN", "title", "author", "publication_year", "copies")
+                .build());
+        long count = onEachShard(() -> {
+            long written = 0;
+            try (Stream<Book> books = bookRepository.streamAll()) {
+                Iterator<Book> iterator = books.iterator();
+                while (iterator.hasNext()) {
+                    Book book = iterator.next();
+                    printer.printRecord(book.getIsbn(), book.getTitle(), book.getAuthor(),
+                            book.getPublicationYear(), book.getCopiesInStock());
+                    entityManager.detach(book);
+                    if (++written % FLUSH_EVERY == 0) {
+                        printer.flush();
+                    }
+                }
+            }
+            return written;
+        });
+        printer.flush();
+        log.info("Exported {} books as CSV", count);
+        return count;
+    }
+
+    /**
+     * Runs {@code work} in a read-only transaction, once per shard when sharded. A cursor is bound to the
+     * transaction that opened it, so each shard gets its own transaction and shards are written one after another.
+     */
+    private long onEachShard(ShardWork work) throws IOException {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        try {
+            return shardRouter.onEachShard(() -> readOnly.execute(status -> {
+                try {
+                    return work.write();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).stream().mapToLong(Long::longValue).sum();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ShardWork {
+        long write() throws IOException;
+    }
+
+    private long writeNdjson(Stream<Book> books, OutputStream out) throws IOException {
+        long count = 0;
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.setRootValueSeparator(null);
+        Iterator<Book> iterator = books.iterator();
+        while (iterator.hasNext()) {
+            Book book = iterator.next();
+            writer.writeValue(generator, book);
+            generator.writeRaw('\n');
+            entityManager.detach(book);
+            if (++count % FLUSH_EVERY == 0) {
+                generator.flush();
+            }
+        }
+        generator.flush();
+        log.info("Streamed {} books", count);
+        return count;
+    }
+}
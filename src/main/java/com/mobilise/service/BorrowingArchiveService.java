@@ -0,0 +1,137 @@
+package com.mobilise.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves cold history out of the hot tables: returned loans older than the loan horizon and books deleted for longer
+ * than the deleted-book horizon, together with their loans.
+ * <p>
+ * Rows are moved in batches, each in its own short transaction, so live traffic never waits on the job for long.
+ * Returned loans are never updated again, so moving them takes no locks on the live path. Books are locked before
+ * they are moved, so a concurrent restore either wins or finds the book gone.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BorrowingArchiveService {
+    private static final String ARCHIVE_LOANS = "INSERT INTO borrowing_records_archive " +
+            "(id, isbn, book_title, borrowed_at, returned_at, borrower_id, due_at) " +
+            "SELECT br.id, br.isbn, b.title, br.borrowed_at, br.returned_at, br.borrower_id, br.due_at " +
+            "FROM borrowing_records br JOIN books b ON b.isbn = br.isbn WHERE br.";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${library.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${library.archive.loan-horizon:P365D}")
+    private Duration loanHorizon;
+
+    @Value("${library.archive.deleted-book-horizon:P90D}")
+    private Duration deletedBookHorizon;
+
+    @Value("${library.archive.batch-size:1000}")
+    private int batchSize;
+
+    public record ArchiveRun(long borrowingRecords, long books) {
+    }
+
+    @Scheduled(cron = "${library.archive.cron:0 30 3 * * *}")
+    public void scheduledArchive() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            archive(LocalDateTime.now());
+        } catch (Exception e) {
+            log.error("Failed to archive borrowing history: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Archives everything that is past its horizon at the given time.
+     */
+    public ArchiveRun archive(LocalDateTime now) {
+        long started = System.nanoTime();
+        AtomicLong loans = new AtomicLong(archiveReturnedLoans(now.minus(loanHorizon)));
+        long books = archiveDeletedBooks(now.minus(deletedBookHorizon), loans);
+        log.info("Archived {} borrowing records and {} deleted books in {} ms",
+                loans.get(), books, (System.nanoTime() - started) / 1_000_000);
+        return new ArchiveRun(loans.get(), books);
+    }
+
+    private long archiveReturnedLoans(LocalDateTime cutoff) {
+        long archived = 0;
+        while (true) {
+            // A loan is returned after it is borrowed, so the borrowed_at index bounds the scan
+            List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM borrowing_records " +
+                            "WHERE borrowed_at < ? AND returned_at < ? ORDER BY borrowed_at, isbn FETCH FIRST ? ROWS ONLY",
+                    Long.class, cutoff, cutoff, batchSize);
+            if (ids.isEmpty()) {
+                return archived;
+            }
+            Integer moved = transactionTemplate.execute(status -> {
+                String in = placeholders(ids.size());
+                jdbcTemplate.update(ARCHIVE_LOANS + "id IN (" + in + ")", ids.toArray());
+                return jdbcTemplate.update("DELETE FROM borrowing_records WHERE id IN (" + in + ")", ids.toArray());
+            });
+            archived += moved == null ? 0 : moved;
+            if (ids.size() < batchSize) {
+                return archived;
+            }
+        }
+    }
+
+    private long archiveDeletedBooks(LocalDateTime cutoff, AtomicLong archivedLoans) {
+        long archived = 0;
+        while (true) {
+            Integer moved = transactionTemplate.execute(status -> {
+                List<Long> isbns = jdbcTemplate.queryForList("SELECT isbn FROM books b " +
+                                "WHERE b.is_deleted = TRUE AND b.deleted_at < ? AND NOT EXISTS (SELECT 1 FROM " +
+                                "borrowing_records br WHERE br.isbn = b.isbn AND br.returned_at IS NULL) " +
+                                "ORDER BY b.isbn FETCH FIRST ? ROWS ONLY FOR UPDATE",
+                        Long.class, cutoff, batchSize);
+                if (isbns.isEmpty()) {
+                    return 0;
+                }
+                String in = placeholders(isbns.size());
+                Object[] args = isbns.toArray();
+                archivedLoans.addAndGet(jdbcTemplate.update(ARCHIVE_LOANS + "isbn IN (" + in + ")", args));
+                jdbcTemplate.update("DELETE FROM borrowing_records WHERE isbn IN (" + in + ")", args);
+                // Deleting a book cancelled its waiting holds, the closed ones go with it
+                jdbcTemplate.update("DELETE FROM holds WHERE isbn IN (" + in + ")", args);
+                List<Object> archiveArgs = new ArrayList<>(isbns.size() + 1);
+                archiveArgs.add(LocalDateTime.now());
+                archiveArgs.addAll(isbns);
+                // An ISBN can be deleted and archived again after being re-created
+                jdbcTemplate.update("MERGE INTO books_archive (isbn, title, author, publication_year, copies_in_stock, " +
+                        "deleted_at, archived_at) KEY (isbn) SELECT isbn, title, author, publication_year, " +
+                        "copies_in_stock, deleted_at, ? FROM books WHERE isbn IN (" + in + ")", archiveArgs.toArray());
+                return jdbcTemplate.update("DELETE FROM books WHERE isbn IN (" + in + ")", args);
+            });
+            int count = moved == null ? 0 : moved;
+            archived += count;
+            if (count < batchSize) {
+                return archived;
+            }
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
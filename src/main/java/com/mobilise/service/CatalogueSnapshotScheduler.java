@@ -0,0 +1,72 @@
+package com.mobilise.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Restores the catalogue snapshot into an empty database on boot, before the application reports ready, and
+ * refreshes the snapshot periodically and on shutdown.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CatalogueSnapshotScheduler implements ApplicationRunner {
+    private final CatalogueSnapshotService snapshotService;
+    private final ActiveLoanReconciler activeLoanReconciler;
+
+    @Value("${library.snapshot.enabled:false}")
+    private boolean enabled;
+
+    @Value("${library.snapshot.path:./data/catalogue.snapshot}")
+    private Path snapshotPath;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!enabled) {
+            return;
+        }
+        if (!Files.exists(snapshotPath)) {
+            log.info("No catalogue snapshot at {}, starting with the current database", snapshotPath);
+            return;
+        }
+        if (!snapshotService.isCatalogueEmpty()) {
+            log.info("Database already holds a catalogue, skipping snapshot restore");
+            return;
+        }
+        snapshotService.restoreSnapshot(snapshotPath);
+        // Snapshots taken before the loan counter existed restore it as zero
+        activeLoanReconciler.reconcile();
+    }
+
+    @Scheduled(fixedDelayString = "${library.snapshot.interval:PT15M}",
+            initialDelayString = "${library.snapshot.interval:PT15M}")
+    public void scheduledSnapshot() {
+        takeSnapshot();
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void snapshotOnShutdown() {
+        takeSnapshot();
+    }
+
+    private void takeSnapshot() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            snapshotService.writeSnapshot(snapshotPath);
+        } catch (Exception e) {
+            log.error("Failed to write catalogue snapshot to {}: {}", snapshotPath, e.getMessage(), e);
+        }
+    }
+}
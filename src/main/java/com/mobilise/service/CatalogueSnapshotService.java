@@ -0,0 +1,253 @@
+package com.mobilise.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Dumps the catalogue tables to a compact binary snapshot and bulk-loads them back.
+ * <p>
+ * The file holds, per table, the column names and types followed by the rows in a tagged binary encoding.
+ * Columns are matched by name on restore, so a snapshot stays loadable when later migrations add nullable
+ * columns. Tables are listed parent first, so foreign keys are satisfied while loading.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CatalogueSnapshotService {
+    // Catalogue tables, parents first
+    public static final List<String> TABLES = List.of("books", "borrowing_records", "books_archive",
+            "borrowing_records_archive", "holds");
+
+    private static final int MAGIC = 0x424B534E; // "BKSN"
+    private static final int FORMAT_VERSION = 1;
+    private static final int BATCH_SIZE = 1000;
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_TIMESTAMP = 5;
+
+    private static final byte ROW = 1;
+    private static final byte END_OF_TABLE = 0;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Writes all catalogue tables to the given file from one consistent read. The snapshot is written to a
+     * temporary file first and moved into place, so a crash never leaves a truncated snapshot behind.
+     *
+     * @return the number of rows written
+     */
+    // H2 only reads every table from the same snapshot at SERIALIZABLE; REPEATABLE READ is per row.
+    // Not read-only, so that with replica routing the snapshot is always taken from the primary
+    @Transactional(isolation = Isolation.SERIALIZABLE)
+    public long writeSnapshot(Path file) throws IOException {
+        long started = System.nanoTime();
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        long rows = 0;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(TABLES.size());
+            for (String table : TABLES) {
+                rows += writeTable(table, out);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Wrote snapshot of {} rows to {} in {} ms", rows, file, (System.nanoTime() - started) / 1_000_000);
+        return rows;
+    }
+
+    /**
+     * Loads a snapshot into empty catalogue tables.
+     *
+     * @return the number of rows loaded
+     */
+    @Transactional
+    public long restoreSnapshot(Path file) throws IOException {
+        long started = System.nanoTime();
+        long rows = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a catalogue snapshot: " + file);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+            int tables = in.readInt();
+            for (int i = 0; i < tables; i++) {
+                rows += restoreTable(in);
+            }
+        }
+        resetIdentity("borrowing_records", "id", "borrowing_records_archive");
+        resetIdentity("holds", "id", "holds");
+        log.info("Restored {} rows from {} in {} ms", rows, file, (System.nanoTime() - started) / 1_000_000);
+        return rows;
+    }
+
+    // Decides whether to restore into the primary, so it must not be answered by a replica
+    @Transactional
+    public boolean isCatalogueEmpty() {
+        Long books = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM books", Long.class);
+        return books == null || books == 0;
+    }
+
+    private long writeTable(String table, DataOutputStream out) {
+        long[] rows = {0};
+        jdbcTemplate.query("SELECT * FROM " + table, resultSet -> {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            int columns = metaData.getColumnCount();
+            byte[] types = new byte[columns];
+            try {
+                out.writeUTF(table);
+                out.writeShort(columns);
+                for (int c = 1; c <= columns; c++) {
+                    types[c - 1] = typeOf(metaData.getColumnType(c), table, metaData.getColumnName(c));
+                    out.writeUTF(metaData.getColumnName(c).toLowerCase());
+                    out.writeByte(types[c - 1]);
+                }
+                while (resultSet.next()) {
+                    out.writeByte(ROW);
+                    for (int c = 1; c <= columns; c++) {
+                        writeValue(out, types[c - 1], resultSet.getObject(c));
+                    }
+                    rows[0]++;
+                }
+                out.writeByte(END_OF_TABLE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+        return rows[0];
+    }
+
+    private long restoreTable(DataInputStream in) throws IOException {
+        String table = in.readUTF();
+        if (!TABLES.contains(table)) {
+            throw new IOException("Unexpected table in snapshot: " + table);
+        }
+        int columns = in.readShort();
+        List<String> names = new ArrayList<>(columns);
+        byte[] types = new byte[columns];
+        for (int c = 0; c < columns; c++) {
+            names.add(in.readUTF());
+            types[c] = in.readByte();
+        }
+        String sql = "INSERT INTO " + table + " (" + String.join(", ", names) + ") VALUES ("
+                + String.join(", ", Collections.nCopies(columns, "?")) + ")";
+
+        long rows = 0;
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        while (in.readByte() == ROW) {
+            Object[] values = new Object[columns];
+            for (int c = 0; c < columns; c++) {
+                values[c] = readValue(in, types[c]);
+            }
+            batch.add(values);
+            if (batch.size() == BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                rows += batch.size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+            rows += batch.size();
+        }
+        log.debug("Restored {} rows into {}", rows, table);
+        return rows;
+    }
+
+    // Archived rows keep their ids, so the identity must also clear the archive. Tables without one pass themselves
+    private void resetIdentity(String table, String column, String archiveTable) {
+        Long next = jdbcTemplate.queryForObject("SELECT GREATEST((SELECT COALESCE(MAX(" + column + "), 0) FROM " + table
+                + "), (SELECT COALESCE(MAX(" + column + "), 0) FROM " + archiveTable + ")) + 1", Long.class);
+        jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN " + column + " RESTART WITH " + next);
+    }
+
+    private static byte typeOf(int sqlType, String table, String column) {
+        return switch (sqlType) {
+            case Types.VARCHAR, Types.CHAR, Types.LONGVARCHAR, Types.NVARCHAR -> TYPE_STRING;
+            case Types.INTEGER, Types.SMALLINT, Types.TINYINT -> TYPE_INT;
+            case Types.BIGINT -> TYPE_LONG;
+            case Types.BOOLEAN, Types.BIT -> TYPE_BOOLEAN;
+            case Types.TIMESTAMP -> TYPE_TIMESTAMP;
+            default -> throw new IllegalStateException(
+                    "Unsupported column type " + sqlType + " for " + table + "." + column);
+        };
+    }
+
+    private static void writeValue(DataOutputStream out, byte type, Object value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value == null) {
+            return;
+        }
+        switch (type) {
+            case TYPE_STRING -> {
+                byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            case TYPE_INT -> out.writeInt(((Number) value).intValue());
+            case TYPE_LONG -> out.writeLong(((Number) value).longValue());
+            case TYPE_BOOLEAN -> out.writeBoolean((Boolean) value);
+            case TYPE_TIMESTAMP -> {
+                LocalDateTime timestamp = value instanceof Timestamp sqlTimestamp
+                        ? sqlTimestamp.toLocalDateTime() : (LocalDateTime) value;
+                out.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(timestamp.getNano());
+            }
+            default -> throw new IllegalStateException("Unknown snapshot type " + type);
+        }
+    }
+
+    private static Object readValue(DataInputStream in, byte type) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return switch (type) {
+            case TYPE_STRING -> {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                yield new String(bytes, StandardCharsets.UTF_8);
+            }
+            case TYPE_INT -> in.readInt();
+            case TYPE_LONG -> in.readLong();
+            case TYPE_BOOLEAN -> in.readBoolean();
+            case TYPE_TIMESTAMP -> Timestamp.valueOf(LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+            default -> throw new IOException("Unknown snapshot type " + type);
+        };
+    }
+}
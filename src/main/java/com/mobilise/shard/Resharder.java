@@ -0,0 +1,139 @@
+package com.mobilise.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Moves books with their borrowing records and waiting holds to the shards a new shard list assigns them to.
+ * <p>
+ * Shards are identified by URL, so a book only moves when its shard under the new list is a different database.
+ * Thanks to the consistent hash, appending a shard moves about {@code 1/N} of the books and removing the last one
+ * moves only its own. Each book is first copied into the target, replacing anything left there by an interrupted
+ * run, and then deleted from the source, so a run can simply be repeated after a failure. Moved borrowing records
+ * and holds get new ids on their target shard, so a waiting borrower looks their hold up again after the move.
+ * <p>
+ * The application must not serve traffic while resharding, and must be restarted with the new shard list after.
+ */
+@Slf4j
+public class Resharder {
+    private static final String[] ARCHIVE_TABLES = {"borrowing_records_archive", "books_archive"};
+
+    public record ReshardRun(long books, long borrowingRecords) {
+    }
+
+    private final ShardDataSources current;
+    private final BiFunction<String, String, HikariDataSource> connect;
+    private final Consumer<DataSource> migrate;
+    private final int virtualNodes;
+
+    /**
+     * @param connect opens a pool for a new shard from its name and URL
+     * @param migrate creates the schema on a new shard
+     */
+    public Resharder(ShardDataSources current, BiFunction<String, String, HikariDataSource> connect,
+                     Consumer<DataSource> migrate, int virtualNodes) {
+        this.current = current;
+        this.connect = connect;
+        this.migrate = migrate;
+        this.virtualNodes = virtualNodes;
+    }
+
+    public ReshardRun reshard(List<String> targetUrls) {
+        List<String> urls = targetUrls.stream().map(String::trim).toList();
+        Map<String, DataSource> byUrl = new HashMap<>();
+        current.byName().forEach((name, dataSource) -> byUrl.put(current.urlOf(name), dataSource));
+        List<HikariDataSource> opened = new ArrayList<>();
+        try {
+            List<String> targetNames = new ArrayList<>();
+            for (int i = 0; i < urls.size(); i++) {
+                String name = ShardDataSources.shardName(i + 1);
+                targetNames.add(name);
+                if (!byUrl.containsKey(urls.get(i))) {
+                    HikariDataSource shard = connect.apply(name, urls.get(i));
+                    opened.add(shard);
+                    migrate.accept(shard);
+                    byUrl.put(urls.get(i), shard);
+                }
+            }
+            ShardRouter target = new ShardRouter(targetNames, virtualNodes);
+
+            current.byName().keySet().forEach(this::checkNoArchive);
+            long books = 0;
+            long borrowingRecords = 0;
+            for (String source : current.byName().keySet()) {
+                String sourceUrl = current.urlOf(source);
+                JdbcTemplate sourceJdbc = new JdbcTemplate(current.byName().get(source));
+                for (String isbn : sourceJdbc.queryForList("SELECT isbn FROM books ORDER BY isbn", String.class)) {
+                    String targetUrl = urls.get(targetNames.indexOf(target.shardFor(isbn)));
+                    if (!targetUrl.equals(sourceUrl)) {
+                        borrowingRecords += move(isbn, current.byName().get(source), byUrl.get(targetUrl));
+                        books++;
+                    }
+                }
+            }
+            log.info("Resharded onto {} shards, moved {} books with {} borrowing records",
+                    urls.size(), books, borrowingRecords);
+            return new ReshardRun(books, borrowingRecords);
+        } finally {
+            opened.forEach(HikariDataSource::close);
+        }
+    }
+
+    // Archived rows keep their original ids, which may already be taken on the target shard
+    private void checkNoArchive(String shard) {
+        JdbcTemplate jdbc = new JdbcTemplate(current.byName().get(shard));
+        for (String table : ARCHIVE_TABLES) {
+            Long rows = jdbc.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+            if (rows != null && rows > 0) {
+                throw new IllegalStateException("Shard " + shard + " has archived rows in " + table
+                        + ", which cannot be resharded");
+            }
+        }
+    }
+
+    private long move(String isbn, DataSource source, DataSource target) {
+        JdbcTemplate sourceJdbc = new JdbcTemplate(source);
+        JdbcTemplate targetJdbc = new JdbcTemplate(target);
+        Map<String, Object> book = sourceJdbc.queryForMap("SELECT * FROM books WHERE isbn = ?", isbn);
+        List<Map<String, Object>> records = sourceJdbc.queryForList(
+                "SELECT isbn, borrowed_at, returned_at, borrower_id, due_at FROM borrowing_records WHERE isbn = ? " +
+                        "ORDER BY id", isbn);
+        // Only waiting holds move, in queue order. Closed ones point at loans whose ids change on the target
+        List<Map<String, Object>> holds = sourceJdbc.queryForList(
+                "SELECT isbn, borrower_id, status, placed_at FROM holds WHERE isbn = ? AND status = 'WAITING' " +
+                        "ORDER BY id", isbn);
+
+        new TransactionTemplate(new DataSourceTransactionManager(target)).executeWithoutResult(status -> {
+            targetJdbc.update("DELETE FROM holds WHERE isbn = ?", isbn);
+            targetJdbc.update("DELETE FROM borrowing_records WHERE isbn = ?", isbn);
+            targetJdbc.update("DELETE FROM books WHERE isbn = ?", isbn);
+            insert(targetJdbc, "books", book);
+            records.forEach(record -> insert(targetJdbc, "borrowing_records", record));
+            holds.forEach(hold -> insert(targetJdbc, "holds", hold));
+        });
+        new TransactionTemplate(new DataSourceTransactionManager(source)).executeWithoutResult(status -> {
+            sourceJdbc.update("DELETE FROM holds WHERE isbn = ?", isbn);
+            sourceJdbc.update("DELETE FROM borrowing_records WHERE isbn = ?", isbn);
+            sourceJdbc.update("DELETE FROM books WHERE isbn = ?", isbn);
+        });
+        return records.size();
+    }
+
+    private static void insert(JdbcTemplate jdbc, String table, Map<String, Object> row) {
+        String sql = "INSERT INTO " + table + " (" + String.join(", ", row.keySet()) + ") VALUES ("
+                + String.join(", ", Collections.nCopies(row.size(), "?")) + ")";
+        jdbc.update(sql, row.values().toArray());
+    }
+}
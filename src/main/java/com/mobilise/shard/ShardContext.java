@@ -0,0 +1,39 @@
+package com.mobilise.shard;
+
+import java.util.function.Supplier;
+
+/**
+ * The shard that database work on the current thread runs against.
+ * <p>
+ * Must be set before a transaction starts, since the transaction keeps the connection it opened first.
+ */
+public final class ShardContext {
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * Runs {@code work} against {@code shard} and restores the previous shard afterwards.
+     */
+    public static <T> T call(String shard, Supplier<T> work) {
+        String previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * The shard selected on this thread, or {@code null} outside of {@link #call}.
+     */
+    public static String current() {
+        return CURRENT.get();
+    }
+}
@@ -0,0 +1,39 @@
+package com.mobilise.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Connection pools of the shards, by shard name in configuration order.
+ */
+public class ShardDataSources implements AutoCloseable {
+    private final Map<String, HikariDataSource> shards = new LinkedHashMap<>();
+
+    /**
+     * Shards are named by their position in {@code library.shards.urls}, starting at 1.
+     */
+    public static String shardName(int position) {
+        return "shard-" + position;
+    }
+
+    public void add(HikariDataSource shard) {
+        shards.put(shard.getPoolName(), shard);
+    }
+
+    public Map<String, DataSource> byName() {
+        return Collections.unmodifiableMap(shards);
+    }
+
+    public String urlOf(String shard) {
+        return shards.get(shard).getJdbcUrl();
+    }
+
+    @Override
+    public void close() {
+        shards.values().forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,83 @@
+package com.mobilise.shard;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Maps ISBNs to shards with a consistent hash ring.
+ * <p>
+ * Every shard owns {@code virtualNodes} points on the ring and an ISBN belongs to the shard owning the first point
+ * at or after the ISBN's hash. Adding a shard therefore only moves the ISBNs that land on the new shard's points,
+ * about {@code 1/N} of the catalogue, instead of rehashing everything.
+ */
+public class ShardRouter {
+    private static final ShardRouter UNSHARDED = new ShardRouter(List.of(), 0);
+
+    private final List<String> shards;
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    public ShardRouter(List<String> shards, int virtualNodes) {
+        this.shards = List.copyOf(shards);
+        for (String shard : shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(shard + "#" + i), shard);
+            }
+        }
+    }
+
+    /**
+     * The router of a single, unsharded database.
+     */
+    public static ShardRouter unsharded() {
+        return UNSHARDED;
+    }
+
+    public boolean isSharded() {
+        return !shards.isEmpty();
+    }
+
+    public List<String> shards() {
+        return shards;
+    }
+
+    public String shardFor(String isbn) {
+        if (!isSharded()) {
+            throw new IllegalStateException("Sharding is not enabled");
+        }
+        Map.Entry<Long, String> owner = ring.ceilingEntry(hash(isbn));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Runs {@code work} once against every shard, one after another, or once against the database when unsharded.
+     */
+    public <T> List<T> onEachShard(Supplier<T> work) {
+        if (!isSharded()) {
+            return Collections.singletonList(work.get());
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        for (String shard : shards) {
+            results.add(ShardContext.call(shard, work));
+        }
+        return results;
+    }
+
+    // First 8 bytes of MD5, which spreads similar ISBNs evenly and is stable across JVMs
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.mobilise.shard;
+
+import com.mobilise.constants.ResponseMessages;
+import com.mobilise.dto.ApiResponse;
+import com.mobilise.dto.BookDTO;
+import com.mobilise.dto.BookFilterDTO;
+import com.mobilise.dto.BorrowingEventDTO;
+import com.mobilise.dto.BorrowingReportDTO;
+import com.mobilise.dto.ErrorDetails;
+import com.mobilise.dto.FacetedBooksDTO;
+import com.mobilise.dto.OverdueLoanDTO;
+import com.mobilise.exception.InvalidIsbnException;
+import com.mobilise.interfaces.BookServiceInterface;
+import com.mobilise.model.Book;
+import com.mobilise.model.BorrowingRecord;
+import com.mobilise.model.Hold;
+import com.mobilise.model.Isbn;
+import com.mobilise.service.BookService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.beans.PropertyDescriptor;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs the catalogue on several databases, with books and their borrowing records placed by ISBN.
+ * <p>
+ * Operations on one ISBN run on its shard only. Listings, searches and reports ask every shard in parallel and
+ * merge the answers: a page is assembled from the first {@code offset + size} rows of each shard, so deep pages
+ * cost more than shallow ones. Each shard answers from its own transaction, so a merged answer is not a single
+ * snapshot of the whole catalogue, and a bulk upload is atomic per shard only.
+ */
+@Slf4j
+public class ShardedBookService implements BookServiceInterface, AutoCloseable {
+    // What the merge can order rows by
+    private static final Set<String> SORT_PROPERTIES = Arrays.stream(BeanUtils.getPropertyDescriptors(Book.class))
+            .filter(descriptor -> descriptor.getReadMethod() != null && !"class".equals(descriptor.getName()))
+            .map(PropertyDescriptor::getName)
+            .collect(Collectors.toUnmodifiableSet());
+
+    private final BookService delegate;
+    private final ShardRouter router;
+    private final ExecutorService scatter = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ShardedBookService(BookService delegate, ShardRouter router) {
+        this.delegate = delegate;
+        this.router = router;
+    }
+
+    @Override
+    public ApiResponse<Page<Book>> getAllBooks(Pageable pageable) {
+        return mergePages(pageable, shardPage -> delegate.getAllBooks(shardPage), ShardedBookService::property, null);
+    }
+
+    @Override
+    public ApiResponse<Page<Map<String, Object>>> getBookFields(List<String> fields, Pageable pageable) {
+        return mergeFieldPages(fields, pageable, delegate::getBookFields, null);
+    }
+
+    @Override
+    public ApiResponse<Book> getBookByIsbn(String isbn) {
+        return onShardOf(isbn, () -> delegate.getBookByIsbn(isbn));
+    }
+
+    @Override
+    public Optional<Long> getBookVersion(String isbn) {
+        try {
+            return ShardContext.call(shardOf(isbn), () -> delegate.getBookVersion(isbn));
+        } catch (InvalidIsbnException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public ApiResponse<Book> createBook(BookDTO bookDTO) {
+        return onShardOf(bookDTO.getIsbn(), () -> delegate.createBook(bookDTO));
+    }
+
+    @Override
+    public ApiResponse<Book> updateBook(String isbn, BookDTO bookDTO) {
+        return updateBook(isbn, bookDTO, null);
+    }
+
+    @Override
+    public ApiResponse<Book> updateBook(String isbn, BookDTO bookDTO, Set<Long> expectedVersions) {
+        try {
+            if (bookDTO.getIsbn() != null && !shardOf(bookDTO.getIsbn()).equals(shardOf(isbn))) {
+                return ApiResponse.error("Failed to update book",
+                        new ErrorDetails(ResponseMessages.INVALID_OPERATION,
+                                "The new ISBN belongs to another shard, create the book under it instead"));
+            }
+        } catch (InvalidIsbnException e) {
+            return invalidIsbn(e);
+        }
+        return onShardOf(isbn, () -> delegate.updateBook(isbn, bookDTO, expectedVersions));
+    }
+
+    @Override
+    public ApiResponse<Void> deleteBook(String isbn) {
+        return onShardOf(isbn, () -> delegate.deleteBook(isbn));
+    }
+
+    @Override
+    public ApiResponse<Page<Book>> searchBooks(String query, Pageable pageable) {
+        if (query == null || query.trim().isEmpty()) {
+            return delegate.searchBooks(query, pageable);
+        }
+        return mergePages(pageable, shardPage -> delegate.searchBooks(query, shardPage), ShardedBookService::property,
+                "No books found matching the search criteria");
+    }
+
+    @Override
+    public ApiResponse<Page<Map<String, Object>>> searchBookFields(String query, List<String> fields,
+                                                                   Pageable pageable) {
+        if (query == null || query.trim().isEmpty()) {
+            return delegate.searchBookFields(query, fields, pageable);
+        }
+        return mergeFieldPages(fields, pageable,
+                (shardFields, shardPage) -> delegate.searchBookFields(query, shardFields, shardPage),
+                "No books found matching the search criteria");
+    }
+
+    // The facet index covers every shard, so only the books of the page are read, each from its own shard
+    @Override
+    public ApiResponse<FacetedBooksDTO> filterBooks(BookFilterDTO filter, Pageable pageable) {
+        return delegate.filterBooks(filter, pageable, this::findBooks);
+    }
+
+    // Related books are placed by their own ISBNs, so they are read like a page of filtered books
+    @Override
+    public ApiResponse<List<Book>> getRelatedBooks(String isbn) {
+        return delegate.getRelatedBooks(isbn, this::findBooks);
+    }
+
+    @Override
+    public ApiResponse<BorrowingRecord> borrowBook(String isbn, String borrowerId) {
+        return onShardOf(isbn, () -> delegate.borrowBook(isbn, borrowerId));
+    }
+
+    @Override
+    public ApiResponse<BorrowingRecord> returnBook(String isbn) {
+        return onShardOf(isbn, () -> delegate.returnBook(isbn));
+    }
+
+    // Holds live on the shard of their book, so they are always addressed together with its ISBN
+    @Override
+    public ApiResponse<Hold> placeHold(String isbn, String borrowerId) {
+        return onShardOf(isbn, () -> delegate.placeHold(isbn, borrowerId));
+    }
+
+    @Override
+    public ApiResponse<Hold> getHold(String isbn, Long id) {
+        return onShardOf(isbn, () -> delegate.getHold(isbn, id));
+    }
+
+    @Override
+    public ApiResponse<Hold> cancelHold(String isbn, Long id) {
+        return onShardOf(isbn, () -> delegate.cancelHold(isbn, id));
+    }
+
+    @Override
+    public ApiResponse<Void> bulkUploadBooks(MultipartFile file) {
+        Map<String, List<Book>> booksByShard = new LinkedHashMap<>();
+        try {
+            for (Book book : delegate.readBooksCsv(file)) {
+                booksByShard.computeIfAbsent(router.shardFor(book.getIsbn()), shard -> new ArrayList<>()).add(book);
+            }
+        } catch (Exception e) {
+            log.error("Error uploading file: {}", e.getMessage(), e);
+            return ApiResponse.error("Failed to process CSV file",
+                    new ErrorDetails(ResponseMessages.UPLOAD_ERROR, e.getMessage()));
+        }
+        Map<String, ApiResponse<Void>> responses = scatter(List.copyOf(booksByShard.keySet()),
+                shard -> delegate.saveUploadedBooks(booksByShard.get(shard)));
+        return responses.values().stream()
+                .filter(response -> !response.isSuccess())
+                .findFirst()
+                .orElse(ApiResponse.success(null, ResponseMessages.BOOKS_UPLOADED));
+    }
+
+    @Override
+    public ApiResponse<BorrowingReportDTO> generateBorrowingReport(LocalDateTime startDate, LocalDateTime endDate) {
+        Map<String, ApiResponse<BorrowingReportDTO>> responses = scatter(router.shards(),
+                shard -> delegate.generateBorrowingReport(startDate, endDate));
+        List<BorrowingEventDTO> events = new ArrayList<>();
+        Map<String, Long> counts = new HashMap<>();
+        for (ApiResponse<BorrowingReportDTO> response : responses.values()) {
+            if (!response.isSuccess()) {
+                return response;
+            }
+            events.addAll(response.getData().getBorrowingEvents());
+            response.getData().getBorrowingCountsByBook().forEach((isbn, count) -> counts.merge(isbn, count, Long::sum));
+        }
+        if (events.isEmpty()) {
+            return responses.values().iterator().next();
+        }
+        events.sort(Comparator.comparing(BorrowingEventDTO::getBorrowedAt));
+        BorrowingReportDTO report = new BorrowingReportDTO();
+        report.setBorrowingCountsByBook(counts);
+        report.setBorrowingEvents(events);
+        return ApiResponse.success(report, ResponseMessages.REPORT_GENERATED);
+    }
+
+    @Override
+    public ApiResponse<Book> restoreBook(String isbn) {
+        return onShardOf(isbn, () -> delegate.restoreBook(isbn));
+    }
+
+    @Override
+    public ApiResponse<Page<Book>> getBooksOnLoan(Pageable pageable) {
+        return mergePages(pageable, shardPage -> delegate.getBooksOnLoan(shardPage), ShardedBookService::property,
+                null);
+    }
+
+    // The overdue tracker covers the loans of every shard
+    @Override
+    public ApiResponse<Page<OverdueLoanDTO>> getOverdueLoans(Pageable pageable) {
+        return delegate.getOverdueLoans(pageable);
+    }
+
+    @Override
+    public void close() {
+        scatter.shutdown();
+    }
+
+    private <T> ApiResponse<T> onShardOf(String isbn, Supplier<ApiResponse<T>> work) {
+        String shard;
+        try {
+            shard = shardOf(isbn);
+        } catch (InvalidIsbnException e) {
+            return invalidIsbn(e);
+        }
+        return ShardContext.call(shard, work);
+    }
+
+    private List<Book> findBooks(List<String> isbns) {
+        Map<String, List<String>> isbnsByShard = new LinkedHashMap<>();
+        for (String isbn : isbns) {
+            isbnsByShard.computeIfAbsent(router.shardFor(isbn), shard -> new ArrayList<>()).add(isbn);
+        }
+        return scatter(List.copyOf(isbnsByShard.keySet()), shard -> delegate.findBooks(isbnsByShard.get(shard)))
+                .values().stream()
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    private static <T> ApiResponse<T> invalidIsbn(InvalidIsbnException e) {
+        return ApiResponse.error("Invalid ISBN", new ErrorDetails(ResponseMessages.INVALID_OPERATION, e.getMessage()));
+    }
+
+    // Placement is by canonical ISBN, so every accepted form of an ISBN finds the same shard
+    private String shardOf(String isbn) {
+        return router.shardFor(Isbn.normalize(isbn));
+    }
+
+    /**
+     * Asks every shard for its leading rows in the requested order and cuts the requested page from their merge.
+     * The ISBN is added as the last sort key so that shards and merge agree on the order of ties.
+     */
+    private <T> ApiResponse<Page<T>> mergePages(Pageable pageable, Function<Pageable, ApiResponse<Page<T>>> query,
+                                                BiFunction<T, String, Object> property, String emptyMessage) {
+        pageable = withPropertyNames(pageable);
+        ApiResponse<Page<T>> invalidSort = invalidSort(pageable, query);
+        if (invalidSort != null) {
+            return invalidSort;
+        }
+        Sort sort = pageable.getSort().getOrderFor("isbn") == null
+                ? pageable.getSort().and(Sort.by("isbn"))
+                : pageable.getSort();
+        Pageable shardPage = pageable.isPaged()
+                ? PageRequest.of(0, Math.toIntExact(pageable.getOffset() + pageable.getPageSize()), sort)
+                : Pageable.unpaged(sort);
+        Map<String, ApiResponse<Page<T>>> responses = scatter(router.shards(), shard -> query.apply(shardPage));
+
+        List<T> books = new ArrayList<>();
+        long total = 0;
+        for (ApiResponse<Page<T>> response : responses.values()) {
+            if (!response.isSuccess()) {
+                return response;
+            }
+            books.addAll(response.getData().getContent());
+            total += response.getData().getTotalElements();
+        }
+        books.sort(comparator(sort, property));
+        Page<T> page = pageable.isPaged()
+                ? new PageImpl<>(books.stream().skip(pageable.getOffset()).limit(pageable.getPageSize()).toList(),
+                        pageable, total)
+                : new PageImpl<>(books);
+        if (page.isEmpty() && emptyMessage != null) {
+            return ApiResponse.success(page, emptyMessage);
+        }
+        return ApiResponse.success(page, ResponseMessages.BOOKS_RETRIEVED);
+    }
+
+    private <T> Map<String, T> scatter(List<String> shards, Function<String, T> work) {
+        Map<String, CompletableFuture<T>> futures = new LinkedHashMap<>();
+        for (String shard : shards) {
+            futures.put(shard, CompletableFuture.supplyAsync(
+                    () -> ShardContext.call(shard, () -> work.apply(shard)), scatter));
+        }
+        Map<String, T> results = new LinkedHashMap<>();
+        try {
+            futures.forEach((shard, future) -> results.put(shard, future.join()));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Merges pages of some fields of the books. The shards also read the sort fields, which the merge needs,
+     * and those that were not asked for are dropped from the merged page.
+     */
+    private ApiResponse<Page<Map<String, Object>>> mergeFieldPages(
+            List<String> fields, Pageable pageable,
+            BiFunction<List<String>, Pageable, ApiResponse<Page<Map<String, Object>>>> query, String emptyMessage) {
+        // Before the sort fields are added to the fields, which would be rejected as unknown fields instead
+        pageable = withPropertyNames(pageable);
+        ApiResponse<Page<Map<String, Object>>> invalidSort = invalidSort(pageable,
+                shardPage -> query.apply(fields, shardPage));
+        if (invalidSort != null) {
+            return invalidSort;
+        }
+        List<String> shardFields = new ArrayList<>(fields);
+        Stream.concat(pageable.getSort().stream().map(Sort.Order::getProperty), Stream.of("isbn"))
+                .filter(field -> !shardFields.contains(field))
+                .forEach(shardFields::add);
+        ApiResponse<Page<Map<String, Object>>> response = mergePages(pageable,
+                shardPage -> query.apply(shardFields, shardPage), Map::get, emptyMessage);
+        if (response.isSuccess() && shardFields.size() > fields.size()) {
+            response.setData(response.getData().map(row -> {
+                Map<String, Object> asked = new LinkedHashMap<>(row);
+                asked.keySet().retainAll(fields);
+                return asked;
+            }));
+        }
+        return response;
+    }
+
+    // The database also sorts by "Title" as by "title", so the merge reads the property under its own name
+    private static Pageable withPropertyNames(Pageable pageable) {
+        if (pageable.getSort().stream().allMatch(order -> SORT_PROPERTIES.contains(order.getProperty()))) {
+            return pageable;
+        }
+        Sort sort = Sort.by(pageable.getSort().stream()
+                .map(order -> SORT_PROPERTIES.contains(StringUtils.uncapitalize(order.getProperty()))
+                        ? order.withProperty(StringUtils.uncapitalize(order.getProperty()))
+                        : order)
+                .toList());
+        return pageable.isPaged()
+                ? PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort)
+                : Pageable.unpaged(sort);
+    }
+
+    /**
+     * The error for a sort the merge cannot apply, or {@code null} if it can. The query runs on one shard, so the
+     * error is the one a single database answers with; should a shard accept the sort, it still cannot be merged.
+     */
+    private <T> ApiResponse<Page<T>> invalidSort(Pageable pageable, Function<Pageable, ApiResponse<Page<T>>> query) {
+        Optional<String> unknown = pageable.getSort().stream()
+                .map(Sort.Order::getProperty)
+                .filter(name -> !SORT_PROPERTIES.contains(name))
+                .findFirst();
+        if (unknown.isEmpty()) {
+            return null;
+        }
+        ApiResponse<Page<T>> response = ShardContext.call(router.shards().get(0), () -> query.apply(pageable));
+        return response.isSuccess()
+                ? ApiResponse.error("Invalid sort", new ErrorDetails(ResponseMessages.INVALID_OPERATION,
+                        "Cannot sort by " + unknown.get() + " across shards"))
+                : response;
+    }
+
+    // Same ordering as the database: nulls first when ascending, last when descending
+    private static <T> Comparator<T> comparator(Sort sort, BiFunction<T, String, Object> property) {
+        Comparator<T> comparator = (a, b) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<T> byProperty = Comparator.comparing(
+                    row -> sortKey(property.apply(row, order.getProperty()), order),
+                    Comparator.nullsFirst(Comparator.naturalOrder()));
+            comparator = comparator.thenComparing(order.isAscending() ? byProperty : byProperty.reversed());
+        }
+        return comparator;
+    }
+
+    private static Object property(Book book, String name) {
+        return new BeanWrapperImpl(book).getPropertyValue(name);
+    }
+
+    // Sortable properties are all Comparable; values of one property share a type
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> sortKey(Object value, Sort.Order order) {
+        if (order.isIgnoreCase() && value instanceof String text) {
+            value = text.toLowerCase();
+        }
+        return (Comparable<Object>) value;
+    }
+}
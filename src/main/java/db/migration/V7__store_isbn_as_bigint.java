@@ -0,0 +1,166 @@
+package db.migration;
+
+import com.mobilise.exception.InvalidIsbnException;
+import com.mobilise.model.Isbn;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replaces the free-form {@code VARCHAR} ISBN key with the {@code BIGINT} of the canonical ISBN-13 in the books,
+ * borrowing records and both archive tables.
+ * <p>
+ * Books whose ISBNs normalize to the same key, e.g. {@code 0-13-235088-2} and {@code 9780132350884}, are merged:
+ * copies and open loans are added up, the book stays live if any of them was, and all borrowing records move to
+ * the merged book. Of duplicate archived books the most recently archived is kept. The migration fails without
+ * changes if any stored ISBN is not a valid ISBN-10 or ISBN-13, so those can be corrected first.
+ */
+public class V7__store_isbn_as_bigint extends BaseJavaMigration {
+    private static final List<String> TABLES = List.of(
+            "books", "borrowing_records", "books_archive", "borrowing_records_archive");
+    private static final List<String> INDEXES = List.of("idx_books_is_deleted_isbn", "idx_books_active_loans_isbn",
+            "idx_borrowing_records_open_loans", "idx_borrowing_records_borrowed_at_isbn",
+            "idx_borrowing_records_archive_borrowed_at_isbn");
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+        Map<String, Long> keys = normalizeAll(connection);
+
+        try (Statement statement = connection.createStatement()) {
+            // Databases baselined from ddl-auto=update carry the foreign key under a name Hibernate generated
+            for (String foreignKey : foreignKeys(connection, "BORROWING_RECORDS")) {
+                statement.execute("ALTER TABLE borrowing_records DROP CONSTRAINT \"" + foreignKey + "\"");
+            }
+            for (String index : INDEXES) {
+                statement.execute("DROP INDEX IF EXISTS " + index);
+            }
+            statement.execute("ALTER TABLE books DROP PRIMARY KEY");
+            statement.execute("ALTER TABLE books_archive DROP PRIMARY KEY");
+            for (String table : TABLES) {
+                statement.execute("ALTER TABLE " + table + " ADD COLUMN isbn_key BIGINT");
+            }
+        }
+        for (String table : TABLES) {
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE " + table + " SET isbn_key = ? WHERE isbn = ?")) {
+                for (Map.Entry<String, Long> key : keys.entrySet()) {
+                    update.setLong(1, key.getValue());
+                    update.setString(2, key.getKey());
+                    update.addBatch();
+                }
+                update.executeBatch();
+            }
+        }
+        mergeDuplicateBooks(connection);
+        keepLatestArchivedBooks(connection);
+
+        try (Statement statement = connection.createStatement()) {
+            for (String table : TABLES) {
+                statement.execute("ALTER TABLE " + table + " DROP COLUMN isbn");
+                statement.execute("ALTER TABLE " + table + " ALTER COLUMN isbn_key RENAME TO isbn");
+                statement.execute("ALTER TABLE " + table + " ALTER COLUMN isbn SET NOT NULL");
+            }
+            statement.execute("ALTER TABLE books ADD PRIMARY KEY (isbn)");
+            statement.execute("ALTER TABLE books_archive ADD PRIMARY KEY (isbn)");
+            statement.execute("ALTER TABLE borrowing_records ADD CONSTRAINT fk_borrowing_records_book " +
+                    "FOREIGN KEY (isbn) REFERENCES books (isbn)");
+            statement.execute("CREATE INDEX idx_books_is_deleted_isbn ON books (is_deleted, isbn)");
+            statement.execute("CREATE INDEX idx_books_active_loans_isbn ON books (active_loans, isbn)");
+            statement.execute("CREATE INDEX idx_borrowing_records_open_loans " +
+                    "ON borrowing_records (isbn, returned_at, borrowed_at, id)");
+            statement.execute("CREATE INDEX idx_borrowing_records_borrowed_at_isbn " +
+                    "ON borrowing_records (borrowed_at, isbn)");
+            statement.execute("CREATE INDEX idx_borrowing_records_archive_borrowed_at_isbn " +
+                    "ON borrowing_records_archive (borrowed_at, isbn)");
+        }
+    }
+
+    private static List<String> foreignKeys(Connection connection, String table) throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (PreparedStatement query = connection.prepareStatement("SELECT CONSTRAINT_NAME " +
+                "FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS WHERE TABLE_SCHEMA = CURRENT_SCHEMA " +
+                "AND TABLE_NAME = ? AND CONSTRAINT_TYPE = 'FOREIGN KEY'")) {
+            query.setString(1, table);
+            try (ResultSet rows = query.executeQuery()) {
+                while (rows.next()) {
+                    names.add(rows.getString(1));
+                }
+            }
+        }
+        return names;
+    }
+
+    private static Map<String, Long> normalizeAll(Connection connection) throws SQLException {
+        Map<String, Long> keys = new LinkedHashMap<>();
+        List<String> invalid = new ArrayList<>();
+        for (String table : TABLES) {
+            try (Statement statement = connection.createStatement();
+                 ResultSet rows = statement.executeQuery("SELECT DISTINCT isbn FROM " + table)) {
+                while (rows.next()) {
+                    String isbn = rows.getString(1);
+                    if (keys.containsKey(isbn) || invalid.contains(isbn)) {
+                        continue;
+                    }
+                    try {
+                        keys.put(isbn, Isbn.toKey(isbn));
+                    } catch (InvalidIsbnException e) {
+                        invalid.add(isbn);
+                    }
+                }
+            }
+        }
+        if (!invalid.isEmpty()) {
+            throw new IllegalStateException("Correct these ISBNs before migrating, they are not valid ISBN-10 or " +
+                    "ISBN-13: " + invalid);
+        }
+        return keys;
+    }
+
+    private static void mergeDuplicateBooks(Connection connection) throws SQLException {
+        Map<Long, List<String>> duplicates = new TreeMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT isbn_key, isbn FROM books WHERE isbn_key IN " +
+                     "(SELECT isbn_key FROM books GROUP BY isbn_key HAVING COUNT(*) > 1) " +
+                     "ORDER BY isbn_key, is_deleted, isbn")) {
+            while (rows.next()) {
+                duplicates.computeIfAbsent(rows.getLong(1), key -> new ArrayList<>()).add(rows.getString(2));
+            }
+        }
+        // The first row of each group is live if any is, and takes over the others
+        for (Map.Entry<Long, List<String>> group : duplicates.entrySet()) {
+            String survivor = group.getValue().getFirst();
+            try (PreparedStatement merge = connection.prepareStatement("UPDATE books SET " +
+                    "copies_in_stock = (SELECT SUM(copies_in_stock) FROM books WHERE isbn_key = ?), " +
+                    "active_loans = (SELECT SUM(active_loans) FROM books WHERE isbn_key = ?) WHERE isbn = ?");
+                 PreparedStatement delete = connection.prepareStatement(
+                         "DELETE FROM books WHERE isbn_key = ? AND isbn <> ?")) {
+                merge.setLong(1, group.getKey());
+                merge.setLong(2, group.getKey());
+                merge.setString(3, survivor);
+                merge.executeUpdate();
+                delete.setLong(1, group.getKey());
+                delete.setString(2, survivor);
+                delete.executeUpdate();
+            }
+        }
+    }
+
+    private static void keepLatestArchivedBooks(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM books_archive a WHERE EXISTS (SELECT 1 FROM books_archive b " +
+                    "WHERE b.isbn_key = a.isbn_key AND (b.archived_at > a.archived_at " +
+                    "OR b.archived_at = a.archived_at AND b.isbn > a.isbn))");
+        }
+    }
+}
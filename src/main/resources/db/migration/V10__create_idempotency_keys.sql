@@ -0,0 +1,13 @@
+-- Responses of requests sent with an Idempotency-Key, replayed to retries. The key is inserted in the request's own
+-- transaction before it runs, so a duplicate running elsewhere waits on it, and the response is filled in after.
+CREATE TABLE idempotency_keys (
+    idempotency_key VARCHAR(255) NOT NULL,
+    request         VARCHAR(2048) NOT NULL,
+    status          INTEGER,
+    response        CLOB,
+    created_at      TIMESTAMP(6)  NOT NULL,
+    PRIMARY KEY (idempotency_key)
+);
+
+-- Expired keys are purged by age
+CREATE INDEX idx_idempotency_keys_created_at ON idempotency_keys (created_at);
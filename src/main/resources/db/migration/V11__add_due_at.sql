@@ -0,0 +1,6 @@
+-- When a loan is due back. Loans made before due dates existed get the default loan period of 14 days, loans
+-- inserted without one are never overdue.
+ALTER TABLE borrowing_records ADD COLUMN due_at TIMESTAMP(6);
+ALTER TABLE borrowing_records_archive ADD COLUMN due_at TIMESTAMP(6);
+UPDATE borrowing_records SET due_at = DATEADD('DAY', 14, borrowed_at);
+UPDATE borrowing_records_archive SET due_at = DATEADD('DAY', 14, borrowed_at);
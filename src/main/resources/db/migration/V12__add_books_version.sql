@@ -0,0 +1,2 @@
+-- Bumped by every change to a book, stock changes included; drives ETags and If-Match on updates
+ALTER TABLE books ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
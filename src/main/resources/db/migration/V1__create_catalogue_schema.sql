@@ -0,0 +1,19 @@
+CREATE TABLE books (
+    isbn             VARCHAR(255) NOT NULL,
+    title            VARCHAR(255) NOT NULL,
+    author           VARCHAR(255) NOT NULL,
+    publication_year INTEGER      NOT NULL CHECK (publication_year BETWEEN 1000 AND 9999),
+    copies_in_stock  INTEGER CHECK (copies_in_stock >= 0),
+    is_deleted       BOOLEAN      NOT NULL DEFAULT FALSE,
+    deleted_at       TIMESTAMP(6),
+    PRIMARY KEY (isbn)
+);
+
+CREATE TABLE borrowing_records (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    isbn        VARCHAR(255) NOT NULL,
+    borrowed_at TIMESTAMP(6) NOT NULL,
+    returned_at TIMESTAMP(6),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_borrowing_records_book FOREIGN KEY (isbn) REFERENCES books (isbn)
+);
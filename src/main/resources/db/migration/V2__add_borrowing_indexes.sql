@@ -0,0 +1,9 @@
+-- H2 has no partial indexes. Open loans are found with an equality seek on (isbn, returned_at IS NULL);
+-- on a database with filtered indexes this would be ON borrowing_records (isbn) WHERE returned_at IS NULL.
+CREATE INDEX idx_borrowing_records_isbn_returned_at ON borrowing_records (isbn, returned_at);
+
+-- Borrowing report range scans; isbn is included so the per-book count is answered from the index alone
+CREATE INDEX idx_borrowing_records_borrowed_at_isbn ON borrowing_records (borrowed_at, isbn);
+
+-- Live catalogue listing; on a database with filtered indexes this would be ON books (isbn) WHERE NOT is_deleted
+CREATE INDEX idx_books_is_deleted_isbn ON books (is_deleted, isbn);
@@ -0,0 +1,9 @@
+-- Open loans per book, maintained with copies_in_stock by borrow and return so the delete guard is a single row read
+ALTER TABLE books ADD COLUMN active_loans INT DEFAULT 0 NOT NULL;
+ALTER TABLE books ADD CONSTRAINT chk_books_active_loans CHECK (active_loans >= 0);
+
+UPDATE books b SET active_loans = (
+    SELECT COUNT(*) FROM borrowing_records br WHERE br.isbn = b.isbn AND br.returned_at IS NULL);
+
+-- Currently on loan listing
+CREATE INDEX idx_books_active_loans_isbn ON books (active_loans, isbn);
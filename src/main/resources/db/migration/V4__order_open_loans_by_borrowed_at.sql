@@ -0,0 +1,4 @@
+-- Open loans per book form a FIFO queue: seek on (isbn, returned_at IS NULL) and read the oldest loan first.
+-- Replaces the (isbn, returned_at) index from V2, which is a prefix of this one.
+CREATE INDEX idx_borrowing_records_open_loans ON borrowing_records (isbn, returned_at, borrowed_at, id);
+DROP INDEX idx_borrowing_records_isbn_returned_at;
@@ -0,0 +1,23 @@
+-- Cold history moved out of the hot tables by the archive job. There are no foreign keys, since archived loans
+-- may belong to books that are themselves archived, and the book title is copied so reports need no join.
+CREATE TABLE borrowing_records_archive (
+    id          BIGINT       NOT NULL,
+    isbn        VARCHAR(255) NOT NULL,
+    book_title  VARCHAR(255) NOT NULL,
+    borrowed_at TIMESTAMP(6) NOT NULL,
+    returned_at TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_borrowing_records_archive_borrowed_at_isbn ON borrowing_records_archive (borrowed_at, isbn);
+
+CREATE TABLE books_archive (
+    isbn             VARCHAR(255) NOT NULL,
+    title            VARCHAR(255) NOT NULL,
+    author           VARCHAR(255) NOT NULL,
+    publication_year INTEGER      NOT NULL,
+    copies_in_stock  INTEGER,
+    deleted_at       TIMESTAMP(6) NOT NULL,
+    archived_at      TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (isbn)
+);
@@ -0,0 +1,8 @@
+-- Written on the primary at a fixed interval. The value a replica has applied bounds how stale it is.
+CREATE TABLE replication_heartbeat (
+    id      INTEGER      NOT NULL,
+    beat_at TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (id)
+);
+
+INSERT INTO replication_heartbeat (id, beat_at) VALUES (1, CURRENT_TIMESTAMP);
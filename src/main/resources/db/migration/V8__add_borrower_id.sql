@@ -0,0 +1,8 @@
+-- Who borrowed, as passed by the caller. Loans made before borrowers were recorded, or without one, stay NULL and
+-- take no part in co-borrowing recommendations.
+ALTER TABLE borrowing_records ADD COLUMN borrower_id VARCHAR(64);
+ALTER TABLE borrowing_records_archive ADD COLUMN borrower_id VARCHAR(64);
+
+-- A borrower's books, read in borrower order when the recommendations are built and per borrower on every borrow
+CREATE INDEX idx_borrowing_records_borrower_isbn ON borrowing_records (borrower_id, isbn);
+CREATE INDEX idx_borrowing_records_archive_borrower_isbn ON borrowing_records_archive (borrower_id, isbn);
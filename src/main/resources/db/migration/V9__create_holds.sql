@@ -0,0 +1,15 @@
+-- Borrowers waiting for a copy of a book. The waiting holds of a book are served oldest first as copies come back,
+-- and a served hold keeps the loan it was given.
+CREATE TABLE holds (
+    id                  BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    isbn                BIGINT       NOT NULL,
+    borrower_id         VARCHAR(64),
+    status              VARCHAR(16)  NOT NULL,
+    placed_at           TIMESTAMP(6) NOT NULL,
+    closed_at           TIMESTAMP(6),
+    borrowing_record_id BIGINT,
+    PRIMARY KEY (id)
+);
+
+-- The next waiting hold of a book, and the number of holds ahead of one, are read from this index
+CREATE INDEX idx_holds_isbn_status_id ON holds (isbn, status, id);
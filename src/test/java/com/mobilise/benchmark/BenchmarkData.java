@@ -0,0 +1,65 @@
+package com.mobilise.benchmark;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * Generates the catalogue shared by the benchmarks. Keys are consecutive numbers from {@link #ISBN_BASE}; they
+ * do not carry valid check digits, which only matters to the application, not to the SQL being measured.
+ */
+final class BenchmarkData {
+    static final long ISBN_BASE = 9790000000000L;
+    static final LocalDateTime EPOCH = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final int CHUNK = 1_000_000;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Fills books and borrowing records unless the database already holds {@code borrowingRows} records.
+     */
+    static void generate(JdbcTemplate jdbcTemplate, int books, long borrowingRows) {
+        Long existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM borrowing_records", Long.class);
+        if (existing != null && existing == borrowingRows) {
+            return;
+        }
+        insertBooks(jdbcTemplate, books);
+        // One loan per minute going back from EPOCH; every 50th loan is still open
+        for (long from = 1; from <= borrowingRows; from += CHUNK) {
+            long to = Math.min(from + CHUNK - 1, borrowingRows);
+            jdbcTemplate.update("INSERT INTO borrowing_records (isbn, borrowed_at, returned_at) " +
+                    "SELECT CAST(? AS BIGINT) + MOD(X, CAST(? AS INT)) + 1, " +
+                    "DATEADD('MINUTE', -X, CAST(? AS TIMESTAMP)), " +
+                    "CASE WHEN MOD(X, 50) = 0 THEN NULL ELSE DATEADD('MINUTE', 60 * 24 * 14 - X, CAST(? AS TIMESTAMP)) END " +
+                    "FROM SYSTEM_RANGE(?, ?)", ISBN_BASE, books, EPOCH, EPOCH, from, to);
+        }
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    /**
+     * Fills books without borrowing records unless the database already holds exactly {@code books} books and no
+     * records.
+     */
+    static void generateBooks(JdbcTemplate jdbcTemplate, int books) {
+        Long existingBooks = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM books", Long.class);
+        Long existingRecords = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM borrowing_records", Long.class);
+        if (existingBooks != null && existingBooks == books && existingRecords != null && existingRecords == 0) {
+            return;
+        }
+        insertBooks(jdbcTemplate, books);
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    // 1000 authors over 70 publication years; every sixth book has no copies in stock
+    private static void insertBooks(JdbcTemplate jdbcTemplate, int books) {
+        jdbcTemplate.execute("TRUNCATE TABLE borrowing_records");
+        jdbcTemplate.execute("DELETE FROM books");
+        for (long from = 1; from <= books; from += CHUNK) {
+            long to = Math.min(from + CHUNK - 1, books);
+            jdbcTemplate.update("INSERT INTO books (isbn, title, author, publication_year, copies_in_stock, is_deleted) " +
+                    "SELECT CAST(? AS BIGINT) + X, 'Title ' || X, 'Author ' || MOD(X, 1000), 1950 + MOD(X, 70), " +
+                    "MOD(X, 6), FALSE FROM SYSTEM_RANGE(?, ?)", ISBN_BASE, from, to);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.mobilise.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures the SQL behind the borrowing repository methods with and without the borrowing indexes.
+ * <p>
+ * Excluded from the default build; run with
+ * {@code mvn test -Pperf -Dtest=BorrowingIndexBenchmark -Dbenchmark.borrowingRows=50000000}. The data set is
+ * generated into a file-backed H2 database under {@code target/benchmark} and the report is written to
+ * {@code target/benchmark/borrowing-indexes.txt}.
+ */
+@Tag("benchmark")
+@ActiveProfiles("benchmark")
+@SpringBootTest
+class BorrowingIndexBenchmark {
+    private static final Map<String, String> INDEXES = Map.of(
+            "idx_borrowing_records_open_loans", "borrowing_records (isbn, returned_at, borrowed_at, id)",
+            "idx_borrowing_records_borrowed_at_isbn", "borrowing_records (borrowed_at, isbn)");
+
+    private final long borrowingRows = Long.getLong("benchmark.borrowingRows", 1_000_000);
+    private final int books = Integer.getInteger("benchmark.books", 100_000);
+    private final int iterations = Integer.getInteger("benchmark.iterations", 20);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void borrowingQueryPaths() throws IOException {
+        BenchmarkData.generate(jdbcTemplate, books, borrowingRows);
+        // The SQL the repository methods generate, run directly so ORM overhead does not hide the access path.
+        // Every run uses different arguments, otherwise H2 answers repeated statements from its result cache.
+        Map<String, Query> queries = new LinkedHashMap<>();
+        queries.put("findByBookAndReturnedAtIsNull", new Query(
+                "SELECT id FROM borrowing_records WHERE isbn = ? AND returned_at IS NULL", BorrowingIndexBenchmark::isbn));
+        queries.put("findOldestOpenBorrowing", new Query(
+                "SELECT id FROM borrowing_records WHERE isbn = ? AND returned_at IS NULL " +
+                        "ORDER BY isbn, returned_at, borrowed_at, id FETCH FIRST 1 ROWS ONLY",
+                BorrowingIndexBenchmark::isbn));
+        queries.put("findByBorrowedAtBetween (1h)", new Query(
+                "SELECT id, isbn FROM borrowing_records WHERE borrowed_at BETWEEN ? AND ?", BorrowingIndexBenchmark::hour));
+        queries.put("countBorrowingsByBookAndDateRange (1h)", new Query(
+                "SELECT isbn, COUNT(*) FROM borrowing_records WHERE borrowed_at BETWEEN ? AND ? GROUP BY isbn",
+                BorrowingIndexBenchmark::hour));
+
+        Map<String, double[]> indexed = measure(queries);
+        Map<String, String> plans = explain(queries);
+        INDEXES.keySet().forEach(index -> jdbcTemplate.execute("DROP INDEX " + index));
+        Map<String, double[]> unindexed;
+        try {
+            unindexed = measure(queries);
+        } finally {
+            INDEXES.forEach((index, definition) -> jdbcTemplate.execute("CREATE INDEX " + index + " ON " + definition));
+        }
+
+        StringBuilder report = new StringBuilder("# Borrowing query paths with and without the borrowing indexes\n")
+                .append("# borrowingRows=").append(borrowingRows).append('\n')
+                .append("# books=").append(books).append('\n')
+                .append("# iterations=").append(iterations).append('\n')
+                .append(String.format(Locale.ROOT, "%-42s %14s %14s %10s%n", "query", "indexed_ms", "unindexed_ms", "speedup"));
+        queries.keySet().forEach(query -> report.append(String.format(Locale.ROOT, "%-42s %14.3f %14.3f %9.1fx%n",
+                query, median(indexed.get(query)), median(unindexed.get(query)),
+                median(unindexed.get(query)) / Math.max(median(indexed.get(query)), 0.001))));
+        plans.forEach((query, plan) -> report.append("\n# ").append(query).append('\n').append(plan).append('\n'));
+
+        Path file = Path.of("target/benchmark/borrowing-indexes.txt");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, report);
+        System.out.println(report);
+
+        plans.forEach((query, plan) -> assertTrue(INDEXES.keySet().stream()
+                        .anyMatch(index -> plan.toLowerCase(Locale.ROOT).contains(index)),
+                query + " does not use a borrowing index:\n" + plan));
+    }
+
+    private record Query(String sql, IntFunction<Object[]> args) {
+    }
+
+    private static Object[] isbn(int run) {
+        return new Object[]{BenchmarkData.ISBN_BASE + 1 + run};
+    }
+
+    private static Object[] hour(int run) {
+        return new Object[]{BenchmarkData.EPOCH.minusHours(run + 2), BenchmarkData.EPOCH.minusHours(run + 1)};
+    }
+
+    private Map<String, double[]> measure(Map<String, Query> queries) {
+        Map<String, double[]> timings = new LinkedHashMap<>();
+        queries.forEach((name, query) -> {
+            for (int i = 0; i < 3; i++) {
+                jdbcTemplate.queryForList(query.sql(), query.args().apply(iterations + i));
+            }
+            double[] millis = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                long started = System.nanoTime();
+                jdbcTemplate.queryForList(query.sql(), query.args().apply(i));
+                millis[i] = (System.nanoTime() - started) / 1_000_000.0;
+            }
+            timings.put(name, millis);
+        });
+        return timings;
+    }
+
+    private Map<String, String> explain(Map<String, Query> queries) {
+        Map<String, String> plans = new LinkedHashMap<>();
+        queries.forEach((name, query) ->
+                plans.put(name, jdbcTemplate.queryForObject("EXPLAIN " + query.sql(), String.class, query.args().apply(0))));
+        return plans;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
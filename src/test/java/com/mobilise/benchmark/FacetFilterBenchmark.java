@@ -0,0 +1,122 @@
+package com.mobilise.benchmark;
+
+import com.mobilise.dto.ApiResponse;
+import com.mobilise.dto.BookFilterDTO;
+import com.mobilise.dto.FacetedBooksDTO;
+import com.mobilise.facet.CatalogueFacetIndex;
+import com.mobilise.interfaces.BookServiceInterface;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Times faceted filtering end to end through the book service: bitmap filtering, facet counts and reading the
+ * page of books.
+ * <p>
+ * Excluded from the default build; run with
+ * {@code mvn test -Pperf -Dtest=FacetFilterBenchmark -Dbenchmark.facetBooks=5000000}. The books are generated into
+ * the file-backed benchmark database, replacing the data of the other benchmarks, and the report is written to
+ * {@code target/benchmark/facet-filter.txt}.
+ */
+@Tag("benchmark")
+@ActiveProfiles("benchmark")
+@SpringBootTest
+class FacetFilterBenchmark {
+    private final int books = Integer.getInteger("benchmark.facetBooks", 2_000_000);
+    private final int iterations = Integer.getInteger("benchmark.iterations", 200);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BookServiceInterface bookService;
+
+    @Autowired
+    private CatalogueFacetIndex catalogueFacetIndex;
+
+    @Test
+    void facetFilters() throws IOException {
+        BenchmarkData.generateBooks(jdbcTemplate, books);
+        long started = System.nanoTime();
+        catalogueFacetIndex.rebuild();
+        double buildMillis = (System.nanoTime() - started) / 1_000_000.0;
+
+        // Every run filters on different values, so neither the index nor H2 answer from a previous run
+        Map<String, IntFunction<BookFilterDTO>> filters = new LinkedHashMap<>();
+        filters.put("no filter", run -> filter(null, null, null, false));
+        filters.put("decade", run -> filter(1950 + run % 60, 1959 + run % 60, null, false));
+        filters.put("author", run -> filter(null, null, List.of("Author " + run), false));
+        filters.put("in stock", run -> filter(null, null, null, true));
+        filters.put("decade + 3 authors + in stock", run -> filter(1950 + run % 60, 1959 + run % 60,
+                List.of("Author " + run, "Author " + (run + 100), "Author " + (run + 200)), true));
+
+        // Warm up every path first, the page read runs through Hibernate and takes a while to be compiled
+        filters.values().forEach(filter -> {
+            for (int i = 0; i < iterations; i++) {
+                run(filter.apply(iterations + i), i);
+            }
+        });
+        Map<String, double[]> timings = new LinkedHashMap<>();
+        filters.forEach((name, filter) -> {
+            double[] millis = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                long runStarted = System.nanoTime();
+                FacetedBooksDTO result = run(filter.apply(i), i);
+                millis[i] = (System.nanoTime() - runStarted) / 1_000_000.0;
+                assertTrue(result.getBooks().getTotalElements() > 0, name + " matched no books");
+            }
+            timings.put(name, millis);
+        });
+
+        StringBuilder report = new StringBuilder("# Faceted filtering through the bitmap index\n")
+                .append("# books=").append(books).append('\n')
+                .append("# iterations=").append(iterations).append('\n')
+                .append(String.format(Locale.ROOT, "# index build %.0f ms%n", buildMillis))
+                .append(String.format(Locale.ROOT, "%-42s %14s %14s%n", "filter", "median_ms", "max_ms"));
+        timings.forEach((name, millis) -> report.append(String.format(Locale.ROOT, "%-42s %14.3f %14.3f%n",
+                name, median(millis), Arrays.stream(millis).max().orElse(0))));
+
+        Path file = Path.of("target/benchmark/facet-filter.txt");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, report);
+        System.out.println(report);
+    }
+
+    // One of the first five pages of 20 books, so that even narrow filters read a full page
+    private FacetedBooksDTO run(BookFilterDTO filter, int run) {
+        ApiResponse<FacetedBooksDTO> response = bookService.filterBooks(filter, PageRequest.of(run % 5, 20));
+        assertTrue(response.isSuccess(), response.getMessage());
+        return response.getData();
+    }
+
+    private static BookFilterDTO filter(Integer yearFrom, Integer yearTo, List<String> authors, boolean inStockOnly) {
+        BookFilterDTO filter = new BookFilterDTO();
+        filter.setYearFrom(yearFrom);
+        filter.setYearTo(yearTo);
+        filter.setAuthors(authors);
+        filter.setInStockOnly(inStockOnly);
+        return filter;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
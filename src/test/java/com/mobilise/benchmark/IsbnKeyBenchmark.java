@@ -0,0 +1,132 @@
+package com.mobilise.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the {@code BIGINT} ISBN keys with the {@code VARCHAR} keys they replaced: table plus index size of books
+ * and borrowing records, and the join behind the borrowing report.
+ * <p>
+ * Excluded from the default build; run with
+ * {@code mvn test -Pperf -Dtest=IsbnKeyBenchmark -Dbenchmark.borrowingRows=10000000}. The {@code VARCHAR} tables are
+ * rebuilt from the generated data with the pre-V7 definitions and indexes, and the report is written to
+ * {@code target/benchmark/isbn-keys.txt}.
+ */
+@Tag("benchmark")
+@ActiveProfiles("benchmark")
+@SpringBootTest
+class IsbnKeyBenchmark {
+    private static final String REPORT_JOIN = "SELECT br.id, br.borrowed_at, br.returned_at, b.isbn, b.title, b.author " +
+            "FROM %s br JOIN %s b ON b.isbn = br.isbn WHERE br.borrowed_at BETWEEN ? AND ?";
+
+    private final long borrowingRows = Long.getLong("benchmark.borrowingRows", 1_000_000);
+    private final int books = Integer.getInteger("benchmark.books", 100_000);
+    private final int iterations = Integer.getInteger("benchmark.iterations", 20);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void isbnKeyWidth() throws IOException {
+        BenchmarkData.generate(jdbcTemplate, books, borrowingRows);
+        createVarcharTables();
+        try {
+            long booksBigint = diskSpace("BOOKS");
+            long booksVarchar = diskSpace("VARCHAR_BOOKS");
+            long borrowingBigint = diskSpace("BORROWING_RECORDS");
+            long borrowingVarchar = diskSpace("VARCHAR_BORROWING_RECORDS");
+            double[] joinBigint = measure(String.format(REPORT_JOIN, "borrowing_records", "books"));
+            double[] joinVarchar = measure(String.format(REPORT_JOIN, "varchar_borrowing_records", "varchar_books"));
+
+            StringBuilder report = new StringBuilder("# ISBN keys stored as BIGINT and as VARCHAR\n")
+                    .append("# borrowingRows=").append(borrowingRows).append('\n')
+                    .append("# books=").append(books).append('\n')
+                    .append("# iterations=").append(iterations).append('\n')
+                    .append(String.format(Locale.ROOT, "%-42s %14s %14s %10s%n", "measure", "bigint", "varchar", "ratio"))
+                    .append(row("books table and indexes (KiB)", booksBigint / 1024.0, booksVarchar / 1024.0))
+                    .append(row("borrowing_records table and indexes (KiB)",
+                            borrowingBigint / 1024.0, borrowingVarchar / 1024.0))
+                    .append(row("report join, 1 day (ms)", median(joinBigint), median(joinVarchar)));
+
+            Path file = Path.of("target/benchmark/isbn-keys.txt");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, report);
+            System.out.println(report);
+
+            assertTrue(borrowingBigint < borrowingVarchar,
+                    "BIGINT keys should take less space than VARCHAR keys:\n" + report);
+        } finally {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS varchar_borrowing_records");
+            jdbcTemplate.execute("DROP TABLE IF EXISTS varchar_books");
+        }
+    }
+
+    // Definitions and indexes as they were before V7, holding the same rows with the ISBNs as text
+    private void createVarcharTables() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS varchar_borrowing_records");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS varchar_books");
+        jdbcTemplate.execute("CREATE TABLE varchar_books (isbn VARCHAR(255) NOT NULL, title VARCHAR(255) NOT NULL, " +
+                "author VARCHAR(255) NOT NULL, publication_year INTEGER NOT NULL, copies_in_stock INTEGER, " +
+                "is_deleted BOOLEAN NOT NULL DEFAULT FALSE, deleted_at TIMESTAMP(6), " +
+                "active_loans INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (isbn))");
+        jdbcTemplate.execute("CREATE TABLE varchar_borrowing_records (id BIGINT NOT NULL, isbn VARCHAR(255) NOT NULL, " +
+                "borrowed_at TIMESTAMP(6) NOT NULL, returned_at TIMESTAMP(6), PRIMARY KEY (id), " +
+                "FOREIGN KEY (isbn) REFERENCES varchar_books (isbn))");
+        jdbcTemplate.execute("INSERT INTO varchar_books SELECT CAST(isbn AS VARCHAR), title, author, publication_year, " +
+                "copies_in_stock, is_deleted, deleted_at, active_loans FROM books");
+        jdbcTemplate.execute("INSERT INTO varchar_borrowing_records " +
+                "SELECT id, CAST(isbn AS VARCHAR), borrowed_at, returned_at FROM borrowing_records");
+        jdbcTemplate.execute("CREATE INDEX idx_varchar_books_is_deleted_isbn ON varchar_books (is_deleted, isbn)");
+        jdbcTemplate.execute("CREATE INDEX idx_varchar_books_active_loans_isbn ON varchar_books (active_loans, isbn)");
+        jdbcTemplate.execute("CREATE INDEX idx_varchar_borrowing_records_open_loans " +
+                "ON varchar_borrowing_records (isbn, returned_at, borrowed_at, id)");
+        jdbcTemplate.execute("CREATE INDEX idx_varchar_borrowing_records_borrowed_at_isbn " +
+                "ON varchar_borrowing_records (borrowed_at, isbn)");
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    private long diskSpace(String table) {
+        return jdbcTemplate.queryForObject("SELECT DISK_SPACE_USED(?)", Long.class, table);
+    }
+
+    // Every run joins a different day, otherwise H2 answers repeated statements from its result cache
+    private double[] measure(String sql) {
+        for (int i = 0; i < 3; i++) {
+            jdbcTemplate.queryForList(sql, day(iterations + i));
+        }
+        double[] millis = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long started = System.nanoTime();
+            jdbcTemplate.queryForList(sql, day(i));
+            millis[i] = (System.nanoTime() - started) / 1_000_000.0;
+        }
+        return millis;
+    }
+
+    private static Object[] day(int run) {
+        return new Object[]{BenchmarkData.EPOCH.minusDays(run + 2), BenchmarkData.EPOCH.minusDays(run + 1)};
+    }
+
+    private static String row(String measure, double bigint, double varchar) {
+        return String.format(Locale.ROOT, "%-42s %14.1f %14.1f %9.2fx%n", measure, bigint, varchar,
+                varchar / Math.max(bigint, 0.001));
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,194 @@
+package com.mobilise.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mobilise.dto.ApiResponse;
+import com.mobilise.dto.BorrowingEventDTO;
+import com.mobilise.dto.BorrowingReportDTO;
+import com.mobilise.model.Book;
+import com.mobilise.model.BorrowingRecord;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the response encodings: payload size, raw and gzipped, and the time to encode and to parse a page of
+ * books, a list of borrowing records and a borrowing report in JSON, CBOR and Smile. The mappers are the ones the
+ * message converters use, so the payloads have the shape clients receive. Parsing reads a tree, as a client
+ * without the server's classes would.
+ * <p>
+ * Excluded from the default build; run with
+ * {@code mvn test -Pperf -Dtest=SerializationBenchmark -Dbenchmark.pageSize=1000}. Nothing is read from the
+ * database, and the report is written to {@code target/benchmark/serialization.txt}.
+ */
+@Tag("benchmark")
+@ActiveProfiles("benchmark")
+@SpringBootTest
+class SerializationBenchmark {
+    private final int pageSize = Integer.getInteger("benchmark.pageSize", 1000);
+    private final int iterations = Integer.getInteger("benchmark.iterations", 500);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MappingJackson2CborHttpMessageConverter cborConverter;
+
+    @Autowired
+    private MappingJackson2SmileHttpMessageConverter smileConverter;
+
+    @Test
+    void serialization() throws IOException {
+        Map<String, ObjectMapper> formats = new LinkedHashMap<>();
+        formats.put("json", objectMapper);
+        formats.put("cbor", cborConverter.getObjectMapper());
+        formats.put("smile", smileConverter.getObjectMapper());
+
+        List<Book> books = books();
+        Map<String, Object> payloads = new LinkedHashMap<>();
+        payloads.put("book page", ApiResponse.success(new PageImpl<>(books, PageRequest.of(0, pageSize), 250_000),
+                "Books retrieved successfully"));
+        payloads.put("borrowing records", ApiResponse.success(records(books), "Borrowing records retrieved"));
+        payloads.put("borrowing report", ApiResponse.success(report(books), "Report generated successfully"));
+
+        StringBuilder report = new StringBuilder("# Response encodings\n")
+                .append("# pageSize=").append(pageSize).append('\n')
+                .append("# iterations=").append(iterations).append('\n')
+                .append(String.format(Locale.ROOT, "%-18s %-6s %10s %10s %14s %14s%n",
+                        "payload", "format", "bytes", "gzip_bytes", "encode_med_us", "parse_med_us"));
+        Map<String, Integer> jsonBytes = new LinkedHashMap<>();
+        payloads.forEach((payload, value) -> formats.forEach((format, mapper) -> {
+            byte[] encoded = encode(mapper, value);
+            // Warm up both directions first, so every format is timed compiled
+            for (int i = 0; i < iterations; i++) {
+                encode(mapper, value);
+                parse(mapper, encoded);
+            }
+            double[] encodeMicros = new double[iterations];
+            double[] parseMicros = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                long started = System.nanoTime();
+                encode(mapper, value);
+                encodeMicros[i] = (System.nanoTime() - started) / 1_000.0;
+                started = System.nanoTime();
+                parse(mapper, encoded);
+                parseMicros[i] = (System.nanoTime() - started) / 1_000.0;
+            }
+            if (format.equals("json")) {
+                jsonBytes.put(payload, encoded.length);
+            } else if (format.equals("smile")) {
+                assertTrue(encoded.length < jsonBytes.get(payload), payload + " is larger in Smile than in JSON");
+            }
+            report.append(String.format(Locale.ROOT, "%-18s %-6s %10d %10d %14.1f %14.1f%n", payload, format,
+                    encoded.length, gzip(encoded).length, median(encodeMicros), median(parseMicros)));
+        }));
+
+        Path file = Path.of("target/benchmark/serialization.txt");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, report);
+        System.out.println(report);
+    }
+
+    // Shaped like the generated catalogue of BenchmarkData
+    private List<Book> books() {
+        List<Book> books = new ArrayList<>(pageSize);
+        for (int i = 1; i <= pageSize; i++) {
+            Book book = new Book();
+            book.setIsbn(Long.toString(BenchmarkData.ISBN_BASE + i));
+            book.setTitle("Title " + i);
+            book.setAuthor("Author " + i % 1000);
+            book.setPublicationYear(1950 + i % 70);
+            book.setCopiesInStock(i % 6);
+            book.setActiveLoans(i % 3);
+            book.setVersion((long) i % 5);
+            books.add(book);
+        }
+        return books;
+    }
+
+    private static List<BorrowingRecord> records(List<Book> books) {
+        List<BorrowingRecord> records = new ArrayList<>(books.size());
+        for (int i = 0; i < books.size(); i++) {
+            BorrowingRecord record = new BorrowingRecord();
+            record.setId((long) i + 1);
+            record.setBook(books.get(i));
+            record.setBorrowedAt(BenchmarkData.EPOCH.minusMinutes(i));
+            record.setDueAt(record.getBorrowedAt().plusDays(14));
+            record.setReturnedAt(i % 50 == 0 ? null : record.getBorrowedAt().plusDays(7));
+            record.setBorrowerId("reader-" + i % 200);
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static BorrowingReportDTO report(List<Book> books) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        List<BorrowingEventDTO> events = new ArrayList<>(books.size());
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            counts.put(book.getTitle(), (long) (i % 20 + 1));
+            BorrowingEventDTO event = new BorrowingEventDTO();
+            event.setIsbn(book.getIsbn());
+            event.setBookTitle(book.getTitle());
+            event.setBorrowedAt(BenchmarkData.EPOCH.minusMinutes(i));
+            event.setReturnedAt(i % 50 == 0 ? null : event.getBorrowedAt().plusDays(7));
+            events.add(event);
+        }
+        BorrowingReportDTO report = new BorrowingReportDTO();
+        report.setBorrowingCountsByBook(counts);
+        report.setBorrowingEvents(events);
+        return report;
+    }
+
+    private static byte[] encode(ObjectMapper mapper, Object value) {
+        try {
+            return mapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void parse(ObjectMapper mapper, byte[] encoded) {
+        try {
+            assertTrue(mapper.readTree(encoded).get("success").asBoolean());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] encoded) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(encoded);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,160 @@
+package com.mobilise.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Measures time to first request of each startup variant: the plain jar, the jar with its ahead-of-time processed
+ * context, the extracted jar with AOT and a CDS archive from a training run, and the native executable if one was
+ * built. Time is taken from launching the process until {@code GET /api/v1/books} first answers {@code 200}.
+ * <p>
+ * Excluded from the default build. Package the AOT-processed jar first, and optionally the native executable, then
+ * run {@code mvn -Paot package -DskipTests && mvn test -Pperf -Dtest=StartupBenchmark}. The extracted jar, archive
+ * and application logs go to {@code target/benchmark/startup}, and the report is written to
+ * {@code target/benchmark/startup.txt}.
+ */
+@Tag("benchmark")
+class StartupBenchmark {
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(5);
+
+    private final Path jar = Path.of(System.getProperty("benchmark.jar",
+            "target/book-management-system-0.0.1-SNAPSHOT.jar"));
+    private final Path nativeExecutable = Path.of(System.getProperty("benchmark.native",
+            "target/book-management-system"));
+    private final int runs = Integer.getInteger("benchmark.startupRuns", 3);
+    private final Path directory = Path.of("target/benchmark/startup");
+    private final String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+    @Test
+    void timeToFirstRequest() throws Exception {
+        assertTrue(Files.isRegularFile(jar), jar + " is missing, package it with mvn -Paot package -DskipTests");
+        Files.createDirectories(directory);
+        Path extracted = extract();
+        Path archive = train(extracted);
+
+        Map<String, List<String>> variants = new LinkedHashMap<>();
+        variants.put("jar", List.of(java, "-jar", jar.toString()));
+        variants.put("jar + aot", List.of(java, "-Dspring.aot.enabled=true", "-jar", jar.toString()));
+        variants.put("extracted + aot + cds", List.of(java, "-XX:SharedArchiveFile=" + archive,
+                "-Dspring.aot.enabled=true", "-jar", extracted.resolve(jar.getFileName()).toString()));
+        if (Files.isExecutable(nativeExecutable)) {
+            variants.put("native", List.of(nativeExecutable.toString()));
+        }
+
+        StringBuilder report = new StringBuilder("# Time to first request\n")
+                .append("# runs=").append(runs).append('\n')
+                .append("# java=").append(System.getProperty("java.version")).append('\n')
+                .append(String.format(Locale.ROOT, "%-24s %14s %14s%n", "variant", "median_ms", "max_ms"));
+        for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+            double[] millis = new double[runs];
+            for (int run = 0; run < runs; run++) {
+                millis[run] = timeToFirstRequest(variant.getKey(), variant.getValue(), run);
+            }
+            report.append(String.format(Locale.ROOT, "%-24s %14.0f %14.0f%n", variant.getKey(), median(millis),
+                    Arrays.stream(millis).max().orElse(0)));
+        }
+        if (!variants.containsKey("native")) {
+            report.append("# native: not built, see mvn -Pnative native:compile\n");
+        }
+
+        Path file = Path.of("target/benchmark/startup.txt");
+        Files.writeString(file, report);
+        System.out.println(report);
+    }
+
+    private Path extract() throws Exception {
+        Path extracted = directory.resolve("extracted");
+        run(List.of(java, "-Djarmode=tools", "-jar", jar.toString(), "extract", "--force", "--destination",
+                extracted.toString()), "extract");
+        return extracted;
+    }
+
+    // The training run refreshes the context and exits, leaving the classes it loaded in the archive
+    private Path train(Path extracted) throws Exception {
+        Path archive = directory.resolve("application.jsa").toAbsolutePath();
+        Files.deleteIfExists(archive);
+        run(List.of(java, "-XX:ArchiveClassesAtExit=" + archive, "-Dspring.aot.enabled=true",
+                "-Dspring.context.exit=onRefresh", "-jar", extracted.resolve(jar.getFileName()).toString(),
+                "--server.port=0"), "training");
+        assertTrue(Files.isRegularFile(archive), "The training run left no CDS archive");
+        return archive;
+    }
+
+    private double timeToFirstRequest(String variant, List<String> command, int run) throws Exception {
+        int port = freePort();
+        List<String> arguments = new ArrayList<>(command);
+        arguments.add("--server.port=" + port);
+        Path log = directory.resolve(variant.replaceAll("[^a-z]+", "-") + "-" + run + ".log");
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/books?size=1"))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+
+        long started = System.nanoTime();
+        Process process = new ProcessBuilder(arguments).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        try {
+            while (System.nanoTime() - started < STARTUP_TIMEOUT.toNanos()) {
+                if (!process.isAlive()) {
+                    fail(variant + " exited with " + process.exitValue() + " before answering, see " + log);
+                }
+                try {
+                    if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return (System.nanoTime() - started) / 1_000_000.0;
+                    }
+                } catch (IOException e) {
+                    // Not listening yet
+                }
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            return fail(variant + " did not answer within " + STARTUP_TIMEOUT + ", see " + log);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    private void run(List<String> command, String name) throws Exception {
+        Path log = directory.resolve(name + ".log");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        if (!process.waitFor(STARTUP_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+            fail(name + " did not finish within " + STARTUP_TIMEOUT + ", see " + log);
+        }
+        assertEquals(0, process.exitValue(), name + " failed, see " + log);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
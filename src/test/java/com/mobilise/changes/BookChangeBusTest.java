@@ -0,0 +1,95 @@
+package com.mobilise.changes;
+
+import com.mobilise.model.Book;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookChangeBusTest {
+    private static final String CLEAN_CODE = "9780132350884";
+    private static final String REFACTORING = "9780804429573";
+
+    private final BookChangeBus bus = new BookChangeBus();
+
+    @Test
+    void subscribe_ShouldCoalesceChangesToTheFollowedBooks() throws InterruptedException {
+        BookChangeSubscription subscription = bus.subscribe(Set.of(CLEAN_CODE), null).orElseThrow();
+
+        bus.publish(BookChange.Type.STOCK_CHANGED, book(CLEAN_CODE, 3));
+        bus.publish(BookChange.Type.CREATED, book(REFACTORING, 1));
+        bus.publish(BookChange.Type.STOCK_CHANGED, book(CLEAN_CODE, 2));
+
+        BookChangeSubscription.Batch batch = take(subscription);
+        assertNull(batch.resetAt());
+        assertEquals(1, batch.changes().size());
+        assertEquals(3, batch.changes().getFirst().sequence());
+        assertEquals(2, batch.changes().getFirst().copiesInStock());
+        assertTrue(take(subscription).changes().isEmpty());
+    }
+
+    @Test
+    void subscribe_WithLastSequence_ShouldReplayWhatWasMissed() throws InterruptedException {
+        bus.publish(BookChange.Type.CREATED, book(CLEAN_CODE, 3));
+        bus.publish(BookChange.Type.CREATED, book(REFACTORING, 1));
+        bus.publish(BookChange.Type.STOCK_CHANGED, book(CLEAN_CODE, 2));
+
+        BookChangeSubscription subscription = bus.subscribe(null, 1L).orElseThrow();
+        bus.publish(BookChange.Type.DELETED, book(REFACTORING, 1));
+
+        assertEquals(List.of(3L, 4L), take(subscription).changes().stream().map(BookChange::sequence).toList());
+        assertTrue(take(bus.subscribe(null, 4L).orElseThrow()).changes().isEmpty());
+    }
+
+    @Test
+    void subscribe_WhenLastSequenceIsNoLongerKept_ShouldReset() throws InterruptedException {
+        ReflectionTestUtils.setField(bus, "history", 2);
+        bus.publish(BookChange.Type.CREATED, book(CLEAN_CODE, 3));
+        bus.publish(BookChange.Type.CREATED, book(REFACTORING, 1));
+        bus.publish(BookChange.Type.STOCK_CHANGED, book(CLEAN_CODE, 2));
+
+        assertEquals(3L, take(bus.subscribe(null, 0L).orElseThrow()).resetAt());
+        assertEquals(3L, take(bus.subscribe(null, 7L).orElseThrow()).resetAt());
+        assertNull(take(bus.subscribe(null, 1L).orElseThrow()).resetAt());
+    }
+
+    @Test
+    void publish_WhenSubscriberFallsTooFarBehind_ShouldResetItWithoutBlocking() throws InterruptedException {
+        ReflectionTestUtils.setField(bus, "subscriberBuffer", 1);
+        BookChangeSubscription subscription = bus.subscribe(null, null).orElseThrow();
+
+        bus.publish(BookChange.Type.CREATED, book(CLEAN_CODE, 3));
+        bus.publish(BookChange.Type.CREATED, book(REFACTORING, 1));
+
+        BookChangeSubscription.Batch batch = take(subscription);
+        assertEquals(1L, batch.resetAt());
+        assertEquals(List.of(REFACTORING), batch.changes().stream().map(BookChange::isbn).toList());
+    }
+
+    @Test
+    void subscribe_WhenFull_ShouldRefuseUntilASubscriptionCloses() {
+        ReflectionTestUtils.setField(bus, "maxSubscribers", 1);
+        BookChangeSubscription subscription = bus.subscribe(Set.of(CLEAN_CODE), null).orElseThrow();
+
+        assertTrue(bus.subscribe(null, null).isEmpty());
+        subscription.close();
+        assertTrue(bus.subscribe(null, null).isPresent());
+    }
+
+    private static BookChangeSubscription.Batch take(BookChangeSubscription subscription)
+            throws InterruptedException {
+        return subscription.take(Duration.ZERO, Duration.ZERO);
+    }
+
+    private static Book book(String isbn, int copies) {
+        Book book = new Book();
+        book.setIsbn(isbn);
+        book.setTitle("Book " + isbn);
+        book.setCopiesInStock(copies);
+        return book;
+    }
+}
@@ -0,0 +1,116 @@
+package com.mobilise.changes;
+
+import com.mobilise.model.Book;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.repository.BorrowingRecordRepository;
+import com.mobilise.service.BookService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "library.changes.coalesce-window=PT0S")
+@ActiveProfiles("test")
+class BookChangeStreamTest {
+    private static final String CLEAN_CODE = "9780132350884";
+    private static final String REFACTORING = "9780804429573";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        bookRepository.deleteAll();
+        bookRepository.save(book(CLEAN_CODE));
+        bookRepository.save(book(REFACTORING));
+    }
+
+    @Test
+    void changes_ShouldPushStockChangesOfFollowedBooksAndResumeFromLastEventId() throws Exception {
+        HttpResponse<Stream<String>> response = subscribe("/api/v1/books/changes?isbn=0-13-235088-2", null);
+        assertEquals(200, response.statusCode());
+        Iterator<String> lines = response.body().iterator();
+
+        assertTrue(bookService.borrowBook(REFACTORING, null).isSuccess());
+        assertTrue(bookService.borrowBook(CLEAN_CODE, null).isSuccess());
+
+        Map<String, String> event = nextEvent(lines);
+        assertEquals("change", event.get("event"));
+        assertTrue(event.get("data").contains("\"type\":\"STOCK_CHANGED\""), event.get("data"));
+        assertTrue(event.get("data").contains("\"isbn\":\"" + CLEAN_CODE + "\""), event.get("data"));
+        assertTrue(event.get("data").contains("\"copiesInStock\":2"), event.get("data"));
+        response.body().close();
+
+        long lastEventId = Long.parseLong(event.get("id"));
+        assertTrue(bookService.returnBook(CLEAN_CODE).isSuccess());
+        HttpResponse<Stream<String>> resumed = subscribe("/api/v1/books/changes", lastEventId);
+        Map<String, String> missed = nextEvent(resumed.body().iterator());
+        assertEquals(Long.toString(lastEventId + 1), missed.get("id"));
+        assertTrue(missed.get("data").contains("\"copiesInStock\":3"), missed.get("data"));
+        resumed.body().close();
+    }
+
+    private HttpResponse<Stream<String>> subscribe(String path, Long lastEventId) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path));
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId.toString());
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofLines());
+    }
+
+    // Reads up to the next event with data, skipping comments
+    private static Map<String, String> nextEvent(Iterator<String> lines) throws Exception {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, String> event = new HashMap<>();
+            while (lines.hasNext()) {
+                String line = lines.next();
+                if (line.isEmpty() && event.containsKey("data")) {
+                    return event;
+                }
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    event.put(line.substring(0, colon), line.substring(colon + 1));
+                }
+            }
+            throw new IllegalStateException("The stream ended before an event");
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    private static Book book(String isbn) {
+        Book book = new Book();
+        book.setIsbn(isbn);
+        book.setTitle("Book " + isbn);
+        book.setAuthor("Author");
+        book.setPublicationYear(2020);
+        book.setCopiesInStock(3);
+        return book;
+    }
+}
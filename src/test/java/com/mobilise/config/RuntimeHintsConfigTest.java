@@ -0,0 +1,39 @@
+package com.mobilise.config;
+
+import com.mobilise.model.Book;
+import com.mobilise.model.BorrowingRecord;
+import db.migration.V7__store_isbn_as_bigint;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuntimeHintsConfigTest {
+
+    @Test
+    void registerHints_ShouldCoverTheEntitiesAndTheJavaMigration() {
+        RuntimeHints hints = new RuntimeHints();
+
+        new RuntimeHintsConfig.LibraryRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        for (Class<?> entity : new Class<?>[]{Book.class, BorrowingRecord.class}) {
+            assertTrue(RuntimeHintsPredicates.reflection().onType(entity)
+                    .withMemberCategories(MemberCategory.DECLARED_FIELDS, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)
+                    .test(hints), entity.getName());
+        }
+        assertTrue(RuntimeHintsPredicates.reflection().onType(V7__store_isbn_as_bigint.class)
+                .withMemberCategory(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS).test(hints));
+    }
+
+    @Test
+    void nativeJavaMigrations_ShouldLeaveTheJvmToClasspathScanning() {
+        FluentConfiguration configuration = new FluentConfiguration();
+
+        new RuntimeHintsConfig().nativeJavaMigrations().customize(configuration);
+
+        assertEquals(0, configuration.getJavaMigrations().length);
+    }
+}
@@ -0,0 +1,201 @@
+package com.mobilise.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.mobilise.model.Book;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.repository.BorrowingRecordRepository;
+import com.mobilise.repository.HoldRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class BinaryEncodingsTest {
+    private static final String CLEAN_CODE = "9780132350884";
+    private static final String CBOR = "application/cbor";
+    private static final String SMILE = "application/x-jackson-smile";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Autowired
+    private HoldRepository holdRepository;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        List<Book> books = new ArrayList<>();
+        books.add(book(CLEAN_CODE, "Clean Code"));
+        for (int i = 0; i < 99; i++) {
+            books.add(book(String.format("97800000%05d", i), "Generated Book " + i));
+        }
+        bookRepository.saveAll(books);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        holdRepository.deleteAll();
+        borrowingRecordRepository.deleteAll();
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void getBook_ShouldAnswerInTheAcceptedEncoding() throws Exception {
+        HttpResponse<byte[]> cbor = get("/" + CLEAN_CODE, CBOR, null);
+        assertEquals(200, cbor.statusCode());
+        assertEquals(CBOR, cbor.headers().firstValue("Content-Type").orElseThrow());
+        JsonNode book = new CBORMapper().readTree(cbor.body()).get("data");
+        assertEquals("Clean Code", book.get("title").asText());
+        assertEquals(2008, book.get("publicationYear").asInt());
+
+        HttpResponse<byte[]> smile = get("/" + CLEAN_CODE, SMILE, null);
+        assertEquals(SMILE, smile.headers().firstValue("Content-Type").orElseThrow());
+        assertEquals(book, new SmileMapper().readTree(smile.body()).get("data"));
+
+        HttpResponse<byte[]> json = get("/" + CLEAN_CODE, null, null);
+        assertEquals("application/json", json.headers().firstValue("Content-Type").orElseThrow());
+        assertEquals(book, new ObjectMapper().readTree(json.body()).get("data"));
+    }
+
+    @Test
+    void createBook_ShouldReadABinaryBody() throws Exception {
+        byte[] body = new CBORMapper().writeValueAsBytes(Map.of("isbn", "9780201633610",
+                "title", "Design Patterns", "author", "Gamma, Helm, Johnson, Vlissides",
+                "publicationYear", 1994, "copiesInStock", 1));
+        HttpRequest request = HttpRequest.newBuilder(uri(""))
+                .header("Content-Type", CBOR)
+                .header("Accept", CBOR)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        HttpResponse<byte[]> created = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(201, created.statusCode());
+        assertEquals("Design Patterns", new CBORMapper().readTree(created.body()).at("/data/title").asText());
+        assertEquals("Design Patterns", bookRepository.findById("9780201633610").orElseThrow().getTitle());
+    }
+
+    @Test
+    void largeResponses_ShouldBeCompressedWhenTheClientAcceptsGzip() throws Exception {
+        HttpResponse<byte[]> page = get("?page=0&size=100", null, "gzip");
+        assertEquals(200, page.statusCode());
+        assertEquals("gzip", page.headers().firstValue("Content-Encoding").orElseThrow());
+        JsonNode content = new ObjectMapper().readTree(new GZIPInputStream(new ByteArrayInputStream(page.body())))
+                .at("/data/content");
+        assertEquals(100, content.size());
+
+        HttpResponse<byte[]> cborPage = get("?page=0&size=100", CBOR, "gzip");
+        assertEquals("gzip", cborPage.headers().firstValue("Content-Encoding").orElseThrow());
+
+        // Below the threshold, or without Accept-Encoding, responses go out as they are
+        assertTrue(get("/" + CLEAN_CODE, null, "gzip").headers().firstValue("Content-Encoding").isEmpty());
+        assertTrue(get("?page=0&size=100", null, null).headers().firstValue("Content-Encoding").isEmpty());
+    }
+
+    @Test
+    void responses_ShouldVaryByEncodingAndTagEachEncodingApart() throws Exception {
+        HttpResponse<byte[]> json = get("/" + CLEAN_CODE, null, null);
+        HttpResponse<byte[]> cbor = get("/" + CLEAN_CODE, CBOR, null);
+        HttpResponse<byte[]> smile = get("/" + CLEAN_CODE, "application/json;q=0.5, " + SMILE, null);
+
+        assertEquals(List.of("Accept"), json.headers().allValues("Vary"));
+        assertEquals("\"0\"", json.headers().firstValue("ETag").orElseThrow());
+        assertEquals("\"0-cbor\"", cbor.headers().firstValue("ETag").orElseThrow());
+        assertEquals(SMILE, smile.headers().firstValue("Content-Type").orElseThrow());
+        assertEquals("\"0-smile\"", smile.headers().firstValue("ETag").orElseThrow());
+
+        // The JSON tag does not validate a CBOR copy, nor the other way round
+        assertEquals(200, get("/" + CLEAN_CODE, CBOR, null, "\"0\"").statusCode());
+        assertEquals(200, get("/" + CLEAN_CODE, null, null, "\"0-cbor\"").statusCode());
+        HttpResponse<byte[]> notModified = get("/" + CLEAN_CODE, CBOR, null, "\"0-cbor\"");
+        assertEquals(304, notModified.statusCode());
+        assertEquals("\"0-cbor\"", notModified.headers().firstValue("ETag").orElseThrow());
+
+        HttpResponse<byte[]> page = get("?page=0&size=100", null, "gzip");
+        HttpResponse<byte[]> cborPage = get("?page=0&size=100", CBOR, "gzip");
+        assertEquals("accept,accept-encoding", String.join(",", page.headers().allValues("Vary")).toLowerCase()
+                .replace(" ", ""));
+        assertNotEquals(page.headers().firstValue("ETag").orElseThrow(),
+                cborPage.headers().firstValue("ETag").orElseThrow());
+        assertEquals(304, get("?page=0&size=100", CBOR, "gzip", cborPage.headers().firstValue("ETag").orElseThrow())
+                .statusCode());
+    }
+
+    @Test
+    void updateBook_ShouldAcceptTheTagOfAnyEncoding() throws Exception {
+        byte[] body = new CBORMapper().writeValueAsBytes(Map.of("isbn", CLEAN_CODE, "title", "Clean Code",
+                "author", "Robert C. Martin", "publicationYear", 2008, "copiesInStock", 3));
+        HttpRequest request = HttpRequest.newBuilder(uri("/" + CLEAN_CODE))
+                .header("Content-Type", CBOR)
+                .header("Accept", CBOR)
+                .header("If-Match", "\"0-cbor\"")
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        HttpResponse<byte[]> updated = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(200, updated.statusCode());
+        assertEquals("\"1-cbor\"", updated.headers().firstValue("ETag").orElseThrow());
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept, String acceptEncoding) throws Exception {
+        return get(path, accept, acceptEncoding, null);
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept, String acceptEncoding, String ifNoneMatch)
+            throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri(path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + "/api/v1/books" + path);
+    }
+
+    private static Book book(String isbn, String title) {
+        Book book = new Book();
+        book.setIsbn(isbn);
+        book.setTitle(title);
+        book.setAuthor("Robert C. Martin");
+        book.setPublicationYear(2008);
+        book.setCopiesInStock(2);
+        return book;
+    }
+}
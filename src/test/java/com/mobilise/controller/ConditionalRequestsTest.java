@@ -0,0 +1,151 @@
+package com.mobilise.controller;
+
+import com.mobilise.model.Book;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.repository.BorrowingRecordRepository;
+import com.mobilise.repository.HoldRepository;
+import com.mobilise.service.BookService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class ConditionalRequestsTest {
+    private static final String CLEAN_CODE = "9780132350884";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Autowired
+    private HoldRepository holdRepository;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        Book book = new Book();
+        book.setIsbn(CLEAN_CODE);
+        book.setTitle("Clean Code");
+        book.setAuthor("Robert C. Martin");
+        book.setPublicationYear(2008);
+        book.setCopiesInStock(2);
+        bookRepository.save(book);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        holdRepository.deleteAll();
+        borrowingRecordRepository.deleteAll();
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void getBook_ShouldAnswerNotModifiedUntilTheBookChanges() throws Exception {
+        HttpResponse<String> first = get("/" + CLEAN_CODE, null);
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+        assertEquals(200, first.statusCode());
+        assertEquals("\"0\"", etag);
+
+        HttpResponse<String> unchanged = get("/" + CLEAN_CODE, etag);
+        assertEquals(304, unchanged.statusCode());
+        assertEquals(etag, unchanged.headers().firstValue("ETag").orElseThrow());
+        assertTrue(unchanged.body().isEmpty());
+
+        // Stock changes bump the version too
+        assertTrue(bookService.borrowBook(CLEAN_CODE, null).isSuccess());
+        HttpResponse<String> changed = get("/" + CLEAN_CODE, etag);
+        assertEquals(200, changed.statusCode());
+        assertEquals("\"1\"", changed.headers().firstValue("ETag").orElseThrow());
+        assertTrue(changed.body().contains("\"copiesInStock\":1"), changed.body());
+    }
+
+    @Test
+    void listingPages_ShouldCarryWeakETags() throws Exception {
+        HttpResponse<String> first = get("?page=0&size=10", null);
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+        assertEquals(200, first.statusCode());
+        assertTrue(etag.startsWith("W/\""), etag);
+
+        assertEquals(304, get("?page=0&size=10", etag).statusCode());
+
+        assertTrue(bookService.borrowBook(CLEAN_CODE, null).isSuccess());
+        HttpResponse<String> changed = get("?page=0&size=10", etag);
+        assertEquals(200, changed.statusCode());
+        assertNotEquals(etag, changed.headers().firstValue("ETag").orElseThrow());
+    }
+
+    @Test
+    void fieldPages_ShouldOnlyChangeETagWhenTheirFieldsChange() throws Exception {
+        HttpResponse<String> first = get("?fields=isbn,title", null);
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+        assertEquals(200, first.statusCode());
+        assertTrue(first.body().contains("\"content\":[{\"isbn\":\"" + CLEAN_CODE + "\",\"title\":\"Clean Code\"}]"),
+                first.body());
+
+        assertTrue(bookService.borrowBook(CLEAN_CODE, null).isSuccess());
+        assertEquals(304, get("?fields=isbn,title", etag).statusCode());
+        assertEquals(400, get("?fields=isbn,deleted", null).statusCode());
+    }
+
+    @Test
+    void updateBook_WithIfMatch_ShouldOnlyUpdateTheExpectedVersion() throws Exception {
+        assertTrue(bookService.borrowBook(CLEAN_CODE, null).isSuccess());
+
+        HttpResponse<String> stale = put("\"0\"", "Clean Code, 2nd printing");
+        assertEquals(412, stale.statusCode());
+        assertTrue(stale.body().contains("PRECONDITION_FAILED"), stale.body());
+        assertEquals("Clean Code", bookRepository.findById(CLEAN_CODE).orElseThrow().getTitle());
+
+        HttpResponse<String> current = put("\"1\"", "Clean Code, 2nd printing");
+        assertEquals(200, current.statusCode(), current.body());
+        assertEquals("\"2\"", current.headers().firstValue("ETag").orElseThrow());
+        assertEquals("Clean Code, 2nd printing", bookRepository.findById(CLEAN_CODE).orElseThrow().getTitle());
+
+        assertEquals(200, put("*", "Clean Code").statusCode());
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri(path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> put(String ifMatch, String title) throws Exception {
+        String body = "{\"isbn\":\"" + CLEAN_CODE + "\",\"title\":\"" + title + "\",\"author\":\"Robert C. Martin\"," +
+                "\"publicationYear\":2008,\"copiesInStock\":1}";
+        HttpRequest request = HttpRequest.newBuilder(uri("/" + CLEAN_CODE))
+                .header("Content-Type", "application/json")
+                .header("If-Match", ifMatch)
+                .PUT(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + "/api/v1/books" + path);
+    }
+}
@@ -0,0 +1,180 @@
+package com.mobilise.facet;
+
+import com.mobilise.dto.ApiResponse;
+import com.mobilise.dto.BookDTO;
+import com.mobilise.dto.BookFilterDTO;
+import com.mobilise.dto.FacetedBooksDTO;
+import com.mobilise.constants.ErrorCode;
+import com.mobilise.exception.FacetIndexUnavailableException;
+import com.mobilise.exception.GlobalExceptionHandler;
+import com.mobilise.exception.InvalidOperationException;
+import com.mobilise.model.Book;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.repository.BorrowingRecordRepository;
+import com.mobilise.service.BookService;
+import com.mobilise.shard.ShardRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CatalogueFacetIndexTest {
+    @Autowired
+    private CatalogueFacetIndex catalogueFacetIndex;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        bookRepository.deleteAll();
+        bookRepository.saveAll(List.of(
+                book("9780132350884", "Clean Code", "Robert C. Martin", 2008, 2, false),
+                book("9780134494166", "Clean Architecture", " robert c.  MARTIN", 2017, 0, false),
+                book("9781449331818", "Learning JavaScript Design Patterns", "Addy Osmani", 2012, 4, false),
+                book("9780306406157", "Essential JavaScript", "Addy Osmani", 2015, 1, false),
+                book("9780201633610", "Design Patterns", "Erich Gamma", 1994, 3, true)));
+        catalogueFacetIndex.rebuild();
+    }
+
+    @Test
+    void filter_WhileTheIndexIsBeingBuilt_ShouldBeAnswered503WithRetryAfter() {
+        CatalogueFacetIndex building = new CatalogueFacetIndex(bookRepository, ShardRouter.unsharded(),
+                transactionManager);
+        ReflectionTestUtils.setField(building, "enabled", true);
+
+        FacetIndexUnavailableException ex = assertThrows(FacetIndexUnavailableException.class,
+                () -> building.filter(new BookFilterDTO(), PageRequest.of(0, 10)));
+        assertEquals(ErrorCode.NOT_READY, ex.getErrorCode());
+        assertEquals(Duration.ofSeconds(5), ex.getRetryAfter());
+
+        ResponseEntity<Map<String, String>> response = new GlobalExceptionHandler()
+                .handleFacetIndexUnavailableException(ex);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("5", response.getHeaders().getFirst("Retry-After"));
+    }
+
+    @Test
+    void filter_WhenDisabled_ShouldBeAnswered501() {
+        CatalogueFacetIndex disabled = new CatalogueFacetIndex(bookRepository, ShardRouter.unsharded(),
+                transactionManager);
+
+        FacetIndexUnavailableException ex = assertThrows(FacetIndexUnavailableException.class,
+                () -> disabled.filter(new BookFilterDTO(), PageRequest.of(0, 10)));
+
+        assertEquals(ErrorCode.DISABLED, ex.getErrorCode());
+        assertEquals(HttpStatus.NOT_IMPLEMENTED,
+                new GlobalExceptionHandler().handleFacetIndexUnavailableException(ex).getStatusCode());
+    }
+
+    @Test
+    void filterBooks_ShouldCombineFiltersAndCountEachFacetUnderTheOthers() {
+        BookFilterDTO filter = new BookFilterDTO();
+        filter.setYearFrom(2013);
+        filter.setAuthors(List.of("addy osmani"));
+
+        FacetedBooksDTO result = filter(filter, PageRequest.of(0, 10));
+
+        assertEquals(List.of("9780306406157"), isbns(result));
+        assertEquals(1, result.getBooks().getTotalElements());
+        assertEquals(Map.of(2012, 1, 2015, 1), result.getPublicationYears());
+        assertEquals(Map.of("Addy Osmani", 1, "Robert C. Martin", 1), result.getAuthors());
+        assertEquals(1, result.getInStock());
+    }
+
+    @Test
+    void filterBooks_ShouldGroupAuthorSpellingsAndLeaveOutDeletedBooks() {
+        FacetedBooksDTO result = filter(new BookFilterDTO(), PageRequest.of(0, 10));
+
+        assertEquals(4, result.getBooks().getTotalElements());
+        assertEquals(Map.of("Robert C. Martin", 2, "Addy Osmani", 2), result.getAuthors());
+        assertEquals(Map.of(2008, 1, 2012, 1, 2015, 1, 2017, 1), result.getPublicationYears());
+        assertEquals(3, result.getInStock());
+    }
+
+    @Test
+    void filterBooks_ShouldPageByPublicationYear() {
+        FacetedBooksDTO result = filter(new BookFilterDTO(), PageRequest.of(1, 2));
+
+        assertEquals(List.of("9780306406157", "9780134494166"), isbns(result));
+        assertEquals(2, result.getBooks().getTotalPages());
+    }
+
+    @Test
+    void bookWrites_ShouldUpdateTheIndexWhenTheyCommit() {
+        BookFilterDTO inStockOnly = new BookFilterDTO();
+        inStockOnly.setInStockOnly(true);
+
+        assertTrue(bookService.borrowBook("9780306406157", null).isSuccess());
+        assertFalse(isbns(filter(inStockOnly, Pageable.unpaged())).contains("9780306406157"));
+
+        assertTrue(bookService.deleteBook("9780132350884").isSuccess());
+        BookDTO created = new BookDTO();
+        created.setIsbn("9780804429573");
+        created.setTitle("Refactoring");
+        created.setAuthor("Martin Fowler");
+        created.setPublicationYear(1999);
+        created.setCopiesInStock(1);
+        assertTrue(bookService.createBook(created).isSuccess());
+        assertTrue(bookService.returnBook("9780306406157").isSuccess());
+
+        assertEquals(List.of("9781449331818", "9780306406157", "9780804429573"),
+                isbns(filter(inStockOnly, Pageable.unpaged())));
+    }
+
+    @Test
+    void filter_WhenYearRangeIsReversed_ShouldFail() {
+        BookFilterDTO filter = new BookFilterDTO();
+        filter.setYearFrom(2020);
+        filter.setYearTo(2000);
+
+        assertThrows(InvalidOperationException.class, () -> catalogueFacetIndex.filter(filter, Pageable.unpaged()));
+        assertFalse(bookService.filterBooks(filter, Pageable.unpaged()).isSuccess());
+    }
+
+    private FacetedBooksDTO filter(BookFilterDTO filter, Pageable pageable) {
+        ApiResponse<FacetedBooksDTO> response = bookService.filterBooks(filter, pageable);
+        assertTrue(response.isSuccess(), response.getMessage());
+        return response.getData();
+    }
+
+    private static List<String> isbns(FacetedBooksDTO result) {
+        return result.getBooks().getContent().stream().map(Book::getIsbn).toList();
+    }
+
+    private static Book book(String isbn, String title, String author, int year, int copies, boolean deleted) {
+        Book book = new Book();
+        book.setIsbn(isbn);
+        book.setTitle(title);
+        book.setAuthor(author);
+        book.setPublicationYear(year);
+        book.setCopiesInStock(copies);
+        book.setDeleted(deleted);
+        return book;
+    }
+}
@@ -0,0 +1,150 @@
+package com.mobilise.hold;
+
+import com.mobilise.dto.ApiResponse;
+import com.mobilise.model.Book;
+import com.mobilise.model.Hold;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.repository.BorrowingRecordRepository;
+import com.mobilise.repository.HoldRepository;
+import com.mobilise.service.BookService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class HoldLongPollTest {
+    private static final String CLEAN_CODE = "9780132350884";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Autowired
+    private HoldRepository holdRepository;
+
+    @Autowired
+    private HoldWaiters holdWaiters;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        Book book = new Book();
+        book.setIsbn(CLEAN_CODE);
+        book.setTitle("Clean Code");
+        book.setAuthor("Robert C. Martin");
+        book.setPublicationYear(2008);
+        book.setCopiesInStock(1);
+        bookRepository.save(book);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        holdRepository.deleteAll();
+        borrowingRecordRepository.deleteAll();
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void holds_ShouldBeLentReturnedCopiesInOrderAndCompleteTheirPolls() throws Exception {
+        assertTrue(bookService.borrowBook(CLEAN_CODE, "reader-1").isSuccess());
+        Hold first = bookService.placeHold(CLEAN_CODE, "reader-2").getData();
+        Hold second = bookService.placeHold(CLEAN_CODE, "reader-3").getData();
+        assertEquals(Hold.Status.WAITING, first.getStatus());
+        assertEquals(1L, first.getPosition());
+        assertEquals(2L, second.getPosition());
+
+        CompletableFuture<HttpResponse<String>> poll = poll(first, "PT10S");
+        awaitParked(1);
+        assertFalse(poll.isDone());
+
+        assertTrue(bookService.returnBook(CLEAN_CODE).isSuccess());
+
+        HttpResponse<String> response = poll.get(10, TimeUnit.SECONDS);
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"status\":\"FULFILLED\""), response.body());
+        Hold fulfilled = holdRepository.findById(first.getId()).orElseThrow();
+        assertEquals("reader-2", borrowingRecordRepository.findById(fulfilled.getBorrowingRecordId())
+                .orElseThrow().getBorrowerId());
+        Book book = bookRepository.findById(CLEAN_CODE).orElseThrow();
+        assertEquals(0, book.getCopiesInStock());
+        assertEquals(1, book.getActiveLoans());
+
+        ApiResponse<Hold> next = bookService.getHold(CLEAN_CODE, second.getId());
+        assertEquals(Hold.Status.WAITING, next.getData().getStatus());
+        assertEquals(1L, next.getData().getPosition());
+    }
+
+    @Test
+    void poll_ShouldAnswerAWaitingHoldWhenTheWaitIsOverAndWhenCancelled() throws Exception {
+        assertTrue(bookService.borrowBook(CLEAN_CODE, null).isSuccess());
+        Hold hold = bookService.placeHold(CLEAN_CODE, null).getData();
+
+        HttpResponse<String> timedOut = poll(hold, "PT0.2S").get(10, TimeUnit.SECONDS);
+        assertEquals(200, timedOut.statusCode());
+        assertTrue(timedOut.body().contains("\"status\":\"WAITING\""), timedOut.body());
+        assertEquals(0, holdWaiters.parked());
+
+        CompletableFuture<HttpResponse<String>> poll = poll(hold, "PT10S");
+        awaitParked(1);
+        HttpResponse<String> cancel = client.send(HttpRequest.newBuilder(uri(hold)).DELETE().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, cancel.statusCode());
+        assertTrue(poll.get(10, TimeUnit.SECONDS).body().contains("\"status\":\"CANCELLED\""));
+
+        // The copy is not lent to the cancelled hold
+        assertTrue(bookService.returnBook(CLEAN_CODE).isSuccess());
+        assertEquals(1, bookRepository.findById(CLEAN_CODE).orElseThrow().getCopiesInStock());
+    }
+
+    @Test
+    void placeHold_WhenACopyIsFree_ShouldLendItRightAway() {
+        ApiResponse<Hold> response = bookService.placeHold(CLEAN_CODE, "reader-1");
+
+        assertTrue(response.isSuccess());
+        assertEquals(Hold.Status.FULFILLED, response.getData().getStatus());
+        assertNotNull(response.getData().getBorrowingRecordId());
+        assertNull(response.getData().getPosition());
+        assertEquals(0, bookRepository.findById(CLEAN_CODE).orElseThrow().getCopiesInStock());
+    }
+
+    private CompletableFuture<HttpResponse<String>> poll(Hold hold, String wait) {
+        URI uri = URI.create(uri(hold) + "?wait=" + wait);
+        return client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(Hold hold) {
+        return URI.create("http://localhost:" + port + "/api/v1/books/" + CLEAN_CODE + "/holds/" + hold.getId());
+    }
+
+    private void awaitParked(int polls) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (holdWaiters.parked() < polls && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(polls, holdWaiters.parked());
+    }
+}
@@ -0,0 +1,160 @@
+package com.mobilise.idempotency;
+
+import com.mobilise.model.Book;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.repository.BorrowingRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class IdempotentRequestsTest {
+    private static final String CLEAN_CODE = "9780132350884";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private IdempotentRequests idempotentRequests;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM idempotency_keys");
+        ((Map<?, ?>) ReflectionTestUtils.getField(idempotentRequests, "recent")).clear();
+        borrowingRecordRepository.deleteAll();
+        bookRepository.deleteAll();
+        Book book = new Book();
+        book.setIsbn(CLEAN_CODE);
+        book.setTitle("Clean Code");
+        book.setAuthor("Robert C. Martin");
+        book.setPublicationYear(2008);
+        book.setCopiesInStock(5);
+        bookRepository.save(book);
+    }
+
+    @Test
+    void retries_ShouldReplayTheFirstResponseFromMemoryAndAfterARestart() throws Exception {
+        HttpResponse<String> first = post("/borrow?borrowerId=reader-1", "borrow-1");
+        HttpResponse<String> retry = post("/borrow?borrowerId=reader-1", "borrow-1");
+        ((Map<?, ?>) ReflectionTestUtils.getField(idempotentRequests, "recent")).clear();
+        HttpResponse<String> afterRestart = post("/borrow?borrowerId=reader-1", "borrow-1");
+
+        assertEquals(200, first.statusCode());
+        assertTrue(first.headers().firstValue(IdempotentRequests.REPLAYED_HEADER).isEmpty());
+        for (HttpResponse<String> replayed : List.of(retry, afterRestart)) {
+            assertEquals(200, replayed.statusCode());
+            assertEquals("true", replayed.headers().firstValue(IdempotentRequests.REPLAYED_HEADER).orElseThrow());
+            assertEquals(recordId(first.body()), recordId(replayed.body()));
+        }
+        assertEquals(1, borrowingRecordRepository.count());
+        assertEquals(4, bookRepository.findById(CLEAN_CODE).orElseThrow().getCopiesInStock());
+
+        // A new key is a new request
+        assertEquals(200, post("/borrow?borrowerId=reader-1", "borrow-2").statusCode());
+        assertEquals(2, borrowingRecordRepository.count());
+    }
+
+    @Test
+    void concurrentDuplicates_ShouldRunOnce() throws Exception {
+        List<CompletableFuture<HttpResponse<String>>> duplicates = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            duplicates.add(client.sendAsync(request("/borrow", "borrow-once"), HttpResponse.BodyHandlers.ofString()));
+        }
+        String id = null;
+        for (CompletableFuture<HttpResponse<String>> duplicate : duplicates) {
+            HttpResponse<String> response = duplicate.get(10, TimeUnit.SECONDS);
+            assertEquals(200, response.statusCode(), response.body());
+            id = id == null ? recordId(response.body()) : id;
+            assertEquals(id, recordId(response.body()));
+        }
+        assertEquals(1, borrowingRecordRepository.count());
+        assertEquals(4, bookRepository.findById(CLEAN_CODE).orElseThrow().getCopiesInStock());
+    }
+
+    @Test
+    void key_ShouldBeRejectedForAnotherRequestAndExpire() throws Exception {
+        assertEquals(200, post("/borrow", "key-1").statusCode());
+
+        HttpResponse<String> reused = post("/return", "key-1");
+        assertEquals(422, reused.statusCode());
+        assertEquals(1, bookRepository.findById(CLEAN_CODE).orElseThrow().getActiveLoans());
+
+        jdbcTemplate.update("UPDATE idempotency_keys SET created_at = DATEADD('DAY', -2, created_at)");
+        ((Map<?, ?>) ReflectionTestUtils.getField(idempotentRequests, "recent")).clear();
+        idempotentRequests.purgeExpired();
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM idempotency_keys", Integer.class));
+
+        assertEquals(200, post("/return", "key-1").statusCode());
+        assertEquals(0, bookRepository.findById(CLEAN_CODE).orElseThrow().getActiveLoans());
+    }
+
+    @Test
+    void key_ShouldBeRejectedForAnotherBody() throws Exception {
+        String cleanArchitecture = "{\"isbn\":\"9780134494166\",\"title\":\"Clean Architecture\"," +
+                "\"author\":\"Robert C. Martin\",\"publicationYear\":2017,\"copiesInStock\":1}";
+        assertEquals(201, create(cleanArchitecture, "create-1").statusCode());
+
+        HttpResponse<String> retry = create(cleanArchitecture, "create-1");
+        assertEquals(201, retry.statusCode(), retry.body());
+        assertEquals("true", retry.headers().firstValue(IdempotentRequests.REPLAYED_HEADER).orElseThrow());
+
+        HttpResponse<String> reused = create(cleanArchitecture.replace("9780134494166", "9780201633610")
+                .replace("Clean Architecture", "Design Patterns"), "create-1");
+        assertEquals(422, reused.statusCode(), reused.body());
+        assertFalse(bookRepository.existsById("9780201633610"));
+    }
+
+    private HttpResponse<String> create(String body, String key) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/books"))
+                .header(IdempotentRequests.HEADER, key)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String key) throws Exception {
+        return client.send(request(path, key), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest request(String path, String key) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/books/" + CLEAN_CODE + path))
+                .header(IdempotentRequests.HEADER, key)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+    }
+
+    private static String recordId(String body) {
+        int start = body.indexOf("\"id\":") + 5;
+        return body.substring(start, body.indexOf(',', start));
+    }
+}
@@ -0,0 +1,154 @@
+package com.mobilise.journal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BorrowingJournalTest {
+    @TempDir
+    Path directory;
+
+    private BorrowingJournal journal;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void append_ShouldTrackOpenLoansPerIsbn() throws IOException {
+        journal = openJournal(DataSize.ofKilobytes(64));
+
+        journal.append(JournalEvent.Type.BORROW, "9780132350884", 1);
+        journal.append(JournalEvent.Type.BORROW, "9780132350884", 2);
+        journal.append(JournalEvent.Type.BORROW, "9780134494166", 3);
+        journal.append(JournalEvent.Type.RETURN, "9780134494166", 3);
+
+        assertEquals(Map.of("9780132350884", 2), journal.openLoans());
+        assertEquals(4, journal.lastSequence());
+    }
+
+    @Test
+    void append_WhenReturnIsJournaledBeforeItsBorrow_ShouldBalanceOut() throws IOException {
+        journal = openJournal(DataSize.ofKilobytes(64));
+
+        journal.append(JournalEvent.Type.RETURN, "9780132350884", 1);
+        journal.append(JournalEvent.Type.BORROW, "9780132350884", 1);
+
+        assertTrue(journal.openLoans().isEmpty());
+    }
+
+    @Test
+    void open_ShouldRebuildStateAcrossRolledSegments() throws IOException {
+        // Room for four records per segment, so ten events span three segments
+        journal = openJournal(DataSize.ofBytes(BorrowingJournal.RECORD_SIZE * 4L));
+        for (int i = 0; i < 10; i++) {
+            journal.append(i % 3 == 2 ? JournalEvent.Type.RETURN : JournalEvent.Type.BORROW, "9780132350884", i);
+        }
+        Map<String, Integer> expected = journal.openLoans();
+        journal.flush();
+        assertEquals(3, segmentFiles().size());
+
+        // Reopen without a clean close, as after a crash
+        journal = openJournal(DataSize.ofBytes(BorrowingJournal.RECORD_SIZE * 4L));
+
+        assertEquals(expected, journal.openLoans());
+        assertEquals(10, journal.lastSequence());
+        assertEquals(11, journal.append(JournalEvent.Type.BORROW, "9780132350884", 10));
+    }
+
+    @Test
+    void checkpoint_ShouldDropObsoleteSegmentsAndKeepState() throws IOException {
+        journal = openJournal(DataSize.ofBytes(BorrowingJournal.RECORD_SIZE * 4L));
+        for (int i = 0; i < 9; i++) {
+            journal.append(JournalEvent.Type.BORROW, "978013235088" + (i % 3), i);
+        }
+        journal.checkpoint();
+        assertEquals(1, segmentFiles().size());
+        journal.append(JournalEvent.Type.RETURN, "9780132350880", 0);
+        journal.close();
+
+        journal = openJournal(DataSize.ofBytes(BorrowingJournal.RECORD_SIZE * 4L));
+
+        assertEquals(Map.of("9780132350880", 2, "9780132350881", 3, "9780132350882", 3), journal.openLoans());
+        assertEquals(10, journal.lastSequence());
+    }
+
+    @Test
+    void open_ShouldIgnoreTornRecordAtTheTail() throws IOException {
+        journal = openJournal(DataSize.ofKilobytes(64));
+        journal.append(JournalEvent.Type.BORROW, "9780132350884", 1);
+        journal.append(JournalEvent.Type.BORROW, "9780132350884", 2);
+        journal.flush();
+
+        try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), BorrowingJournal.RECORD_SIZE + 20L);
+        }
+        journal = openJournal(DataSize.ofKilobytes(64));
+
+        assertEquals(Map.of("9780132350884", 1), journal.openLoans());
+        assertEquals(2, journal.append(JournalEvent.Type.RETURN, "9780132350884", 1));
+        assertTrue(journal.openLoans().isEmpty());
+    }
+
+    @Test
+    void replay_ShouldReturnEventsAfterTheGivenSequence() throws IOException {
+        journal = openJournal(DataSize.ofKilobytes(64));
+        journal.append(JournalEvent.Type.BORROW, "9780132350884", 7);
+        journal.append(JournalEvent.Type.RETURN, "9780132350884", 7);
+
+        List<JournalEvent> events = new ArrayList<>();
+        assertEquals(1, journal.replay(1, events::add));
+
+        JournalEvent event = events.get(0);
+        assertEquals(2, event.sequence());
+        assertEquals(JournalEvent.Type.RETURN, event.type());
+        assertEquals("9780132350884", event.isbn());
+        assertEquals(7, event.recordId());
+    }
+
+    @Test
+    void seed_ShouldStartFromExistingLoans() throws IOException {
+        journal = openJournal(DataSize.ofKilobytes(64));
+        journal.seed(Map.of("9780132350884", 2));
+        journal.close();
+
+        journal = openJournal(DataSize.ofKilobytes(64));
+
+        assertEquals(Map.of("9780132350884", 2), journal.openLoans());
+        assertThrows(IllegalStateException.class, () -> journal.seed(Map.of()));
+    }
+
+    private BorrowingJournal openJournal(DataSize segmentSize) throws IOException {
+        BorrowingJournal opened = new BorrowingJournal();
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "directory", directory);
+        ReflectionTestUtils.setField(opened, "segmentSize", segmentSize);
+        ReflectionTestUtils.setField(opened, "fsyncEvery", 1);
+        opened.open();
+        return opened;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("segment-")).sorted().toList();
+        }
+    }
+}
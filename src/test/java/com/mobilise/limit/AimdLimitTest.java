@@ -0,0 +1,72 @@
+package com.mobilise.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AimdLimitTest {
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(1).toNanos();
+
+    @Test
+    void tryAcquire_ShouldRefuseRequestsBeyondTheLimit() {
+        AimdLimit limit = new AimdLimit(2, 1, 10, Duration.ofMillis(100));
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+        assertEquals(2, limit.getInFlight());
+
+        limit.release(FAST, false);
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    void release_ShouldGrowTheLimitWhileItIsUsedAndFast() {
+        AimdLimit limit = new AimdLimit(4, 1, 5, Duration.ofMillis(100));
+
+        // One of four in flight leaves the limit where it is
+        assertTrue(limit.tryAcquire());
+        limit.release(FAST, false);
+        assertEquals(4, limit.getLimit());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+        limit.release(FAST, false);
+        assertEquals(5, limit.getLimit());
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+        limit.release(FAST, false);
+        assertEquals(5, limit.getLimit(), "grew past the maximum");
+    }
+
+    @Test
+    void release_ShouldBackOffOnSlowAndFailedRequestsDownToTheMinimum() {
+        AimdLimit limit = new AimdLimit(20, 3, 50, Duration.ofMillis(100));
+
+        assertTrue(limit.tryAcquire());
+        limit.release(SLOW, false);
+        assertEquals(18, limit.getLimit());
+
+        assertTrue(limit.tryAcquire());
+        limit.release(FAST, true);
+        assertEquals(16, limit.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.release(SLOW, false);
+        }
+        assertEquals(3, limit.getLimit());
+        assertEquals(0, limit.getInFlight());
+    }
+
+    @Test
+    void constructor_ShouldRejectInvalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new AimdLimit(1, 0, 10, Duration.ofMillis(100)));
+        assertThrows(IllegalArgumentException.class, () -> new AimdLimit(1, 5, 4, Duration.ofMillis(100)));
+    }
+}
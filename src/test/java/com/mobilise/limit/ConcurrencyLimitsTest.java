@@ -0,0 +1,172 @@
+package com.mobilise.limit;
+
+import com.mobilise.dto.ApiResponse;
+import com.mobilise.model.Book;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.repository.BorrowingRecordRepository;
+import com.mobilise.repository.HoldRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "library.limits.reports.initial-limit=1",
+        "library.limits.reports.max-limit=1",
+        "library.limits.retry-after=PT5S"
+})
+@ActiveProfiles("test")
+class ConcurrencyLimitsTest {
+    private static final String CLEAN_CODE = "9780132350884";
+    private static final String REPORT = "/borrowing-report?startDate=2024-01-01T00:00:00&endDate=2024-12-31T00:00:00";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ConcurrencyLimits concurrencyLimits;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @SpyBean
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Autowired
+    private HoldRepository holdRepository;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        Book book = new Book();
+        book.setIsbn(CLEAN_CODE);
+        book.setTitle("Clean Code");
+        book.setAuthor("Robert C. Martin");
+        book.setPublicationYear(2008);
+        book.setCopiesInStock(2);
+        bookRepository.save(book);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        holdRepository.deleteAll();
+        borrowingRecordRepository.deleteAll();
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void requestsBeyondTheLimit_ShouldBeRejectedWithoutStarvingOtherBulkheads() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity<ApiResponse<Void>>> running = CompletableFuture.supplyAsync(() ->
+                concurrencyLimits.execute(Bulkhead.REPORTS, () -> {
+                    started.countDown();
+                    await(finish);
+                    return ResponseEntity.ok(ApiResponse.success(null, "done"));
+                }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        double rejectedBefore = rejected();
+
+        try {
+            HttpResponse<String> shed = send(HttpRequest.newBuilder(uri(REPORT)));
+            assertEquals(503, shed.statusCode());
+            assertEquals("5", shed.headers().firstValue("Retry-After").orElseThrow());
+            assertTrue(shed.body().contains("OVERLOADED"), shed.body());
+            assertEquals(rejectedBefore + 1, rejected());
+            assertEquals(1.0, meterRegistry.get("library.limits.in-flight").tag("bulkhead", "reports").gauge()
+                    .value());
+
+            // Checkouts have their own limit, and reads none
+            HttpResponse<String> borrowed = send(HttpRequest.newBuilder(uri("/" + CLEAN_CODE + "/borrow"))
+                    .POST(HttpRequest.BodyPublishers.noBody()));
+            assertEquals(200, borrowed.statusCode(), borrowed.body());
+            assertEquals(200, send(HttpRequest.newBuilder(uri("/" + CLEAN_CODE))).statusCode());
+        } finally {
+            finish.countDown();
+        }
+        assertEquals(200, running.get(10, TimeUnit.SECONDS).getStatusCode().value());
+
+        assertEquals(200, send(HttpRequest.newBuilder(uri(REPORT))).statusCode());
+    }
+
+    @Test
+    void serviceErrors_ShouldShrinkTheLimitThoughTheyAreAnswered400() throws Exception {
+        doThrow(new DataAccessResourceFailureException("Database is down"))
+                .when(borrowingRecordRepository).save(any());
+        int limitBefore = concurrencyLimits.limit(Bulkhead.CHECKOUT).getLimit();
+
+        HttpResponse<String> failed = send(HttpRequest.newBuilder(uri("/" + CLEAN_CODE + "/borrow"))
+                .POST(HttpRequest.BodyPublishers.noBody()));
+
+        assertEquals(400, failed.statusCode());
+        assertTrue(failed.body().contains("BORROW_ERROR"), failed.body());
+        assertTrue(concurrencyLimits.limit(Bulkhead.CHECKOUT).getLimit() < limitBefore);
+    }
+
+    @Test
+    void clientErrors_ShouldNotShrinkTheLimit() throws Exception {
+        int limitBefore = concurrencyLimits.limit(Bulkhead.CHECKOUT).getLimit();
+
+        HttpResponse<String> missing = send(HttpRequest.newBuilder(uri("/9780201633610/borrow"))
+                .POST(HttpRequest.BodyPublishers.noBody()));
+
+        assertEquals(400, missing.statusCode());
+        assertTrue(missing.body().contains("NOT_FOUND"), missing.body());
+        assertTrue(concurrencyLimits.limit(Bulkhead.CHECKOUT).getLimit() >= limitBefore);
+    }
+
+    @Test
+    void limits_ShouldBePublishedAsMetrics() throws Exception {
+        HttpResponse<String> metric = send(HttpRequest.newBuilder(URI.create("http://localhost:" + port +
+                "/actuator/metrics/library.limits.limit?tag=bulkhead:checkout")));
+
+        assertEquals(200, metric.statusCode(), metric.body());
+        int limit = concurrencyLimits.limit(Bulkhead.CHECKOUT).getLimit();
+        assertTrue(metric.body().contains("\"value\":" + limit + ".0"), metric.body());
+    }
+
+    private double rejected() {
+        return meterRegistry.get("library.limits.rejected").tag("bulkhead", "reports").counter().count();
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + "/api/v1/books" + path);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.mobilise.loadtest;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end load test of {@code BookController} against an embedded H2 database.
+ * <p>
+ * Excluded from the default build; run with {@code mvn test -Pperf}. Every knob can be overridden with a
+ * system property, e.g. {@code -Dloadtest.duration=PT2M -Dloadtest.rateScale=4}. A warm-up pass runs the same
+ * mix first and is discarded; the measured pass starts with a re-import of the whole catalogue. The report is
+ * written to {@code target/loadtest/report.txt}.
+ * <p>
+ * {@link #concurrentConnections()} holds {@code loadtest.connections} clients open against the lookup endpoint
+ * to compare platform and virtual thread request handling; run it once with
+ * {@code -Dspring.threads.virtual.enabled=true} and once without and diff the two connection reports.
+ */
+@Tag("loadtest")
+@ActiveProfiles("loadtest")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class BookControllerLoadTest {
+    private static final String[] TITLE_WORDS = {
+            "Clean", "Code", "Patterns", "Distributed", "Systems", "Java", "Concurrency", "Practice",
+            "Design", "Refactoring", "Domain", "Architecture", "Data", "Intensive", "Applications", "Spring"
+    };
+    private static final String[] AUTHORS = {
+            "Robert Martin", "Martin Fowler", "Brian Goetz", "Joshua Bloch", "Eric Evans", "Martin Kleppmann",
+            "Kent Beck", "Michael Feathers", "Sam Newman", "Vaughn Vernon"
+    };
+
+    private final Duration warmup = Duration.parse(System.getProperty("loadtest.warmup", "PT10S"));
+    private final Duration duration = Duration.parse(System.getProperty("loadtest.duration", "PT30S"));
+    private final double rateScale = Double.parseDouble(System.getProperty("loadtest.rateScale", "1"));
+    private final int catalogueSize = Integer.getInteger("loadtest.catalogueSize", 20_000);
+    private final int hotIsbns = Integer.getInteger("loadtest.hotIsbns", 5);
+    private final Path reportFile = Path.of(System.getProperty("loadtest.report", "target/loadtest/report.txt"));
+    private final int connections = Integer.getInteger("loadtest.connections", 5_000);
+
+    @LocalServerPort
+    private int port;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Test
+    void mixedWorkload() throws Exception {
+        String baseUrl = "http://localhost:" + port + "/api/v1/books";
+        List<String> isbns = generateIsbns(catalogueSize);
+        List<String> hot = isbns.subList(0, hotIsbns);
+
+        String reportRange = "?startDate=" + LocalDateTime.now().minusDays(1).truncatedTo(ChronoUnit.SECONDS)
+                + "&endDate=" + LocalDateTime.now().plusDays(1).truncatedTo(ChronoUnit.SECONDS);
+
+        List<LoadGenerator.Workload> workloads = List.of(
+                new LoadGenerator.Workload("GET /books", 20 * rateScale,
+                        () -> get(baseUrl + "?size=20&page=" + random(catalogueSize / 20))),
+                new LoadGenerator.Workload("GET /books/{isbn}", 40 * rateScale,
+                        () -> get(baseUrl + "/" + pick(isbns))),
+                new LoadGenerator.Workload("GET /books/search", 10 * rateScale,
+                        () -> get(baseUrl + "/search?size=20&query=" + pick(TITLE_WORDS))),
+                new LoadGenerator.Workload("POST /books/{isbn}/borrow", 8 * rateScale,
+                        () -> post(baseUrl + "/" + pick(hot) + "/borrow")),
+                new LoadGenerator.Workload("POST /books/{isbn}/return", 8 * rateScale,
+                        () -> post(baseUrl + "/" + pick(hot) + "/return")),
+                new LoadGenerator.Workload("GET /books/borrowing-report", 0.5 * rateScale,
+                        () -> get(baseUrl + "/borrowing-report" + reportRange)));
+
+        try (LoadGenerator warmupGenerator = new LoadGenerator()) {
+            HttpResponse<String> upload = warmupGenerator.execute("POST /books/bulk-upload", bulkUpload(baseUrl, isbns));
+            assertEquals(200, upload.statusCode(), upload.body());
+            warmupGenerator.run(warmup, workloads);
+        }
+
+        try (LoadGenerator generator = new LoadGenerator()) {
+            HttpResponse<String> upload = generator.execute("POST /books/bulk-upload", bulkUpload(baseUrl, isbns));
+            assertEquals(200, upload.statusCode(), upload.body());
+
+            long start = System.nanoTime();
+            generator.run(duration, workloads);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            Map<String, String> settings = new LinkedHashMap<>();
+            settings.put("warmup", warmup.toString());
+            settings.put("duration", duration.toString());
+            settings.put("rateScale", String.valueOf(rateScale));
+            settings.put("catalogueSize", String.valueOf(catalogueSize));
+            settings.put("hotIsbns", String.valueOf(hotIsbns));
+            settings.put("java", System.getProperty("java.version"));
+            settings.put("virtualThreads", String.valueOf(virtualThreads));
+
+            String report = LoadReport.render(settings, generator.getStats(), elapsed);
+            LoadReport.write(reportFile, report);
+            System.out.println(report);
+
+            generator.getStats().forEach((endpoint, stats) ->
+                    assertTrue(stats.latencyMicros.getTotalCount() > 0, "No samples recorded for " + endpoint));
+        }
+    }
+
+    @Test
+    void concurrentConnections() throws Exception {
+        String baseUrl = "http://localhost:" + port + "/api/v1/books";
+        List<String> isbns = generateIsbns(Math.min(catalogueSize, 1_000));
+
+        try (LoadGenerator generator = new LoadGenerator()) {
+            HttpResponse<String> upload = generator.execute("POST /books/bulk-upload", bulkUpload(baseUrl, isbns));
+            assertEquals(200, upload.statusCode(), upload.body());
+        }
+
+        try (LoadGenerator warmupGenerator = new LoadGenerator()) {
+            warmupGenerator.runClosed("GET /books/{isbn}", warmup, Math.min(connections, 100),
+                    () -> get(baseUrl + "/" + pick(isbns)));
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        AtomicLong peakHeap = new AtomicLong();
+        Thread heapSampler = Thread.ofPlatform().daemon().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+            }
+        });
+
+        try (LoadGenerator generator = new LoadGenerator()) {
+            long start = System.nanoTime();
+            generator.runClosed("GET /books/{isbn}", duration, connections, () -> get(baseUrl + "/" + pick(isbns)));
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            heapSampler.interrupt();
+
+            Map<String, String> settings = new LinkedHashMap<>();
+            settings.put("duration", duration.toString());
+            settings.put("connections", String.valueOf(connections));
+            settings.put("java", System.getProperty("java.version"));
+            settings.put("virtualThreads", String.valueOf(virtualThreads));
+            settings.put("peakPlatformThreads", String.valueOf(threads.getPeakThreadCount()));
+            settings.put("peakHeapMb", String.valueOf(peakHeap.get() / (1024 * 1024)));
+
+            String report = LoadReport.render(settings, generator.getStats(), elapsed);
+            LoadReport.write(reportFile.resolveSibling(
+                    "connections-" + (virtualThreads ? "virtual" : "platform") + ".txt"), report);
+            System.out.println(report);
+        }
+    }
+
+    private HttpRequest bulkUpload(String baseUrl, List<String> isbns) {
+        StringBuilder csv = new StringBuilder("ISBN,title,author,publication_year,copies\n");
+        for (String isbn : isbns) {
+            csv.append(isbn).append(',')
+                    .append(pick(TITLE_WORDS)).append(' ').append(pick(TITLE_WORDS)).append(',')
+                    .append(pick(AUTHORS)).append(',')
+                    .append(1950 + random(75)).append(',')
+                    .append(1 + random(10)).append('\n');
+        }
+        String boundary = "loadtest" + System.nanoTime();
+        String body = "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"books.csv\"\r\n"
+                + "Content-Type: text/csv\r\n\r\n"
+                + csv
+                + "\r\n--" + boundary + "--\r\n";
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/bulk-upload"))
+                .timeout(Duration.ofMinutes(5))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+    }
+
+    /**
+     * Generates distinct, checksum-valid ISBN-13s in the 979 prefix range.
+     */
+    static List<String> generateIsbns(int count) {
+        List<String> isbns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String digits = String.format("979%09d", 100_000_000 + i);
+            int sum = 0;
+            for (int d = 0; d < 12; d++) {
+                sum += (digits.charAt(d) - '0') * (d % 2 == 0 ? 1 : 3);
+            }
+            isbns.add(digits + (10 - sum % 10) % 10);
+        }
+        return isbns;
+    }
+
+    private static HttpRequest get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private static HttpRequest post(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+    }
+
+    private static int random(int bound) {
+        return ThreadLocalRandom.current().nextInt(Math.max(bound, 1));
+    }
+
+    private static <T> T pick(List<T> values) {
+        return values.get(random(values.size()));
+    }
+
+    private static <T> T pick(T[] values) {
+        return values[random(values.length)];
+    }
+}
@@ -0,0 +1,163 @@
+package com.mobilise.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Open-model HTTP load generator.
+ * <p>
+ * Every workload fires requests on a fixed arrival schedule regardless of how quickly earlier requests
+ * complete, and latency is measured from the intended send time. A slow server therefore shows up as
+ * queueing in the percentiles instead of silently lowering the offered load (coordinated omission).
+ */
+class LoadGenerator implements AutoCloseable {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final HttpClient client;
+    private final Map<String, EndpointStats> stats = new ConcurrentSkipListMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    LoadGenerator() {
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    record Workload(String endpoint, double ratePerSecond, Supplier<HttpRequest> requests) {
+    }
+
+    static class EndpointStats {
+        final Histogram latencyMicros = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        final LongAdder ok = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder failed = new LongAdder();
+    }
+
+    /**
+     * Sends a single request synchronously and records it under the given endpoint.
+     */
+    HttpResponse<String> execute(String endpoint, HttpRequest request) throws Exception {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            record(endpoint, start, response.statusCode(), null);
+            return response;
+        } catch (Exception e) {
+            record(endpoint, start, 0, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs all workloads concurrently for the given duration and waits for outstanding responses.
+     */
+    void run(Duration duration, List<Workload> workloads) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(workloads.size());
+        List<Thread> schedulers = new ArrayList<>();
+        long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long endNanos = startNanos + duration.toNanos();
+
+        for (Workload workload : workloads) {
+            stats.computeIfAbsent(workload.endpoint(), key -> new EndpointStats());
+            Thread scheduler = new Thread(() -> {
+                try {
+                    drive(workload, startNanos, endNanos);
+                } finally {
+                    done.countDown();
+                }
+            }, "load-" + workload.endpoint());
+            scheduler.setDaemon(true);
+            schedulers.add(scheduler);
+        }
+        schedulers.forEach(Thread::start);
+        done.await();
+        while (inFlight.get() > 0) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    /**
+     * Closed-model run: keeps the given number of clients, each with its own connection, sending back to back
+     * until the duration elapses. Used to hold a fixed number of concurrent connections against the server.
+     */
+    void runClosed(String endpoint, Duration duration, int concurrency, Supplier<HttpRequest> requests) {
+        long endNanos = System.nanoTime() + duration.toNanos();
+        stats.computeIfAbsent(endpoint, key -> new EndpointStats());
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                clients.submit(() -> {
+                    while (System.nanoTime() < endNanos) {
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(requests.get(), HttpResponse.BodyHandlers.discarding());
+                            record(endpoint, start, response.statusCode(), null);
+                        } catch (IOException e) {
+                            record(endpoint, start, 0, e);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    private void drive(Workload workload, long startNanos, long endNanos) {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / workload.ratePerSecond());
+        for (long intended = startNanos; intended < endNanos; intended += intervalNanos) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long intendedStart = intended;
+            inFlight.incrementAndGet();
+            client.sendAsync(workload.requests().get(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        record(workload.endpoint(), intendedStart, response == null ? 0 : response.statusCode(), error);
+                        inFlight.decrementAndGet();
+                    });
+        }
+    }
+
+    private void record(String endpoint, long startNanos, int status, Throwable error) {
+        EndpointStats endpointStats = stats.computeIfAbsent(endpoint, key -> new EndpointStats());
+        long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos), HIGHEST_TRACKABLE_MICROS);
+        endpointStats.latencyMicros.recordValue(micros);
+        if (error != null || status >= 500) {
+            endpointStats.failed.increment();
+        } else if (status >= 400) {
+            endpointStats.rejected.increment();
+        } else {
+            endpointStats.ok.increment();
+        }
+    }
+
+    Map<String, EndpointStats> getStats() {
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+}
@@ -0,0 +1,55 @@
+package com.mobilise.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Plain-text load test report. Rows are sorted by endpoint and contain no timestamps so that reports
+ * from two builds can be compared with an ordinary diff.
+ */
+final class LoadReport {
+    private static final String ROW_FORMAT = "%-40s %8s %8s %6s %6s %9s %9s %9s %9s %9s%n";
+
+    private LoadReport() {
+    }
+
+    static String render(Map<String, String> settings, Map<String, LoadGenerator.EndpointStats> stats,
+                         Duration elapsed) {
+        StringBuilder report = new StringBuilder("# Book Management System load test\n");
+        settings.forEach((key, value) -> report.append("# ").append(key).append('=').append(value).append('\n'));
+        report.append(String.format(Locale.ROOT, ROW_FORMAT,
+                "endpoint", "count", "ok", "4xx", "errors", "req/s", "p50_ms", "p99_ms", "p999_ms", "max_ms"));
+
+        double seconds = Math.max(elapsed.toMillis() / 1000.0, 0.001);
+        stats.forEach((endpoint, endpointStats) -> {
+            Histogram histogram = endpointStats.latencyMicros;
+            report.append(String.format(Locale.ROOT, ROW_FORMAT,
+                    endpoint,
+                    histogram.getTotalCount(),
+                    endpointStats.ok.sum(),
+                    endpointStats.rejected.sum(),
+                    endpointStats.failed.sum(),
+                    String.format(Locale.ROOT, "%.1f", histogram.getTotalCount() / seconds),
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue())));
+        });
+        return report.toString();
+    }
+
+    static Path write(Path file, String report) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        return Files.writeString(file, report);
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,38 @@
+package com.mobilise.model;
+
+import com.mobilise.exception.InvalidIsbnException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IsbnTest {
+
+    @Test
+    void normalize_ShouldAcceptHyphenatedAndIsbn10Forms() {
+        assertEquals("9780132350884", Isbn.normalize("9780132350884"));
+        assertEquals("9780132350884", Isbn.normalize("978-0-13-235088-4"));
+        assertEquals("9780132350884", Isbn.normalize("0-13-235088-2"));
+        assertEquals("9780132350884", Isbn.normalize(" 0132350882 "));
+        assertEquals("9780804429573", Isbn.normalize("080442957X"));
+        assertEquals("9791032305690", Isbn.normalize("979-10-323-0569-0"));
+    }
+
+    @Test
+    void normalize_ShouldRejectInvalidIsbns() {
+        assertThrows(InvalidIsbnException.class, () -> Isbn.normalize("9780132350885"));
+        assertThrows(InvalidIsbnException.class, () -> Isbn.normalize("0132350881"));
+        assertThrows(InvalidIsbnException.class, () -> Isbn.normalize("1234567890123"));
+        assertThrows(InvalidIsbnException.class, () -> Isbn.normalize("97801323508X4"));
+        assertThrows(InvalidIsbnException.class, () -> Isbn.normalize("123"));
+        assertThrows(InvalidIsbnException.class, () -> Isbn.normalize(""));
+        assertThrows(InvalidIsbnException.class, () -> Isbn.normalize(null));
+    }
+
+    @Test
+    void key_ShouldRoundTrip() {
+        long key = Isbn.toKey("0-13-235088-2");
+
+        assertEquals(9780132350884L, key);
+        assertEquals("9780132350884", Isbn.fromKey(key));
+    }
+}
@@ -0,0 +1,143 @@
+package com.mobilise.overdue;
+
+import com.mobilise.dto.OverdueLoanDTO;
+import com.mobilise.model.Book;
+import com.mobilise.model.BorrowingRecord;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.repository.BorrowingRecordRepository;
+import com.mobilise.repository.HoldRepository;
+import com.mobilise.service.BookService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@RecordApplicationEvents
+class OverdueLoanTrackerTest {
+    private static final String CLEAN_CODE = "9780132350884";
+
+    @Autowired
+    private OverdueLoanTracker overdueLoanTracker;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Autowired
+    private HoldRepository holdRepository;
+
+    @Autowired
+    private ApplicationEvents events;
+
+    private Book book;
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        book = new Book();
+        book.setIsbn(CLEAN_CODE);
+        book.setTitle("Clean Code");
+        book.setAuthor("Robert C. Martin");
+        book.setPublicationYear(2008);
+        book.setCopiesInStock(3);
+        book = bookRepository.save(book);
+        overdueLoanTracker.rebuild();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        holdRepository.deleteAll();
+        borrowingRecordRepository.deleteAll();
+        bookRepository.deleteAll();
+        overdueLoanTracker.rebuild();
+    }
+
+    @Test
+    void loans_ShouldBecomeOverdueWhenDueAndLeaveTheListWhenReturned() {
+        BorrowingRecord first = bookService.borrowBook(CLEAN_CODE, "reader-1").getData();
+        bookService.borrowBook(CLEAN_CODE, "reader-2");
+        assertEquals(first.getBorrowedAt().plusDays(14), first.getDueAt());
+
+        overdueLoanTracker.advance(first.getDueAt().minusMinutes(2));
+        assertEquals(0, overdue().getTotalElements());
+        assertEquals(0, events.stream(LoanOverdueEvent.class).count());
+
+        overdueLoanTracker.advance(LocalDateTime.now().plusDays(15));
+        Page<OverdueLoanDTO> overdue = overdue();
+        assertEquals(2, overdue.getTotalElements());
+        assertEquals(first.getId(), overdue.getContent().get(0).getBorrowingRecordId());
+        assertEquals("reader-1", overdue.getContent().get(0).getBorrowerId());
+        assertEquals(List.of("reader-1", "reader-2"), events.stream(LoanOverdueEvent.class)
+                .map(event -> event.loan().borrowerId()).toList());
+
+        // The oldest loan is returned first
+        assertTrue(bookService.returnBook(CLEAN_CODE).isSuccess());
+        overdue = overdue();
+        assertEquals(1, overdue.getTotalElements());
+        assertEquals("reader-2", overdue.getContent().get(0).getBorrowerId());
+    }
+
+    @Test
+    void returnedLoans_ShouldNeverBecomeOverdue() {
+        bookService.borrowBook(CLEAN_CODE, "reader-1");
+        assertTrue(bookService.returnBook(CLEAN_CODE).isSuccess());
+
+        overdueLoanTracker.advance(LocalDateTime.now().plusDays(15));
+
+        assertEquals(0, overdue().getTotalElements());
+        assertEquals(0, events.stream(LoanOverdueEvent.class).count());
+    }
+
+    @Test
+    void rebuild_ShouldListLoansAlreadyOverdueAndScheduleTheOthers() {
+        LocalDateTime now = LocalDateTime.now();
+        BorrowingRecord returned = loan(now.minusDays(30), "returned-reader");
+        returned.setReturnedAt(now.minusDays(25));
+        borrowingRecordRepository.saveAll(List.of(loan(now.minusDays(20), "late-reader"),
+                loan(now.minusDays(2), "reader"), returned));
+
+        overdueLoanTracker.rebuild();
+
+        Page<OverdueLoanDTO> overdue = overdue();
+        assertEquals(1, overdue.getTotalElements());
+        assertEquals("late-reader", overdue.getContent().get(0).getBorrowerId());
+        // It was overdue before the restart, so it is not announced again
+        assertEquals(0, events.stream(LoanOverdueEvent.class).count());
+
+        overdueLoanTracker.advance(now.plusDays(13));
+        assertEquals(2, overdue().getTotalElements());
+        assertEquals(List.of("reader"), events.stream(LoanOverdueEvent.class)
+                .map(event -> event.loan().borrowerId()).toList());
+    }
+
+    private BorrowingRecord loan(LocalDateTime borrowedAt, String borrowerId) {
+        BorrowingRecord record = new BorrowingRecord();
+        record.setBook(book);
+        record.setBorrowedAt(borrowedAt);
+        record.setDueAt(borrowedAt.plusDays(14));
+        record.setBorrowerId(borrowerId);
+        return record;
+    }
+
+    private Page<OverdueLoanDTO> overdue() {
+        return bookService.getOverdueLoans(PageRequest.of(0, 10)).getData();
+    }
+}
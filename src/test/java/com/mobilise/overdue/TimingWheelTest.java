@@ -0,0 +1,70 @@
+package com.mobilise.overdue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    @Test
+    void advanceTo_ShouldExpireEntriesInTheirDueTickInOrder() {
+        TimingWheel<String> wheel = new TimingWheel<>(100);
+        wheel.add("third", 105);
+        wheel.add("first", 101);
+        wheel.add("second", 103);
+        List<String> expired = new ArrayList<>();
+
+        wheel.advanceTo(102, expired::add);
+        assertEquals(List.of("first"), expired);
+
+        wheel.advanceTo(105, expired::add);
+        assertEquals(List.of("first", "second", "third"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void add_WhenAlreadyDue_ShouldReturnNull() {
+        TimingWheel<String> wheel = new TimingWheel<>(100);
+
+        assertNull(wheel.add("late", 100));
+        assertNull(wheel.add("later", 42));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancel_ShouldRemoveTheEntryOnlyOnce() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        TimingWheel.Entry<String> returned = wheel.add("returned", 10_000);
+        wheel.add("kept", 10_000);
+        List<String> expired = new ArrayList<>();
+
+        assertTrue(wheel.cancel(returned));
+        assertFalse(wheel.cancel(returned));
+        wheel.advanceTo(10_000, expired::add);
+
+        assertEquals(List.of("kept"), expired);
+    }
+
+    @Test
+    void advanceTo_ShouldCascadeEntriesFromEveryLevelWithoutExpiringThemEarly() {
+        long start = 123_456_789;
+        long[] offsets = {1, 63, 64, 65, 4_095, 4_096, 4_097, 262_143, 262_144, 16_777_215, 16_777_216, 50_000_000};
+        TimingWheel<Long> wheel = new TimingWheel<>(start);
+        for (long offset : offsets) {
+            wheel.add(start + offset, start + offset);
+        }
+        List<Long> expired = new ArrayList<>();
+
+        for (long offset : offsets) {
+            wheel.advanceTo(start + offset - 1, expired::add);
+            assertFalse(expired.contains(start + offset), "expired early: " + offset);
+            wheel.advanceTo(start + offset, expired::add);
+            assertEquals(start + offset, expired.get(expired.size() - 1), "not expired: " + offset);
+        }
+        assertEquals(offsets.length, expired.size());
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,114 @@
+package com.mobilise.recommendation;
+
+import com.mobilise.model.Book;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.service.BookService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CoBorrowingIndexTest {
+    private static final String CLEAN_CODE = "9780132350884";
+    private static final String CLEAN_ARCHITECTURE = "9780134494166";
+    private static final String JAVASCRIPT_PATTERNS = "9781449331818";
+    private static final String ESSENTIAL_JAVASCRIPT = "9780306406157";
+    private static final String DESIGN_PATTERNS = "9780201633610";
+
+    @Autowired
+    private CoBorrowingIndex coBorrowingIndex;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final LocalDateTime lastMonth = LocalDateTime.now().minusMonths(1);
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM borrowing_records_archive");
+        jdbcTemplate.update("DELETE FROM borrowing_records");
+        jdbcTemplate.update("DELETE FROM books");
+        bookRepository.saveAll(Stream.of(CLEAN_CODE, CLEAN_ARCHITECTURE, JAVASCRIPT_PATTERNS, ESSENTIAL_JAVASCRIPT,
+                DESIGN_PATTERNS).map(CoBorrowingIndexTest::book).toList());
+
+        borrowed("reader-1", CLEAN_CODE, CLEAN_ARCHITECTURE, JAVASCRIPT_PATTERNS);
+        borrowed("reader-2", CLEAN_CODE, CLEAN_ARCHITECTURE);
+        borrowed("reader-3", CLEAN_CODE, JAVASCRIPT_PATTERNS, CLEAN_CODE);
+        borrowed(null, CLEAN_CODE, ESSENTIAL_JAVASCRIPT);
+        jdbcTemplate.update("INSERT INTO borrowing_records_archive " +
+                        "(id, isbn, book_title, borrowed_at, returned_at, borrower_id) VALUES (?, ?, ?, ?, ?, ?), " +
+                        "(?, ?, ?, ?, ?, ?)",
+                1001L, Long.parseLong(CLEAN_CODE), "Clean Code", lastMonth.minusYears(2), lastMonth.minusYears(2),
+                "reader-4",
+                1002L, Long.parseLong(CLEAN_ARCHITECTURE), "Clean Architecture", lastMonth.minusYears(2),
+                lastMonth.minusYears(2), "reader-4");
+        coBorrowingIndex.rebuild();
+    }
+
+    @Test
+    void rebuild_ShouldCountEachBorrowerOncePerPairAcrossHotAndArchivedLoans() {
+        assertEquals(List.of(CLEAN_ARCHITECTURE, JAVASCRIPT_PATTERNS), coBorrowingIndex.related(CLEAN_CODE));
+        assertEquals(List.of(CLEAN_CODE, JAVASCRIPT_PATTERNS), coBorrowingIndex.related(CLEAN_ARCHITECTURE));
+        assertEquals(List.of(), coBorrowingIndex.related(ESSENTIAL_JAVASCRIPT));
+        assertEquals(List.of(), coBorrowingIndex.related(DESIGN_PATTERNS));
+    }
+
+    @Test
+    void borrowBook_ShouldPairTheBookWithTheBorrowersEarlierBooksOnce() throws Exception {
+        assertTrue(bookService.borrowBook(ESSENTIAL_JAVASCRIPT, "reader-2").isSuccess());
+        assertTrue(bookService.borrowBook(ESSENTIAL_JAVASCRIPT, "reader-2").isSuccess());
+        assertTrue(bookService.borrowBook(DESIGN_PATTERNS, "reader-9").isSuccess());
+        coBorrowingIndex.awaitUpdates();
+
+        assertEquals(List.of(CLEAN_CODE, CLEAN_ARCHITECTURE), coBorrowingIndex.related(ESSENTIAL_JAVASCRIPT));
+        assertEquals(List.of(CLEAN_ARCHITECTURE, JAVASCRIPT_PATTERNS, ESSENTIAL_JAVASCRIPT),
+                coBorrowingIndex.related(CLEAN_CODE));
+        assertEquals(List.of(), coBorrowingIndex.related(DESIGN_PATTERNS));
+
+        // A rebuild counts the same borrows from the history
+        coBorrowingIndex.rebuild();
+        assertEquals(List.of(CLEAN_CODE, CLEAN_ARCHITECTURE), coBorrowingIndex.related(ESSENTIAL_JAVASCRIPT));
+    }
+
+    @Test
+    void getRelatedBooks_ShouldLeaveOutDeletedBooks() {
+        assertTrue(bookService.deleteBook(CLEAN_ARCHITECTURE).isSuccess());
+
+        List<Book> related = bookService.getRelatedBooks(CLEAN_CODE).getData();
+
+        assertEquals(List.of(JAVASCRIPT_PATTERNS), related.stream().map(Book::getIsbn).toList());
+    }
+
+    private void borrowed(String borrower, String... isbns) {
+        for (String isbn : isbns) {
+            jdbcTemplate.update("INSERT INTO borrowing_records (isbn, borrowed_at, returned_at, borrower_id) " +
+                    "VALUES (?, ?, ?, ?)", Long.parseLong(isbn), lastMonth, lastMonth.plusDays(7), borrower);
+        }
+    }
+
+    private static Book book(String isbn) {
+        Book book = new Book();
+        book.setIsbn(isbn);
+        book.setTitle("Book " + isbn);
+        book.setAuthor("Author");
+        book.setPublicationYear(2020);
+        book.setCopiesInStock(3);
+        return book;
+    }
+}
@@ -0,0 +1,35 @@
+package com.mobilise.recommendation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NeighboursTest {
+    private final long[] isbns = {9780306406157L, 9780132350884L, 9780134494166L, 9781449331818L, 9780201633610L};
+
+    @Test
+    void top_ShouldOrderByCountAndThenIsbn() {
+        Neighbours neighbours = new Neighbours(10);
+        neighbours.add(0, 1);
+        neighbours.add(1, 1);
+        neighbours.add(2, 3);
+        neighbours.add(0, 1);
+
+        assertArrayEquals(new int[]{2, 0, 1}, neighbours.top(10, isbns));
+        assertArrayEquals(new int[]{2}, neighbours.top(1, isbns));
+    }
+
+    @Test
+    void add_WhenFull_ShouldReplaceTheLowestCountAndKeepFrequentBooks() {
+        Neighbours neighbours = new Neighbours(2);
+        neighbours.add(0, 5);
+        neighbours.add(1, 1);
+        neighbours.add(2, 1);
+        neighbours.add(3, 1);
+
+        // Book 3 took over the slot of book 2, which had taken over book 1's, and inherited both counts
+        assertArrayEquals(new int[]{0, 3}, neighbours.top(10, isbns));
+        neighbours.add(4, 4);
+        assertArrayEquals(new int[]{4, 0}, neighbours.top(10, isbns));
+    }
+}
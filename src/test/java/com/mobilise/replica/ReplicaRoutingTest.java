@@ -0,0 +1,203 @@
+package com.mobilise.replica;
+
+import com.mobilise.dto.BookDTO;
+import com.mobilise.interfaces.BookServiceInterface;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskHolder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:replicaprimary;DB_CLOSE_DELAY=-1",
+        "library.replicas.enabled=true",
+        "library.replicas.urls=jdbc:h2:mem:replica1;DB_CLOSE_DELAY=-1,jdbc:h2:mem:replica2;DB_CLOSE_DELAY=-1",
+        "library.replicas.stand-in-replication=true",
+        "library.replicas.replication-interval=PT0.2S",
+        "library.replicas.heartbeat-interval=PT0.1S",
+        "library.replicas.max-staleness=PT2S"
+})
+@ActiveProfiles("test")
+class ReplicaRoutingTest {
+    private static final String REPLICA_ONLY_ISBN = "9780201633610";
+
+    @Autowired
+    private BookServiceInterface bookService;
+
+    @Autowired
+    private ReplicaDataSources replicaDataSources;
+
+    @Autowired
+    private ReplicaLagMonitor lagMonitor;
+
+    @Autowired
+    private StandInReplicator replicator;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    @Autowired
+    private ScheduledTaskHolder scheduledTaskHolder;
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() {
+        replicator.setPaused(true);
+        jdbcTemplate.update("DELETE FROM borrowing_records");
+        jdbcTemplate.update("DELETE FROM books");
+        // A book only the replicas know about shows which database served a read
+        for (JdbcTemplate replica : replicas()) {
+            replica.update("DELETE FROM borrowing_records");
+            replica.update("DELETE FROM books");
+            replica.update("INSERT INTO books (isbn, title, author, publication_year, copies_in_stock) "
+                    + "VALUES (?, 'Replica Only', 'Author', 2020, 1)", REPLICA_ONLY_ISBN);
+        }
+        ReadYourWrites.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReadYourWrites.clear();
+        replicator.setPaused(false);
+    }
+
+    @Test
+    void readOnlyTransaction_WhenReplicaIsFresh_ShouldReadFromReplica() {
+        setReplicaHeartbeat(Instant.now());
+
+        assertTrue(bookService.getBookByIsbn(REPLICA_ONLY_ISBN).isSuccess());
+    }
+
+    @Test
+    void readOnlyTransaction_WhenReplicasLagBeyondTolerance_ShouldReadFromPrimary() {
+        setReplicaHeartbeat(Instant.now().minusSeconds(10));
+
+        assertFalse(bookService.getBookByIsbn(REPLICA_ONLY_ISBN).isSuccess());
+    }
+
+    @Test
+    void readAfterWrite_ShouldNotUseReplicaThatHasNotAppliedTheWrite() {
+        setReplicaHeartbeat(Instant.now());
+        createBook("9780132350884");
+
+        assertTrue(bookService.getBookByIsbn("9780132350884").isSuccess());
+        assertFalse(bookService.getBookByIsbn(REPLICA_ONLY_ISBN).isSuccess());
+
+        setReplicaHeartbeat(Instant.now().plusMillis(1));
+        assertTrue(bookService.getBookByIsbn(REPLICA_ONLY_ISBN).isSuccess());
+    }
+
+    @Test
+    void httpRequests_ShouldBeRoutedPerTransactionWithoutOpenSessionInView() throws Exception {
+        assertEquals(0, applicationContext.getBeanNamesForType(OpenEntityManagerInViewInterceptor.class).length);
+        setReplicaHeartbeat(Instant.now());
+        assertEquals(200, getBook(REPLICA_ONLY_ISBN, null).statusCode());
+
+        HttpResponse<String> created = client.send(HttpRequest.newBuilder(uri(""))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"isbn\":\"9780132350884\",\"title\":\"Clean Code\","
+                        + "\"author\":\"Robert C. Martin\",\"publicationYear\":2008,\"copiesInStock\":1}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(201, created.statusCode(), created.body());
+        String cookie = created.headers().firstValue("Set-Cookie").orElseThrow().split(";")[0];
+
+        // The writer's reads wait for the replicas to apply its write, other clients' reads do not
+        assertEquals(200, getBook("9780132350884", cookie).statusCode());
+        assertEquals(404, getBook(REPLICA_ONLY_ISBN, cookie).statusCode());
+        assertEquals(200, getBook(REPLICA_ONLY_ISBN, null).statusCode());
+    }
+
+    @Test
+    void scheduledJobs_ShouldEachHaveASchedulerThread() {
+        assertTrue(taskScheduler.getScheduledThreadPoolExecutor().getCorePoolSize()
+                >= scheduledTaskHolder.getScheduledTasks().size());
+    }
+
+    @Test
+    void nextRequestOnTheThread_ShouldNotInheritTheWrite() throws Exception {
+        new ReadYourWritesFilter().doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(),
+                (request, response) -> ReadYourWrites.recordWrite(Instant.now(), Duration.ofSeconds(2)));
+
+        assertNull(ReadYourWrites.lastWrite());
+    }
+
+    @Test
+    void replication_ShouldCopyPrimaryWritesToReplicas() throws InterruptedException {
+        createBook("9780132350884");
+        replicator.setPaused(false);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!onAllReplicas("9780132350884") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(onAllReplicas("9780132350884"));
+    }
+
+    private HttpResponse<String> getBook(String isbn, String cookie) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri("/" + isbn));
+        if (cookie != null) {
+            request.header("Cookie", cookie);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + "/api/v1/books" + path);
+    }
+
+    private List<JdbcTemplate> replicas() {
+        return replicaDataSources.byName().values().stream().map(JdbcTemplate::new).toList();
+    }
+
+    private void setReplicaHeartbeat(Instant beatAt) {
+        for (JdbcTemplate replica : replicas()) {
+            replica.update("UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1", Timestamp.from(beatAt));
+        }
+        replicaDataSources.byName().keySet().forEach(lagMonitor::refresh);
+    }
+
+    private boolean onAllReplicas(String isbn) {
+        return replicas().stream().allMatch(replica -> replica.queryForObject(
+                "SELECT COUNT(*) FROM books WHERE isbn = ?", Integer.class, isbn) == 1);
+    }
+
+    private void createBook(String isbn) {
+        BookDTO dto = new BookDTO();
+        dto.setIsbn(isbn);
+        dto.setTitle("Book " + isbn);
+        dto.setAuthor("Author");
+        dto.setPublicationYear(2020);
+        dto.setCopiesInStock(3);
+        assertTrue(bookService.createBook(dto).isSuccess());
+    }
+}
@@ -0,0 +1,83 @@
+package com.mobilise.repository;
+
+import com.mobilise.model.Book;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class BookRepositoryTest {
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM borrowing_records");
+        jdbcTemplate.update("DELETE FROM books");
+        bookRepository.save(book("9780132350884", "Clean Code", false));
+        bookRepository.save(book("9780134494166", "Clean Architecture", true));
+        bookRepository.save(book("9781449331818", "Learning JavaScript Design Patterns", false));
+    }
+
+    @Test
+    void liveQueries_ShouldSkipDeletedBooks() {
+        Page<Book> all = bookRepository.findByDeletedIsFalse(PageRequest.of(0, 10, Sort.by("isbn")));
+        assertEquals(2, all.getTotalElements());
+        assertTrue(all.stream().noneMatch(Book::isDeleted));
+
+        Page<Book> search = bookRepository.searchByTitleOrAuthor("clean", PageRequest.of(0, 10));
+        assertEquals(1, search.getTotalElements());
+        assertEquals("9780132350884", search.getContent().get(0).getIsbn());
+
+        assertTrue(bookRepository.findByIsbnAndDeletedIsFalse("9780134494166").isEmpty());
+    }
+
+    @Test
+    void findFields_ShouldReadOnlyTheRequestedFieldsOfLiveBooks() {
+        Page<Map<String, Object>> all = bookRepository.findFields(List.of("title", "isbn"), null,
+                PageRequest.of(0, 1, Sort.by(Sort.Direction.DESC, "title")));
+        assertEquals(2, all.getTotalElements());
+        assertEquals(List.of(Map.of("title", "Learning JavaScript Design Patterns", "isbn", "9781449331818")),
+                all.getContent());
+        assertEquals(List.of("title", "isbn"), List.copyOf(all.getContent().get(0).keySet()));
+
+        Page<Map<String, Object>> search = bookRepository.findFields(List.of("copiesInStock"), "CLEAN",
+                PageRequest.of(0, 10));
+        assertEquals(List.of(Map.of("copiesInStock", 2)), search.getContent());
+    }
+
+    @Test
+    @Transactional
+    void findByIsbnForUpdate_ShouldStillSeeDeletedBooks() {
+        assertTrue(bookRepository.findByIsbnForUpdate("9780134494166").orElseThrow().isDeleted());
+    }
+
+    private static Book book(String isbn, String title, boolean deleted) {
+        Book book = new Book();
+        book.setIsbn(isbn);
+        book.setTitle(title);
+        book.setAuthor("Author");
+        book.setPublicationYear(2010);
+        book.setCopiesInStock(2);
+        book.setDeleted(deleted);
+        book.setDeletedAt(deleted ? LocalDateTime.of(2024, 1, 1, 0, 0) : null);
+        return book;
+    }
+}
@@ -0,0 +1,84 @@
+package com.mobilise.repository;
+
+import com.mobilise.model.Book;
+import com.mobilise.model.BorrowingRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class BorrowingRecordRepositoryTest {
+    private static final LocalDateTime MORNING = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Book book;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM borrowing_records");
+        jdbcTemplate.update("DELETE FROM books");
+        book = new Book();
+        book.setIsbn("9780132350884");
+        book.setTitle("Clean Code");
+        book.setAuthor("Robert C. Martin");
+        book.setPublicationYear(2008);
+        book.setCopiesInStock(5);
+        book = bookRepository.save(book);
+    }
+
+    @Test
+    void findOldestOpenBorrowing_ShouldReturnLoansInBorrowingOrder() {
+        BorrowingRecord returned = save(MORNING.minusDays(1), MORNING);
+        BorrowingRecord second = save(MORNING.plusHours(2), null);
+        BorrowingRecord first = save(MORNING, null);
+        BorrowingRecord third = save(MORNING.plusHours(2), null);
+
+        assertNotEquals(returned.getId(), borrowingRecordRepository.findOldestOpenBorrowing(book).orElseThrow().getId());
+        assertEquals(first.getId(), closeOldest());
+        // Loans borrowed at the same instant are closed in insertion order
+        assertEquals(second.getId(), closeOldest());
+        assertEquals(third.getId(), closeOldest());
+        assertTrue(borrowingRecordRepository.findOldestOpenBorrowing(book).isEmpty());
+    }
+
+    @Test
+    void openLoanQuery_ShouldReadTheIndexInOrder() {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN SELECT id FROM borrowing_records " +
+                "WHERE isbn = ? AND returned_at IS NULL ORDER BY isbn, returned_at, borrowed_at, id " +
+                "FETCH FIRST 1 ROWS ONLY", String.class, book.getIsbn());
+
+        assertTrue(plan.contains("IDX_BORROWING_RECORDS_OPEN_LOANS"), plan);
+        assertTrue(plan.contains("index sorted"), plan);
+    }
+
+    private Long closeOldest() {
+        BorrowingRecord oldest = borrowingRecordRepository.findOldestOpenBorrowing(book).orElseThrow();
+        oldest.setReturnedAt(MORNING.plusDays(7));
+        borrowingRecordRepository.save(oldest);
+        return oldest.getId();
+    }
+
+    private BorrowingRecord save(LocalDateTime borrowedAt, LocalDateTime returnedAt) {
+        BorrowingRecord record = new BorrowingRecord();
+        record.setBook(book);
+        record.setBorrowedAt(borrowedAt);
+        record.setReturnedAt(returnedAt);
+        return borrowingRecordRepository.save(record);
+    }
+}
@@ -0,0 +1,109 @@
+package com.mobilise.repository;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.FlywayException;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IsbnKeyMigrationTest {
+
+    @Test
+    void migrate_ShouldNormalizeIsbnsAndMergeDuplicateBooks() {
+        DataSource dataSource = database("isbnmigration");
+        migrate(dataSource, "6");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.update("INSERT INTO books (isbn, title, author, publication_year, copies_in_stock, is_deleted, " +
+                "active_loans) VALUES ('0-13-235088-2', 'Clean Code', 'Robert C. Martin', 2008, 2, FALSE, 1)");
+        jdbc.update("INSERT INTO books (isbn, title, author, publication_year, copies_in_stock, is_deleted, " +
+                "active_loans, deleted_at) VALUES ('9780132350884', 'Clean Code', 'Robert C. Martin', 2008, 3, TRUE, " +
+                "0, CURRENT_TIMESTAMP)");
+        jdbc.update("INSERT INTO books (isbn, title, author, publication_year, copies_in_stock, is_deleted, " +
+                "active_loans) VALUES ('978-0-13-449416-6', 'Clean Architecture', 'Robert C. Martin', 2017, 1, FALSE, 0)");
+        jdbc.update("INSERT INTO borrowing_records (isbn, borrowed_at) VALUES ('0-13-235088-2', CURRENT_TIMESTAMP)");
+        jdbc.update("INSERT INTO borrowing_records (isbn, borrowed_at, returned_at) " +
+                "VALUES ('9780132350884', CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)");
+
+        migrate(dataSource, "latest");
+
+        List<Map<String, Object>> books = jdbc.queryForList(
+                "SELECT isbn, copies_in_stock, active_loans, is_deleted FROM books ORDER BY isbn");
+        assertEquals(2, books.size());
+        assertEquals(9780132350884L, books.get(0).get("ISBN"));
+        assertEquals(5, books.get(0).get("COPIES_IN_STOCK"));
+        assertEquals(1, books.get(0).get("ACTIVE_LOANS"));
+        assertEquals(false, books.get(0).get("IS_DELETED"));
+        assertEquals(9780134494166L, books.get(1).get("ISBN"));
+        assertEquals(2, jdbc.queryForObject(
+                "SELECT COUNT(*) FROM borrowing_records WHERE isbn = 9780132350884", Integer.class));
+        assertEquals("BIGINT", jdbc.queryForObject("SELECT DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE TABLE_NAME = 'BORROWING_RECORDS' AND COLUMN_NAME = 'ISBN'", String.class));
+        assertThrows(Exception.class, () -> jdbc.update(
+                "INSERT INTO borrowing_records (isbn, borrowed_at) VALUES (9780201633610, CURRENT_TIMESTAMP)"));
+    }
+
+    @Test
+    void migrate_WhenIsbnIsInvalid_ShouldFailBeforeChangingTheSchema() {
+        DataSource dataSource = database("isbnmigrationinvalid");
+        migrate(dataSource, "6");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.update("INSERT INTO books (isbn, title, author, publication_year, copies_in_stock) " +
+                "VALUES ('not-an-isbn', 'Unknown', 'Unknown', 2000, 1)");
+
+        FlywayException failure = assertThrows(FlywayException.class, () -> migrate(dataSource, "latest"));
+
+        assertTrue(messages(failure).contains("not-an-isbn"), messages(failure));
+        assertEquals("CHARACTER VARYING", jdbc.queryForObject("SELECT DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE TABLE_NAME = 'BOOKS' AND COLUMN_NAME = 'ISBN'", String.class));
+    }
+
+    @Test
+    void migrate_WhenTheSchemaWasCreatedByHibernate_ShouldReplaceItsGeneratedForeignKey() {
+        DataSource dataSource = database("isbnmigrationhibernate");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        // As ddl-auto=update created it before the Flyway migrations
+        jdbc.execute("CREATE TABLE books (copies_in_stock INTEGER, is_deleted BOOLEAN NOT NULL, " +
+                "publication_year INTEGER NOT NULL, deleted_at TIMESTAMP(6), author VARCHAR(255) NOT NULL, " +
+                "isbn VARCHAR(255) NOT NULL, title VARCHAR(255) NOT NULL, PRIMARY KEY (isbn))");
+        jdbc.execute("CREATE TABLE borrowing_records (borrowed_at TIMESTAMP(6) NOT NULL, " +
+                "id BIGINT GENERATED BY DEFAULT AS IDENTITY, returned_at TIMESTAMP(6), isbn VARCHAR(255) NOT NULL, " +
+                "PRIMARY KEY (id))");
+        jdbc.execute("ALTER TABLE IF EXISTS borrowing_records ADD CONSTRAINT FKsg4t3nyyw2j6bq4nd3c7lvr8g " +
+                "FOREIGN KEY (isbn) REFERENCES books");
+        jdbc.update("INSERT INTO books (isbn, title, author, publication_year, copies_in_stock, is_deleted) " +
+                "VALUES ('0-13-235088-2', 'Clean Code', 'Robert C. Martin', 2008, 2, FALSE)");
+        jdbc.update("INSERT INTO borrowing_records (isbn, borrowed_at) VALUES ('0-13-235088-2', CURRENT_TIMESTAMP)");
+
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration")
+                .baselineOnMigrate(true).baselineVersion("1").load().migrate();
+
+        assertEquals(9780132350884L, jdbc.queryForObject("SELECT isbn FROM borrowing_records", Long.class));
+        assertEquals(List.of("FK_BORROWING_RECORDS_BOOK"), jdbc.queryForList("SELECT CONSTRAINT_NAME " +
+                "FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS WHERE TABLE_NAME = 'BORROWING_RECORDS' " +
+                "AND CONSTRAINT_TYPE = 'FOREIGN KEY'", String.class));
+        assertThrows(Exception.class, () -> jdbc.update(
+                "INSERT INTO borrowing_records (isbn, borrowed_at) VALUES (9780201633610, CURRENT_TIMESTAMP)"));
+    }
+
+    private static String messages(Throwable failure) {
+        StringBuilder messages = new StringBuilder();
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            messages.append(cause.getMessage()).append('\n');
+        }
+        return messages.toString();
+    }
+
+    private static DataSource database(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "password");
+    }
+
+    private static void migrate(DataSource dataSource, String target) {
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration").target(target).load().migrate();
+    }
+}
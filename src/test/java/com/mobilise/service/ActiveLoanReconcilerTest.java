@@ -0,0 +1,74 @@
+package com.mobilise.service;
+
+import com.mobilise.dto.BookDTO;
+import com.mobilise.interfaces.BookServiceInterface;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ActiveLoanReconcilerTest {
+    @Autowired
+    private ActiveLoanReconciler reconciler;
+
+    @Autowired
+    private BookServiceInterface bookService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM borrowing_records");
+        jdbcTemplate.update("DELETE FROM books");
+        createBook("9780132350884");
+        createBook("9780134494166");
+    }
+
+    @Test
+    void borrowAndReturn_ShouldKeepCounterInStepWithBorrowingRecords() {
+        assertTrue(bookService.borrowBook("9780132350884", null).isSuccess());
+        assertTrue(bookService.borrowBook("9780132350884", null).isSuccess());
+        assertTrue(bookService.returnBook("9780132350884").isSuccess());
+
+        assertEquals(1, activeLoans("9780132350884"));
+        assertEquals(0, reconciler.reconcile());
+        assertEquals(1, bookService.getBooksOnLoan(Pageable.unpaged()).getData().getTotalElements());
+    }
+
+    @Test
+    void reconcile_WhenCounterDrifted_ShouldCorrectIt() {
+        assertTrue(bookService.borrowBook("9780132350884", null).isSuccess());
+        jdbcTemplate.update("UPDATE books SET active_loans = 0 WHERE isbn = '9780132350884'");
+        jdbcTemplate.update("UPDATE books SET active_loans = 2 WHERE isbn = '9780134494166'");
+
+        assertFalse(bookService.deleteBook("9780134494166").isSuccess());
+
+        assertEquals(2, reconciler.reconcile());
+        assertEquals(1, activeLoans("9780132350884"));
+        assertEquals(0, activeLoans("9780134494166"));
+        assertFalse(bookService.deleteBook("9780132350884").isSuccess());
+        assertTrue(bookService.deleteBook("9780134494166").isSuccess());
+    }
+
+    private void createBook(String isbn) {
+        BookDTO dto = new BookDTO();
+        dto.setIsbn(isbn);
+        dto.setTitle("Book " + isbn);
+        dto.setAuthor("Author");
+        dto.setPublicationYear(2020);
+        dto.setCopiesInStock(3);
+        assertTrue(bookService.createBook(dto).isSuccess());
+    }
+
+    private int activeLoans(String isbn) {
+        return jdbcTemplate.queryForObject("SELECT active_loans FROM books WHERE isbn = ?", Integer.class, isbn);
+    }
+}
@@ -1,13 +1,26 @@
 package com.mobilise.service;
 
+import com.mobilise.changes.BookChange;
+import com.mobilise.changes.BookChangeBus;
 import com.mobilise.constants.ResponseMessages;
 import com.mobilise.dto.ApiResponse;
 import com.mobilise.dto.BookDTO;
+import com.mobilise.dto.BookFilterDTO;
 import com.mobilise.dto.BorrowingReportDTO;
+import com.mobilise.dto.FacetedBooksDTO;
+import com.mobilise.facet.CatalogueFacetIndex;
+import com.mobilise.hold.HoldWaiters;
+import com.mobilise.journal.BorrowingJournal;
+import com.mobilise.model.ArchivedBorrowingRecord;
 import com.mobilise.model.Book;
 import com.mobilise.model.BorrowingRecord;
+import com.mobilise.model.Hold;
+import com.mobilise.overdue.OverdueLoanTracker;
+import com.mobilise.repository.ArchivedBorrowingRecordRepository;
 import com.mobilise.repository.BookRepository;
 import com.mobilise.repository.BorrowingRecordRepository;
+import com.mobilise.repository.HoldRepository;
+import com.mobilise.recommendation.CoBorrowingIndex;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,6 +30,7 @@ import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -25,7 +39,9 @@ import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -39,6 +55,30 @@ class BookServiceTest {
     @Mock
     private BorrowingRecordRepository borrowingRecordRepository;
 
+    @Mock
+    private BorrowingJournal borrowingJournal;
+
+    @Mock
+    private ArchivedBorrowingRecordRepository archivedBorrowingRecordRepository;
+
+    @Mock
+    private CatalogueFacetIndex catalogueFacetIndex;
+
+    @Mock
+    private CoBorrowingIndex coBorrowingIndex;
+
+    @Mock
+    private BookChangeBus bookChangeBus;
+
+    @Mock
+    private HoldRepository holdRepository;
+
+    @Mock
+    private HoldWaiters holdWaiters;
+
+    @Mock
+    private OverdueLoanTracker overdueLoanTracker;
+
     @Spy
     @InjectMocks
     private BookService bookService;
@@ -49,14 +89,14 @@ class BookServiceTest {
     @BeforeEach
     void setUp() {
         testBook = new Book();
-        testBook.setIsbn("1234567890");
+        testBook.setIsbn("9780306406157");
         testBook.setTitle("Test Book");
         testBook.setAuthor("Test Author");
         testBook.setPublicationYear(2023);
         testBook.setCopiesInStock(5);
 
         testBookDTO = new BookDTO();
-        testBookDTO.setIsbn("1234567890");
+        testBookDTO.setIsbn("9780306406157");
         testBookDTO.setTitle("Test Book");
         testBookDTO.setAuthor("Test Author");
         testBookDTO.setPublicationYear(2023);
@@ -66,7 +106,7 @@ class BookServiceTest {
     @Test
     void getAllBooks_WhenSuccessful_ShouldReturnSuccessResponse() {
         Page<Book> bookPage = new PageImpl<>(List.of(testBook));
-        when(bookRepository.findAll(any(Pageable.class))).thenReturn(bookPage);
+        when(bookRepository.findByDeletedIsFalse(any(Pageable.class))).thenReturn(bookPage);
 
         ApiResponse<Page<Book>> response = bookService.getAllBooks(Pageable.unpaged());
 
@@ -74,12 +114,12 @@ class BookServiceTest {
         assertNotNull(response.getData());
         assertEquals(1, response.getData().getTotalElements());
         assertNull(response.getError());
-        verify(bookRepository).findAll(any(Pageable.class));
+        verify(bookRepository).findByDeletedIsFalse(any(Pageable.class));
     }
 
     @Test
     void getAllBooks_WhenError_ShouldReturnErrorResponse() {
-        when(bookRepository.findAll(any(Pageable.class))).thenThrow(new RuntimeException("Database error"));
+        when(bookRepository.findByDeletedIsFalse(any(Pageable.class))).thenThrow(new RuntimeException("Database error"));
 
         ApiResponse<Page<Book>> response = bookService.getAllBooks(Pageable.unpaged());
 
@@ -91,7 +131,7 @@ class BookServiceTest {
 
     @Test
     void getBookByIsbn_WhenExists_ShouldReturnSuccessResponse() {
-        when(bookRepository.findById(testBook.getIsbn())).thenReturn(Optional.of(testBook));
+        when(bookRepository.findByIsbnAndDeletedIsFalse(testBook.getIsbn())).thenReturn(Optional.of(testBook));
 
         ApiResponse<Book> response = bookService.getBookByIsbn(testBook.getIsbn());
 
@@ -103,7 +143,7 @@ class BookServiceTest {
 
     @Test
     void getBookByIsbn_WhenNotExists_ShouldReturnErrorResponse() {
-        when(bookRepository.findById(anyString())).thenReturn(Optional.empty());
+        when(bookRepository.findByIsbnAndDeletedIsFalse(anyString())).thenReturn(Optional.empty());
 
         ApiResponse<Book> response = bookService.getBookByIsbn("nonexistent");
 
@@ -116,9 +156,9 @@ class BookServiceTest {
     @Test
     void borrowBook_WhenNoCopiesAvailable_ShouldReturnErrorResponse() {
         testBook.setCopiesInStock(0);
-        when(bookRepository.findById(testBook.getIsbn())).thenReturn(Optional.of(testBook));
+        when(bookRepository.findByIsbnForUpdate(testBook.getIsbn())).thenReturn(Optional.of(testBook));
 
-        ApiResponse<BorrowingRecord> response = bookService.borrowBook(testBook.getIsbn());
+        ApiResponse<BorrowingRecord> response = bookService.borrowBook(testBook.getIsbn(), null);
 
         assertFalse(response.isSuccess());
         assertNotNull(response.getError());
@@ -128,18 +168,44 @@ class BookServiceTest {
 
     @Test
     void borrowBook_WhenCopiesAvailable_ShouldReturnSuccessResponse() {
-        when(bookRepository.findById(testBook.getIsbn())).thenReturn(Optional.of(testBook));
+        when(bookRepository.findByIsbnForUpdate(testBook.getIsbn())).thenReturn(Optional.of(testBook));
         when(borrowingRecordRepository.save(any(BorrowingRecord.class)))
                 .thenReturn(new BorrowingRecord());
 
         int initialCopiesOfBook = testBook.getCopiesInStock();
 
-        ApiResponse<BorrowingRecord> response = bookService.borrowBook(testBook.getIsbn());
+        ApiResponse<BorrowingRecord> response = bookService.borrowBook(testBook.getIsbn(), "reader-1");
 
         assertTrue(response.isSuccess());
         assertNotNull(response.getData());
         assertNull(response.getError());
         assertEquals(initialCopiesOfBook - 1, testBook.getCopiesInStock());
+        assertEquals(1, testBook.getActiveLoans());
+        verify(catalogueFacetIndex).indexAfterCommit(testBook);
+        verify(coBorrowingIndex).recordBorrowAfterCommit(eq("reader-1"), eq(testBook.getIsbn()), any());
+        verify(bookChangeBus).publishAfterCommit(BookChange.Type.STOCK_CHANGED, testBook);
+    }
+
+    @Test
+    void borrowBook_WhenBorrowerIdTooLong_ShouldReturnErrorResponse() {
+        ApiResponse<BorrowingRecord> response = bookService.borrowBook(testBook.getIsbn(), "r".repeat(65));
+
+        assertFalse(response.isSuccess());
+        assertEquals("INVALID_OPERATION", response.getError().getCode());
+        verify(borrowingRecordRepository, never()).save(any(BorrowingRecord.class));
+    }
+
+    @Test
+    void borrowBook_WhenBookDeleted_ShouldReturnNotFoundResponse() {
+        testBook.setDeleted(true);
+        when(bookRepository.findByIsbnForUpdate(testBook.getIsbn())).thenReturn(Optional.of(testBook));
+
+        ApiResponse<BorrowingRecord> response = bookService.borrowBook(testBook.getIsbn(), null);
+
+        assertFalse(response.isSuccess());
+        assertEquals("NOT_FOUND", response.getError().getCode());
+        assertEquals(5, testBook.getCopiesInStock());
+        verify(borrowingRecordRepository, never()).save(any(BorrowingRecord.class));
     }
 
     // Add these test methods to BookServiceTest class
@@ -147,8 +213,7 @@ class BookServiceTest {
     @Test
     void searchBooks_WhenQueryValid_ShouldReturnSuccessResponse() {
         Page<Book> bookPage = new PageImpl<>(List.of(testBook));
-        when(bookRepository.findByTitleContainingIgnoreCaseOrAuthorContainingIgnoreCase(
-                anyString(), anyString(), any(Pageable.class)))
+        when(bookRepository.searchByTitleOrAuthor(anyString(), any(Pageable.class)))
                 .thenReturn(bookPage);
 
         ApiResponse<Page<Book>> response = bookService.searchBooks("Test", Pageable.unpaged());
@@ -170,9 +235,56 @@ class BookServiceTest {
         assertNull(response.getData());
     }
 
+    @Test
+    void filterBooks_WhenSuccessful_ShouldReadOnlyThePageInIndexOrder() {
+        Book otherBook = new Book();
+        otherBook.setIsbn("9780804429573");
+        BookFilterDTO filter = new BookFilterDTO();
+        filter.setInStockOnly(true);
+        when(catalogueFacetIndex.filter(filter, PageRequest.of(0, 2))).thenReturn(new CatalogueFacetIndex.Result(
+                List.of("9780804429573", "9780306406157"), 7, Map.of(2023, 7), Map.of("Test Author", 7), 7));
+        when(bookRepository.findAllById(List.of("9780804429573", "9780306406157")))
+                .thenReturn(List.of(testBook, otherBook));
+
+        ApiResponse<FacetedBooksDTO> response = bookService.filterBooks(filter, PageRequest.of(0, 2));
+
+        assertTrue(response.isSuccess());
+        assertEquals(List.of(otherBook, testBook), response.getData().getBooks().getContent());
+        assertEquals(7, response.getData().getBooks().getTotalElements());
+        assertEquals(Map.of(2023, 7), response.getData().getPublicationYears());
+    }
+
+    @Test
+    void getRelatedBooks_ShouldKeepTheIndexOrderAndLeaveOutDeletedBooks() {
+        Book otherBook = new Book();
+        otherBook.setIsbn("9780804429573");
+        Book deletedBook = new Book();
+        deletedBook.setIsbn("9780132350884");
+        deletedBook.setDeleted(true);
+        List<String> related = List.of("9780804429573", "9780132350884", "9780306406157");
+        when(coBorrowingIndex.related("9781449331818")).thenReturn(related);
+        when(bookRepository.findAllById(related)).thenReturn(List.of(testBook, deletedBook, otherBook));
+
+        ApiResponse<List<Book>> response = bookService.getRelatedBooks("9781449331818");
+
+        assertTrue(response.isSuccess());
+        assertEquals(List.of(otherBook, testBook), response.getData());
+    }
+
+    @Test
+    void getBookFields_WhenAFieldIsUnknown_ShouldNotQuery() {
+        ApiResponse<Page<Map<String, Object>>> response = bookService.getBookFields(List.of("title", "deletedAt"),
+                PageRequest.of(0, 10));
+
+        assertFalse(response.isSuccess());
+        assertEquals(ResponseMessages.INVALID_OPERATION, response.getError().getCode());
+        assertTrue(response.getError().getDetail().contains("[deletedAt]"));
+        verifyNoInteractions(bookRepository);
+    }
+
     @Test
     void updateBook_WhenSuccessful_ShouldReturnUpdatedBook() {
-        when(bookRepository.findById(testBook.getIsbn())).thenReturn(Optional.of(testBook));
+        when(bookRepository.findByIsbnForUpdate(testBook.getIsbn())).thenReturn(Optional.of(testBook));
         when(bookRepository.save(any(Book.class))).thenReturn(testBook);
 
         testBookDTO.setTitle("Updated Title");
@@ -184,18 +296,29 @@ class BookServiceTest {
         assertEquals(ResponseMessages.BOOK_UPDATED, response.getMessage());
     }
 
+    @Test
+    void updateBook_WhenVersionIsStale_ShouldNotUpdate() {
+        testBook.setVersion(3L);
+        when(bookRepository.findByIsbnForUpdate(testBook.getIsbn())).thenReturn(Optional.of(testBook));
+
+        testBookDTO.setTitle("Updated Title");
+        ApiResponse<Book> response = bookService.updateBook(testBook.getIsbn(), testBookDTO, Set.of(2L));
+
+        assertFalse(response.isSuccess());
+        assertEquals(ResponseMessages.PRECONDITION_FAILED, response.getError().getCode());
+        assertNotEquals("Updated Title", testBook.getTitle());
+        verify(bookRepository, never()).save(any(Book.class));
+    }
+
     @Test
     void deleteBook_WhenSuccessful_ShouldReturnSuccessResponse() {
         // Create a test book
         Book testBook = new Book();
-        testBook.setIsbn("1234567890");
+        testBook.setIsbn("9780306406157");
         testBook.setDeleted(false);  // Ensure the book is not marked as deleted initially
 
         // Mock the book repository to find the book and ensure it's not deleted
-        when(bookRepository.findByIsbnAndDeletedIsFalse(testBook.getIsbn())).thenReturn(Optional.of(testBook));
-
-        // Mock the borrowing record repository to return no active borrowings (book is not currently borrowed)
-        when(borrowingRecordRepository.findByBookAndReturnedAtIsNull(testBook)).thenReturn(List.of());
+        when(bookRepository.findByIsbnForUpdate(testBook.getIsbn())).thenReturn(Optional.of(testBook));
 
         // Mock the repository save method to perform the soft delete
         when(bookRepository.save(any(Book.class))).thenReturn(testBook);
@@ -209,11 +332,38 @@ class BookServiceTest {
         assertEquals(ResponseMessages.BOOK_DELETED, response.getMessage());
 
         // Verify interactions with the repositories
-        verify(bookRepository, times(1)).findByIsbnAndDeletedIsFalse(testBook.getIsbn());
-        verify(borrowingRecordRepository, times(1)).findByBookAndReturnedAtIsNull(testBook);
+        verify(bookRepository, times(1)).findByIsbnForUpdate(testBook.getIsbn());
+        verifyNoInteractions(borrowingRecordRepository);
         verify(bookRepository, times(1)).save(any(Book.class));
     }
 
+    @Test
+    void deleteBook_WhenBookOnLoan_ShouldReturnErrorResponse() {
+        testBook.setActiveLoans(2);
+        when(bookRepository.findByIsbnForUpdate(testBook.getIsbn())).thenReturn(Optional.of(testBook));
+
+        ApiResponse<Void> response = bookService.deleteBook(testBook.getIsbn());
+
+        assertFalse(response.isSuccess());
+        assertEquals(ResponseMessages.DELETE_ERROR, response.getError().getCode());
+        assertFalse(testBook.isDeleted());
+        verify(bookRepository, never()).save(any(Book.class));
+        verifyNoInteractions(borrowingRecordRepository);
+    }
+
+    @Test
+    void getBooksOnLoan_WhenSuccessful_ShouldReturnSuccessResponse() {
+        testBook.setActiveLoans(1);
+        when(bookRepository.findByActiveLoansGreaterThan(0, Pageable.unpaged()))
+                .thenReturn(new PageImpl<>(List.of(testBook)));
+
+        ApiResponse<Page<Book>> response = bookService.getBooksOnLoan(Pageable.unpaged());
+
+        assertTrue(response.isSuccess());
+        assertEquals(1, response.getData().getTotalElements());
+        assertEquals(ResponseMessages.BOOKS_RETRIEVED, response.getMessage());
+    }
+
 
     @Test
     void returnBook_WhenSuccessful_ShouldReturnSuccessResponse() {
@@ -222,12 +372,13 @@ class BookServiceTest {
         borrowingRecord.setBook(testBook);
         borrowingRecord.setBorrowedAt(LocalDateTime.now());
         borrowingRecord.setReturnedAt(null);  // The book is not yet returned
+        testBook.setActiveLoans(1);
 
         // Mock the book repository to return the test book when the ISBN is searched
-        when(bookRepository.findById(testBook.getIsbn())).thenReturn(Optional.of(testBook));
+        when(bookRepository.findByIsbnForUpdate(testBook.getIsbn())).thenReturn(Optional.of(testBook));
 
         // Mock the borrowing record repository to return the unreturned record for this book
-        when(borrowingRecordRepository.findFirstByBookAndReturnedAtIsNull(testBook))
+        when(borrowingRecordRepository.findOldestOpenBorrowing(testBook))
                 .thenReturn(Optional.of(borrowingRecord));
 
         // Mock the repository save method to return the updated borrowing record
@@ -240,18 +391,77 @@ class BookServiceTest {
         assertTrue(response.isSuccess());
         assertNotNull(response.getData());
         assertNotNull(response.getData().getReturnedAt());  // Ensure the book is marked as returned
+        assertEquals(0, testBook.getActiveLoans());
         assertEquals(ResponseMessages.BOOK_RETURNED, response.getMessage());
 
         // Verify interactions with the repositories
-        verify(bookRepository, times(1)).findById(testBook.getIsbn());
-        verify(borrowingRecordRepository, times(1)).findFirstByBookAndReturnedAtIsNull(testBook);
+        verify(bookRepository, times(1)).findByIsbnForUpdate(testBook.getIsbn());
+        verify(borrowingRecordRepository, times(1)).findOldestOpenBorrowing(testBook);
         verify(borrowingRecordRepository, times(1)).save(any(BorrowingRecord.class));
     }
 
+    @Test
+    void returnBook_WhenHoldsWaiting_ShouldLendTheCopyToTheOldestHold() {
+        BorrowingRecord borrowingRecord = new BorrowingRecord();
+        borrowingRecord.setBook(testBook);
+        borrowingRecord.setBorrowedAt(LocalDateTime.now());
+        testBook.setCopiesInStock(0);
+        testBook.setActiveLoans(1);
+        Hold hold = new Hold();
+        hold.setId(7L);
+        hold.setIsbn(testBook.getIsbn());
+        hold.setBorrowerId("reader-2");
+        hold.setStatus(Hold.Status.WAITING);
+
+        when(bookRepository.findByIsbnForUpdate(testBook.getIsbn())).thenReturn(Optional.of(testBook));
+        when(borrowingRecordRepository.findOldestOpenBorrowing(testBook)).thenReturn(Optional.of(borrowingRecord));
+        when(borrowingRecordRepository.save(any(BorrowingRecord.class))).thenAnswer(invocation -> {
+            BorrowingRecord saved = invocation.getArgument(0);
+            if (saved.getId() == null) {
+                saved.setId(42L);
+            }
+            return saved;
+        });
+        when(holdRepository.findFirstByIsbnAndStatusOrderByIdAsc(testBook.getIsbn(), Hold.Status.WAITING))
+                .thenReturn(Optional.of(hold)).thenReturn(Optional.empty());
+
+        ApiResponse<BorrowingRecord> response = bookService.returnBook(testBook.getIsbn());
+
+        assertTrue(response.isSuccess());
+        assertEquals(0, testBook.getCopiesInStock());
+        assertEquals(1, testBook.getActiveLoans());
+        assertEquals(Hold.Status.FULFILLED, hold.getStatus());
+        assertEquals(42L, hold.getBorrowingRecordId());
+        verify(holdRepository).save(hold);
+        verify(holdWaiters).closedAfterCommit(hold);
+        verify(coBorrowingIndex).recordBorrowAfterCommit(eq("reader-2"), eq(testBook.getIsbn()), any());
+    }
+
+    @Test
+    void placeHold_WhenNoCopiesAvailable_ShouldWaitInLine() {
+        testBook.setCopiesInStock(0);
+        when(bookRepository.findByIsbnForUpdate(testBook.getIsbn())).thenReturn(Optional.of(testBook));
+        when(holdRepository.save(any(Hold.class))).thenAnswer(invocation -> {
+            Hold saved = invocation.getArgument(0);
+            saved.setId(9L);
+            return saved;
+        });
+        when(holdRepository.countByIsbnAndStatusAndIdLessThan(testBook.getIsbn(), Hold.Status.WAITING, 9L))
+                .thenReturn(2L);
+
+        ApiResponse<Hold> response = bookService.placeHold(testBook.getIsbn(), "reader-3");
+
+        assertTrue(response.isSuccess());
+        assertEquals(Hold.Status.WAITING, response.getData().getStatus());
+        assertEquals(3L, response.getData().getPosition());
+        verify(borrowingRecordRepository, never()).save(any(BorrowingRecord.class));
+        verify(holdWaiters, never()).closedAfterCommit(any());
+    }
+
     @Test
     void returnBook_WhenNoBorrowingRecord_ShouldReturnErrorResponse() {
-        when(bookRepository.findById(testBook.getIsbn())).thenReturn(Optional.of(testBook));
-        when(borrowingRecordRepository.findFirstByBookAndReturnedAtIsNull(testBook))
+        when(bookRepository.findByIsbnForUpdate(testBook.getIsbn())).thenReturn(Optional.of(testBook));
+        when(borrowingRecordRepository.findOldestOpenBorrowing(testBook))
                 .thenReturn(Optional.empty());
 
         ApiResponse<BorrowingRecord> response = bookService.returnBook(testBook.getIsbn());
@@ -284,13 +494,49 @@ class BookServiceTest {
         assertTrue(response.isSuccess());
         assertNotNull(response.getData());
         assertEquals(ResponseMessages.REPORT_GENERATED, response.getMessage());
+        verify(archivedBorrowingRecordRepository, never()).findByBorrowedAtBetween(any(), any());
+    }
+
+    @Test
+    void generateBorrowingReport_WhenRangeReachesArchive_ShouldIncludeArchivedBorrowings() {
+        LocalDateTime startDate = LocalDateTime.now().minusYears(2);
+        LocalDateTime endDate = LocalDateTime.now();
+
+        BorrowingRecord record = new BorrowingRecord();
+        record.setId(2L);
+        record.setBook(testBook);
+        record.setBorrowedAt(LocalDateTime.now().minusDays(5));
+
+        ArchivedBorrowingRecord archived = new ArchivedBorrowingRecord();
+        archived.setId(1L);
+        archived.setIsbn(testBook.getIsbn());
+        archived.setBookTitle(testBook.getTitle());
+        archived.setBorrowedAt(LocalDateTime.now().minusYears(1).minusDays(10));
+        archived.setReturnedAt(LocalDateTime.now().minusYears(1));
+
+        // Moved by an archive batch between the two reads
+        ArchivedBorrowingRecord duplicate = new ArchivedBorrowingRecord();
+        duplicate.setId(2L);
+        duplicate.setIsbn(testBook.getIsbn());
+
+        when(borrowingRecordRepository.findByBorrowedAtBetween(startDate, endDate)).thenReturn(List.of(record));
+        when(archivedBorrowingRecordRepository.findLatestBorrowedAt()).thenReturn(Optional.of(archived.getBorrowedAt()));
+        when(archivedBorrowingRecordRepository.findByBorrowedAtBetween(startDate, endDate))
+                .thenReturn(List.of(archived, duplicate));
+
+        ApiResponse<BorrowingReportDTO> response = bookService.generateBorrowingReport(startDate, endDate);
+
+        assertTrue(response.isSuccess());
+        assertEquals(2, response.getData().getBorrowingEvents().size());
+        assertEquals(2L, response.getData().getBorrowingCountsByBook().get(testBook.getIsbn()));
+        verify(borrowingRecordRepository, never()).countBorrowingsByBookAndDateRange(any(), any());
     }
 
     @Test
     void bulkUploadBooks_WhenSuccessful_ShouldReturnSuccessResponse() throws IOException {
         // Mocking the MultipartFile and its input stream
         MultipartFile file = mock(MultipartFile.class);
-        String csvContent = "ISBN,title,author,publication_year,copies\n123,Test,Author,2023,5";
+        String csvContent = "ISBN,title,author,publication_year,copies\n0-306-40615-2,Test,Author,2023,5";
 
         // Use a ByteArrayInputStream to simulate reading from a file
         ByteArrayInputStream inputStream = new ByteArrayInputStream(csvContent.getBytes());
@@ -298,7 +544,7 @@ class BookServiceTest {
 
         // Mock the repository to simulate saving books
         List<Book> mockBooks = new ArrayList<>();
-        Book testBook = new Book("123", "Test", "Author", 2023, 5, false, null);
+        Book testBook = new Book("9780306406157", "Test", "Author", 2023, 5, 0, false, null, 0L);
         mockBooks.add(testBook);
 
         // Mock the repository method saveAll
@@ -312,6 +558,7 @@ class BookServiceTest {
         assertEquals(ResponseMessages.BOOKS_UPLOADED, response.getMessage());
 
         // Verify repository interaction
-        verify(bookRepository, times(1)).saveAll(anyList());
+        verify(bookRepository, times(1)).saveAll(argThat((Iterable<Book> books) ->
+                books.iterator().next().getIsbn().equals("9780306406157")));
     }
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package com.mobilise.service;
+
+import com.mobilise.model.Book;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.repository.BorrowingRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class BookStreamServiceTest {
+    @Autowired
+    private BookStreamService bookStreamService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @BeforeEach
+    void setUp() {
+        borrowingRecordRepository.deleteAll();
+        bookRepository.deleteAll();
+        bookRepository.saveAll(List.of(
+                book("9780132350884", "Clean Code", "Robert C. Martin", false),
+                book("9780134494166", "Clean Architecture", "Robert C. Martin", false),
+                book("9781449331818", "Learning JavaScript Design Patterns", "Addy Osmani", false),
+                book("9780201633610", "Design Patterns", "Erich Gamma", true)));
+    }
+
+    @Test
+    void streamBooks_ShouldWriteOneJsonLinePerLiveBook() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = bookStreamService.streamBooks(out);
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(3, count);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("{") && lines.get(0).contains("\"isbn\":\"9780132350884\""));
+        assertTrue(lines.stream().noneMatch(line -> line.contains("9780201633610")));
+    }
+
+    @Test
+    void streamSearch_ShouldMatchTitleOrAuthorIgnoringCase() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = bookStreamService.streamSearch("clean", out);
+
+        assertEquals(2, count);
+        assertEquals(2, out.toString(StandardCharsets.UTF_8).lines().count());
+    }
+
+    @Test
+    void exportCsv_ShouldUseBulkUploadFormat() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = bookStreamService.exportCsv(out);
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(3, count);
+        assertEquals("ISBN,title,author,publication_year,copies", lines.get(0));
+        assertEquals("9780132350884,Clean Code,Robert C. Martin,2008,5", lines.get(1));
+    }
+
+    private static Book book(String isbn, String title, String author, boolean deleted) {
+        Book book = new Book();
+        book.setIsbn(isbn);
+        book.setTitle(title);
+        book.setAuthor(author);
+        book.setPublicationYear(2008);
+        book.setCopiesInStock(5);
+        book.setDeleted(deleted);
+        return book;
+    }
+}
@@ -0,0 +1,110 @@
+package com.mobilise.service;
+
+import com.mobilise.dto.ApiResponse;
+import com.mobilise.dto.BorrowingReportDTO;
+import com.mobilise.interfaces.BookServiceInterface;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "library.archive.batch-size=2")
+@ActiveProfiles("test")
+class BorrowingArchiveServiceTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 1, 12, 0);
+
+    @Autowired
+    private BorrowingArchiveService archiveService;
+
+    @Autowired
+    private BookServiceInterface bookService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        clearTables();
+        insertBook("9780132350884", false, null, 1);
+        insertBook("9780134494166", true, NOW.minusDays(120), 0);
+        insertBook("9781449331818", true, NOW.minusDays(10), 0);
+
+        // Five old returned loans, one old loan still open and one recent returned loan
+        for (int i = 0; i < 5; i++) {
+            insertLoan("9780132350884", NOW.minusDays(500 + i), NOW.minusDays(490 + i));
+        }
+        insertLoan("9780132350884", NOW.minusDays(400), null);
+        insertLoan("9780132350884", NOW.minusDays(30), NOW.minusDays(20));
+        insertLoan("9780134494166", NOW.minusDays(200), NOW.minusDays(190));
+        insertLoan("9781449331818", NOW.minusDays(200), NOW.minusDays(190));
+    }
+
+    @AfterEach
+    void tearDown() {
+        clearTables();
+    }
+
+    @Test
+    void archive_ShouldMoveColdLoansAndLongDeletedBooks() {
+        BorrowingArchiveService.ArchiveRun run = archiveService.archive(NOW);
+
+        assertEquals(6, run.borrowingRecords());
+        assertEquals(1, run.books());
+        assertEquals(3, count("SELECT COUNT(*) FROM borrowing_records"));
+        assertEquals(6, count("SELECT COUNT(*) FROM borrowing_records_archive"));
+        assertEquals(1, count("SELECT COUNT(*) FROM borrowing_records WHERE returned_at IS NULL"));
+        assertEquals(0, count("SELECT COUNT(*) FROM books WHERE isbn = '9780134494166'"));
+        assertEquals(1, count("SELECT COUNT(*) FROM books_archive WHERE isbn = '9780134494166'"));
+        // Deleted too recently to archive
+        assertEquals(1, count("SELECT COUNT(*) FROM books WHERE isbn = '9781449331818'"));
+
+        assertEquals(new BorrowingArchiveService.ArchiveRun(0, 0), archiveService.archive(NOW));
+    }
+
+    @Test
+    void generateBorrowingReport_ShouldUnionArchivedHistory() {
+        archiveService.archive(NOW);
+
+        ApiResponse<BorrowingReportDTO> report = bookService.generateBorrowingReport(NOW.minusDays(600), NOW);
+
+        assertTrue(report.isSuccess());
+        assertEquals(9, report.getData().getBorrowingEvents().size());
+        assertEquals(7L, report.getData().getBorrowingCountsByBook().get("9780132350884"));
+        assertEquals(1L, report.getData().getBorrowingCountsByBook().get("9780134494166"));
+        assertTrue(report.getData().getBorrowingEvents().stream()
+                .anyMatch(event -> event.getIsbn().equals("9780134494166")
+                        && event.getBookTitle().equals("Book 9780134494166")));
+
+        ApiResponse<BorrowingReportDTO> recent = bookService.generateBorrowingReport(NOW.minusDays(60), NOW);
+        assertEquals(1, recent.getData().getBorrowingEvents().size());
+    }
+
+    private void insertBook(String isbn, boolean deleted, LocalDateTime deletedAt, int activeLoans) {
+        jdbcTemplate.update("INSERT INTO books (isbn, title, author, publication_year, copies_in_stock, active_loans, " +
+                "is_deleted, deleted_at) VALUES (?, ?, 'Author', 2020, 3, ?, ?, ?)",
+                isbn, "Book " + isbn, activeLoans, deleted, deletedAt);
+    }
+
+    private void insertLoan(String isbn, LocalDateTime borrowedAt, LocalDateTime returnedAt) {
+        jdbcTemplate.update("INSERT INTO borrowing_records (isbn, borrowed_at, returned_at) VALUES (?, ?, ?)",
+                isbn, borrowedAt, returnedAt);
+    }
+
+    private long count(String sql) {
+        return jdbcTemplate.queryForObject(sql, Long.class);
+    }
+
+    private void clearTables() {
+        jdbcTemplate.update("DELETE FROM borrowing_records_archive");
+        jdbcTemplate.update("DELETE FROM books_archive");
+        jdbcTemplate.update("DELETE FROM borrowing_records");
+        jdbcTemplate.update("DELETE FROM books");
+    }
+}
@@ -0,0 +1,162 @@
+package com.mobilise.service;
+
+import com.mobilise.dto.BookDTO;
+import com.mobilise.interfaces.BookServiceInterface;
+import com.mobilise.journal.BorrowingJournal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hammers borrow, return, delete and restore on a handful of ISBNs from many threads against the embedded
+ * database, then checks the stock and borrowing invariants. The borrowing journal is enabled so that its
+ * replayed loan state is checked against the database as well.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class BorrowingConcurrencyStressTest {
+    private static final List<String> ISBNS = List.of("9780132350884", "9780134494166", "9781449331818");
+    private static final int INITIAL_COPIES = 3;
+    private static final int THREADS = 16;
+    private static final int OPERATIONS_PER_THREAD = 100;
+
+    @Autowired
+    private BookServiceInterface bookService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BorrowingJournal borrowingJournal;
+
+    @DynamicPropertySource
+    static void journalProperties(DynamicPropertyRegistry registry) throws IOException {
+        registry.add("library.journal.enabled", () -> true);
+        registry.add("library.journal.directory", Files.createTempDirectory("stress-journal")::toString);
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM borrowing_records");
+        jdbcTemplate.update("DELETE FROM books");
+        for (String isbn : ISBNS) {
+            BookDTO dto = new BookDTO();
+            dto.setIsbn(isbn);
+            dto.setTitle("Stress " + isbn);
+            dto.setAuthor("Stress Author");
+            dto.setPublicationYear(2020);
+            dto.setCopiesInStock(INITIAL_COPIES);
+            assertTrue(bookService.createBook(dto).isSuccess());
+        }
+    }
+
+    @Test
+    void concurrentBorrowReturnDeleteRestore_ShouldPreserveInvariants() throws Exception {
+        LongAdder borrowed = new LongAdder();
+        LongAdder returned = new LongAdder();
+        AtomicInteger minimumStockSeen = new AtomicInteger(Integer.MAX_VALUE);
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+        Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                Integer minimum = jdbcTemplate.queryForObject("SELECT MIN(copies_in_stock) FROM books", Integer.class);
+                if (minimum != null) {
+                    minimumStockSeen.accumulateAndGet(minimum, Math::min);
+                }
+            }
+        });
+        sampler.start();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(workers.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    String isbn = ISBNS.get(random.nextInt(ISBNS.size()));
+                    int operation = random.nextInt(20);
+                    try {
+                        if (operation < 9) {
+                            if (bookService.borrowBook(isbn, null).isSuccess()) {
+                                borrowed.increment();
+                            }
+                        } else if (operation < 18) {
+                            if (bookService.returnBook(isbn).isSuccess()) {
+                                returned.increment();
+                            }
+                        } else if (operation == 18) {
+                            bookService.deleteBook(isbn);
+                        } else {
+                            bookService.restoreBook(isbn);
+                        }
+                    } catch (RuntimeException e) {
+                        // Lock timeouts and rolled back transactions are acceptable outcomes under contention
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        workers.shutdown();
+        running.set(false);
+        sampler.join();
+
+        assertTrue(minimumStockSeen.get() >= 0, "Stock went negative: " + minimumStockSeen.get());
+
+        long openLoans = 0;
+        for (String isbn : ISBNS) {
+            Map<String, Object> book = jdbcTemplate.queryForMap(
+                    "SELECT copies_in_stock, active_loans, is_deleted FROM books WHERE isbn = ?", isbn);
+            int stock = ((Number) book.get("COPIES_IN_STOCK")).intValue();
+            boolean deleted = (Boolean) book.get("IS_DELETED");
+            int open = openLoans(isbn);
+            openLoans += open;
+
+            assertTrue(stock >= 0, "Negative stock for " + isbn);
+            assertEquals(INITIAL_COPIES, stock + open, "Lost or duplicated copies for " + isbn);
+            assertEquals(open, ((Number) book.get("ACTIVE_LOANS")).intValue(), "Loan counter diverged for " + isbn);
+            assertEquals(open, borrowingJournal.openLoans().getOrDefault(isbn, 0), "Journal diverged for " + isbn);
+            if (deleted) {
+                assertEquals(0, open, "Deleted book " + isbn + " still has open loans");
+            }
+        }
+        assertEquals(borrowed.sum() - returned.sum(), openLoans,
+                "Successful borrows minus returns must equal the open borrowing records");
+        assertTrue(borrowed.sum() > 0 && returned.sum() > 0, "Stress run did not exercise borrowing");
+    }
+
+    private int openLoans(String isbn) {
+        Integer open = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM borrowing_records WHERE isbn = ? AND returned_at IS NULL", Integer.class, isbn);
+        return open == null ? 0 : open;
+    }
+}
@@ -0,0 +1,104 @@
+package com.mobilise.service;
+
+import com.mobilise.model.Book;
+import com.mobilise.model.BorrowingRecord;
+import com.mobilise.repository.BookRepository;
+import com.mobilise.repository.BorrowingRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CatalogueSnapshotServiceTest {
+    @Autowired
+    private CatalogueSnapshotService snapshotService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BorrowingRecordRepository borrowingRecordRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM holds");
+        jdbcTemplate.update("DELETE FROM borrowing_records_archive");
+        jdbcTemplate.update("DELETE FROM books_archive");
+        jdbcTemplate.update("DELETE FROM borrowing_records");
+        jdbcTemplate.update("DELETE FROM books");
+    }
+
+    @Test
+    void writeAndRestoreSnapshot_ShouldRoundTripBooksAndBorrowingRecords() throws Exception {
+        Book cleanCode = bookRepository.save(book("9780132350884", "Clean Code", false));
+        bookRepository.save(book("9780134494166", "Clean Architecture – 2nd ed.", true));
+        BorrowingRecord open = borrowingRecordRepository.save(record(cleanCode, null));
+        borrowingRecordRepository.save(record(cleanCode, LocalDateTime.of(2024, 3, 2, 10, 15, 30, 123_456_000)));
+
+        List<Map<String, Object>> booksBefore = jdbcTemplate.queryForList("SELECT * FROM books ORDER BY isbn");
+        List<Map<String, Object>> recordsBefore = jdbcTemplate.queryForList("SELECT * FROM borrowing_records ORDER BY id");
+
+        Path snapshot = tempDir.resolve("catalogue.snapshot");
+        assertEquals(4, snapshotService.writeSnapshot(snapshot));
+        assertTrue(Files.size(snapshot) > 0);
+
+        jdbcTemplate.update("DELETE FROM borrowing_records");
+        jdbcTemplate.update("DELETE FROM books");
+        assertTrue(snapshotService.isCatalogueEmpty());
+
+        assertEquals(4, snapshotService.restoreSnapshot(snapshot));
+
+        assertEquals(booksBefore, jdbcTemplate.queryForList("SELECT * FROM books ORDER BY isbn"));
+        assertEquals(recordsBefore, jdbcTemplate.queryForList("SELECT * FROM borrowing_records ORDER BY id"));
+
+        // New records must not collide with restored identities
+        BorrowingRecord next = borrowingRecordRepository.save(record(cleanCode, null));
+        assertTrue(next.getId() > open.getId() + 1);
+    }
+
+    @Test
+    void restoreSnapshot_WhenFileIsNotASnapshot_ShouldFail() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("books.csv"), "ISBN,title\n");
+
+        assertThrows(java.io.IOException.class, () -> snapshotService.restoreSnapshot(file));
+    }
+
+    private static Book book(String isbn, String title, boolean deleted) {
+        Book book = new Book();
+        book.setIsbn(isbn);
+        book.setTitle(title);
+        book.setAuthor("Robert C. Martin");
+        book.setPublicationYear(2008);
+        book.setCopiesInStock(4);
+        book.setDeleted(deleted);
+        book.setDeletedAt(deleted ? LocalDateTime.of(2024, 1, 1, 0, 0) : null);
+        return book;
+    }
+
+    private static BorrowingRecord record(Book book, LocalDateTime returnedAt) {
+        BorrowingRecord record = new BorrowingRecord();
+        record.setBook(book);
+        record.setBorrowedAt(LocalDateTime.of(2024, 3, 1, 9, 0));
+        record.setReturnedAt(returnedAt);
+        return record;
+    }
+}
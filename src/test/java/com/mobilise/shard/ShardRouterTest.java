@@ -0,0 +1,52 @@
+package com.mobilise.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardRouterTest {
+    private static final List<String> ISBNS = IntStream.range(0, 10_000)
+            .mapToObj(i -> String.format("978%010d", i))
+            .toList();
+
+    @Test
+    void shardFor_ShouldSpreadIsbnsEvenly() {
+        ShardRouter router = new ShardRouter(List.of("shard-1", "shard-2", "shard-3"), 128);
+
+        Map<String, Integer> counts = new HashMap<>();
+        ISBNS.forEach(isbn -> counts.merge(router.shardFor(isbn), 1, Integer::sum));
+
+        assertEquals(3, counts.size());
+        counts.values().forEach(count -> assertTrue(count > 2_500 && count < 4_200, "Uneven shard: " + counts));
+    }
+
+    @Test
+    void shardFor_WhenShardAdded_ShouldOnlyMoveIsbnsToTheNewShard() {
+        ShardRouter before = new ShardRouter(List.of("shard-1", "shard-2", "shard-3"), 128);
+        ShardRouter after = new ShardRouter(List.of("shard-1", "shard-2", "shard-3", "shard-4"), 128);
+
+        long moved = 0;
+        for (String isbn : ISBNS) {
+            String target = after.shardFor(isbn);
+            if (!target.equals(before.shardFor(isbn))) {
+                assertEquals("shard-4", target);
+                moved++;
+            }
+        }
+        assertTrue(moved > 1_800 && moved < 3_200, "Moved " + moved + " of " + ISBNS.size());
+    }
+
+    @Test
+    void onEachShard_ShouldRunWorkInEveryShardScope() {
+        ShardRouter router = new ShardRouter(List.of("shard-1", "shard-2"), 16);
+
+        assertEquals(List.of("shard-1", "shard-2"), router.onEachShard(ShardContext::current));
+        assertNull(ShardContext.current());
+        assertEquals(1, ShardRouter.unsharded().onEachShard(ShardContext::current).size());
+    }
+}
@@ -0,0 +1,307 @@
+package com.mobilise.shard;
+
+import com.mobilise.dto.ApiResponse;
+import com.mobilise.dto.BookDTO;
+import com.mobilise.dto.BookFilterDTO;
+import com.mobilise.dto.BorrowingReportDTO;
+import com.mobilise.dto.FacetedBooksDTO;
+import com.mobilise.facet.CatalogueFacetIndex;
+import com.mobilise.interfaces.BookServiceInterface;
+import com.mobilise.model.Book;
+import com.mobilise.recommendation.CoBorrowingIndex;
+import com.mobilise.service.BookStreamService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "library.shards.enabled=true",
+        "library.shards.urls=jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1,jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1,"
+                + "jdbc:h2:mem:shard3;DB_CLOSE_DELAY=-1"
+})
+@ActiveProfiles("test")
+class ShardingTest {
+    private static final String SHARD_4_URL = "jdbc:h2:mem:shard4;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private BookServiceInterface bookService;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ShardDataSources shardDataSources;
+
+    @Autowired
+    private Resharder resharder;
+
+    @Autowired
+    private BookStreamService bookStreamService;
+
+    @Autowired
+    private CatalogueFacetIndex catalogueFacetIndex;
+
+    @Autowired
+    private CoBorrowingIndex coBorrowingIndex;
+
+    private final List<String> isbns = IntStream.range(0, 30)
+            .mapToObj(i -> isbn13(String.format("978%09d", i * 7919)))
+            .toList();
+
+    @BeforeEach
+    void setUp() {
+        shardDataSources.byName().values().forEach(shard -> {
+            JdbcTemplate jdbc = new JdbcTemplate(shard);
+            jdbc.update("DELETE FROM borrowing_records");
+            jdbc.update("DELETE FROM books");
+        });
+        for (int i = 0; i < isbns.size(); i++) {
+            createBook(isbns.get(i), "Title " + (char) ('A' + i % 26) + i, i % 2 == 0 ? "Even Author" : "Odd Author");
+        }
+    }
+
+    @Test
+    void createBook_ShouldStoreEachBookOnlyOnItsShard() {
+        for (String isbn : isbns) {
+            String home = shardRouter.shardFor(isbn);
+            shardDataSources.byName().forEach((shard, dataSource) -> assertEquals(shard.equals(home) ? 1 : 0,
+                    booksWithIsbn(new JdbcTemplate(dataSource), isbn), isbn + " on " + shard));
+        }
+        long populatedShards = shardDataSources.byName().values().stream()
+                .filter(shard -> new JdbcTemplate(shard).queryForObject("SELECT COUNT(*) FROM books", Long.class) > 0)
+                .count();
+        assertEquals(3, populatedShards);
+    }
+
+    @Test
+    void getAllBooks_ShouldMergeShardsIntoOneOrderedPage() {
+        List<String> expectedTitles = new ArrayList<>();
+        for (int i = 0; i < isbns.size(); i++) {
+            expectedTitles.add("Title " + (char) ('A' + i % 26) + i);
+        }
+        expectedTitles.sort(Comparator.reverseOrder());
+
+        ApiResponse<Page<Book>> response = bookService.getAllBooks(
+                PageRequest.of(1, 7, Sort.by(Sort.Direction.DESC, "title")));
+
+        assertTrue(response.isSuccess());
+        assertEquals(30, response.getData().getTotalElements());
+        assertEquals(5, response.getData().getTotalPages());
+        assertEquals(expectedTitles.subList(7, 14), response.getData().getContent().stream().map(Book::getTitle).toList());
+    }
+
+    @Test
+    void getAllBooks_WithAnUnknownSortProperty_ShouldAnswerLikeASingleDatabase() {
+        PageRequest pageable = PageRequest.of(0, 10, Sort.by("shelf"));
+
+        ApiResponse<Page<Book>> books = bookService.getAllBooks(pageable);
+        ApiResponse<Page<Map<String, Object>>> fields = bookService.getBookFields(List.of("title"), pageable);
+
+        assertFalse(books.isSuccess());
+        assertEquals("Failed to retrieve books", books.getMessage());
+        assertEquals("FETCH_ERROR", books.getError().getCode());
+        assertFalse(fields.isSuccess());
+        assertEquals("FETCH_ERROR", fields.getError().getCode());
+    }
+
+    @Test
+    void getAllBooks_ShouldSortByAPropertyNamedAsTheDatabaseAcceptsIt() {
+        ApiResponse<Page<Book>> books = bookService.getAllBooks(PageRequest.of(0, 30, Sort.by("Title")));
+        ApiResponse<Page<Map<String, Object>>> fields = bookService.getBookFields(List.of("isbn"),
+                PageRequest.of(0, 30, Sort.by("Title")));
+
+        assertTrue(books.isSuccess(), String.valueOf(books.getError()));
+        List<String> titles = books.getData().getContent().stream().map(Book::getTitle).toList();
+        assertEquals(titles.stream().sorted().toList(), titles);
+        assertTrue(fields.isSuccess(), String.valueOf(fields.getError()));
+        assertEquals(books.getData().getContent().stream().map(Book::getIsbn).toList(),
+                fields.getData().getContent().stream().map(row -> row.get("isbn")).toList());
+    }
+
+    @Test
+    void getBookFields_ShouldMergeShardsByFieldsThatAreNotReturned() {
+        List<String> expectedAuthors = new ArrayList<>();
+        for (int i = 0; i < isbns.size(); i++) {
+            expectedAuthors.add(i % 2 == 0 ? "Even Author" : "Odd Author");
+        }
+        List<String> sortedIsbns = isbns.stream().sorted().toList();
+
+        ApiResponse<Page<Map<String, Object>>> response = bookService.getBookFields(List.of("author"),
+                PageRequest.of(2, 4, Sort.by("isbn")));
+
+        assertTrue(response.isSuccess());
+        assertEquals(30, response.getData().getTotalElements());
+        assertEquals(sortedIsbns.subList(8, 12).stream()
+                        .map(isbn -> Map.<String, Object>of("author", expectedAuthors.get(isbns.indexOf(isbn))))
+                        .toList(),
+                response.getData().getContent());
+    }
+
+    @Test
+    void filterBooks_ShouldIndexEveryShardAndReadThePageFromEachBooksShard() {
+        catalogueFacetIndex.rebuild();
+        BookFilterDTO filter = new BookFilterDTO();
+        filter.setAuthors(List.of("odd author"));
+
+        ApiResponse<FacetedBooksDTO> response = bookService.filterBooks(filter, PageRequest.of(0, 100));
+
+        assertTrue(response.isSuccess());
+        assertEquals(15, response.getData().getBooks().getTotalElements());
+        assertEquals(15, response.getData().getBooks().getContent().size());
+        assertTrue(response.getData().getBooks().getContent().stream()
+                .allMatch(book -> book.getAuthor().equals("Odd Author")));
+        assertEquals(Map.of("Even Author", 15, "Odd Author", 15), response.getData().getAuthors());
+    }
+
+    @Test
+    void getRelatedBooks_ShouldMergeEachBorrowersLoansAcrossShards() {
+        List<String> borrowed = isbns.subList(0, 3);
+        assertTrue(borrowed.stream().map(shardRouter::shardFor).distinct().count() > 1);
+        borrowed.forEach(isbn -> assertTrue(bookService.borrowBook(isbn, "reader-1").isSuccess()));
+        assertTrue(bookService.borrowBook(borrowed.get(0), "reader-2").isSuccess());
+        assertTrue(bookService.borrowBook(borrowed.get(2), "reader-2").isSuccess());
+        coBorrowingIndex.rebuild();
+
+        ApiResponse<List<Book>> response = bookService.getRelatedBooks(borrowed.get(0));
+
+        assertTrue(response.isSuccess());
+        assertEquals(List.of(borrowed.get(2), borrowed.get(1)),
+                response.getData().stream().map(Book::getIsbn).toList());
+    }
+
+    @Test
+    void streamBooks_ShouldStreamEveryShard() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(30, bookStreamService.streamBooks(out));
+        assertEquals(30, out.toString().lines().count());
+    }
+
+    @Test
+    void searchBooks_ShouldSumMatchesAcrossShards() {
+        ApiResponse<Page<Book>> response = bookService.searchBooks("odd author", PageRequest.of(0, 100));
+
+        assertTrue(response.isSuccess());
+        assertEquals(15, response.getData().getTotalElements());
+        List<String> isbnsFound = response.getData().getContent().stream().map(Book::getIsbn).toList();
+        assertEquals(isbnsFound.stream().sorted().toList(), isbnsFound);
+        assertEquals("No books found matching the search criteria",
+                bookService.searchBooks("nobody", PageRequest.of(0, 10)).getMessage());
+    }
+
+    @Test
+    void borrowAndReport_ShouldRouteToTheBooksShardAndSumCounts() {
+        LocalDateTime start = LocalDateTime.now().minusMinutes(1);
+        for (String isbn : isbns.subList(0, 6)) {
+            assertTrue(bookService.borrowBook(isbn, null).isSuccess());
+        }
+        assertTrue(bookService.borrowBook(isbns.get(0), null).isSuccess());
+        assertTrue(bookService.returnBook(isbns.get(0)).isSuccess());
+
+        JdbcTemplate home = new JdbcTemplate(shardDataSources.byName().get(shardRouter.shardFor(isbns.get(0))));
+        assertEquals(1, home.queryForObject(
+                "SELECT active_loans FROM books WHERE isbn = ?", Integer.class, isbns.get(0)));
+
+        ApiResponse<BorrowingReportDTO> report = bookService.generateBorrowingReport(start, LocalDateTime.now());
+        assertTrue(report.isSuccess());
+        assertEquals(7, report.getData().getBorrowingEvents().size());
+        assertEquals(2L, report.getData().getBorrowingCountsByBook().get(isbns.get(0)));
+        assertEquals(6, report.getData().getBorrowingCountsByBook().size());
+        assertEquals(6, bookService.getBooksOnLoan(PageRequest.of(0, 10)).getData().getTotalElements());
+    }
+
+    @Test
+    void bulkUpload_ShouldSplitRowsByShard() {
+        MockMultipartFile file = new MockMultipartFile("file", "books.csv", "text/csv", ("""
+                ISBN,title,author,publication_year,copies
+                9780201633610,Design Patterns,Erich Gamma,1994,2
+                9780132350884,Clean Code,Robert C. Martin,2008,3
+                9781449331818,Learning JavaScript Design Patterns,Addy Osmani,2012,1
+                """).getBytes());
+
+        assertTrue(bookService.bulkUploadBooks(file).isSuccess());
+
+        for (String isbn : List.of("9780201633610", "9780132350884", "9781449331818")) {
+            assertTrue(bookService.getBookByIsbn(isbn).isSuccess());
+        }
+        assertEquals(33, bookService.getAllBooks(PageRequest.of(0, 5)).getData().getTotalElements());
+    }
+
+    @Test
+    @DirtiesContext
+    void reshard_ShouldMoveOnlyBooksOwnedByTheNewShard() {
+        assertTrue(bookService.borrowBook(isbns.get(0), null).isSuccess());
+        assertTrue(bookService.borrowBook(isbns.get(1), null).isSuccess());
+        List<String> targetUrls = new ArrayList<>(shardDataSources.byName().keySet().stream()
+                .map(shardDataSources::urlOf).toList());
+        targetUrls.add(SHARD_4_URL);
+        ShardRouter target = new ShardRouter(List.of("shard-1", "shard-2", "shard-3", "shard-4"), 128);
+        List<String> toShard4 = isbns.stream().filter(isbn -> target.shardFor(isbn).equals("shard-4")).toList();
+
+        Resharder.ReshardRun run = resharder.reshard(targetUrls);
+
+        assertEquals(toShard4.size(), run.books());
+        JdbcTemplate shard4 = new JdbcTemplate(new DriverManagerDataSource(SHARD_4_URL, "sa", "password"));
+        Map<String, DataSource> shards = shardDataSources.byName();
+        for (String isbn : isbns) {
+            String owner = target.shardFor(isbn);
+            JdbcTemplate jdbc = owner.equals("shard-4") ? shard4 : new JdbcTemplate(shards.get(owner));
+            assertEquals(1, booksWithIsbn(jdbc, isbn), isbn + " missing on " + owner);
+        }
+        long total = shard4.queryForObject("SELECT COUNT(*) FROM books", Long.class);
+        for (DataSource shard : shards.values()) {
+            total += new JdbcTemplate(shard).queryForObject("SELECT COUNT(*) FROM books", Long.class);
+        }
+        assertEquals(isbns.size(), total);
+        long openLoans = shard4.queryForObject("SELECT COUNT(*) FROM borrowing_records WHERE returned_at IS NULL", Long.class);
+        for (DataSource shard : shards.values()) {
+            openLoans += new JdbcTemplate(shard).queryForObject(
+                    "SELECT COUNT(*) FROM borrowing_records WHERE returned_at IS NULL", Long.class);
+        }
+        assertEquals(2, openLoans);
+        assertEquals(0, resharder.reshard(targetUrls).books());
+    }
+
+    private static String isbn13(String first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (i % 2 == 0 ? 1 : 3) * (first12.charAt(i) - '0');
+        }
+        return first12 + (10 - sum % 10) % 10;
+    }
+
+    private int booksWithIsbn(JdbcTemplate jdbc, String isbn) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM books WHERE isbn = ?", Integer.class, isbn);
+    }
+
+    private void createBook(String isbn, String title, String author) {
+        BookDTO dto = new BookDTO();
+        dto.setIsbn(isbn);
+        dto.setTitle(title);
+        dto.setAuthor(author);
+        dto.setPublicationYear(2020);
+        dto.setCopiesInStock(3);
+        assertTrue(bookService.createBook(dto).isSuccess());
+    }
+}